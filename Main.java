@@ -1,40 +1,293 @@
-import syntaxtree.*;
-import visitor.*;
+import visitor.CompileError;
 import myparser.*;
+import driver.BatchCompiler;
+import driver.CompileServer;
+import driver.GoldenTest;
+import driver.Profiler;
+import mips.AsmWriter;
 import java.io.*;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
 
 public class Main
 {
+    // Usage: java Main [options] [input file] [output file]
+    //               the input file ends with .java, standard input is read
+    //               if there is none
+    //   -O0         turn off the optimization passes (constant folding and
+    //               propagation, inlining, bounds check elimination, peephole)
+    //   --peephole=rule,...
+    //               only run these peephole rules (see mips.Peephole)
+    //   --peephole-window=n
+    //               how far the peephole rules look ahead
+    //   --peephole-report
+    //               print what the peephole optimizer removed (to stderr)
+    //   --regalloc  generate code through the three-address IR with linear
+    //               scan register allocation instead of the stack machine
+    //   --inline=n  inline the methods of at most n quads that no subclass
+    //               overrides (with --regalloc or --ir; 0 turns it off)
+    //   --inline-report
+    //               print the call sites inlined (to stderr)
+    //   --ir        print the three-address IR (by basic block) instead of
+    //               MIPS code
+    //   --compact   leave the comments and the empty lines out of the
+    //               assembly (it is about half the size for MARS to read)
+    //   --annotate  keep them (the default)
+    //               with either, the size of the output is printed to stderr
+    //   --javacc-lexer
+    //               parse with the token manager generated by JavaCC instead
+    //               of the hand-written lexer (see lexer.Lexer)
+    //
+    //        java Main --server[=port]
+    //               compile the programs requested on standard input (or on
+    //               a loopback socket), see driver.CompileServer
+    //
+    //        java Main --batch [--jobs=n] [options] <file or directory>...
+    //               compile each X.java (or the .java files of a directory)
+    //               into X.asm on n worker threads, see driver.BatchCompiler
+    //
+    //        java Main --test [options] <program> <golden output>...
+    //               compile the programs, run them with mips.Simulator and
+    //               compare their output with the golden files
+    //
+    //        java Main --profile [--summary] [options] <file or directory>...
+    //               compile and run the programs and count the instructions
+    //               they execute by category and by method, see
+    //               driver.Profiler
     public static void main( String [] args )
     {
-        try
+        driver.Compiler compiler = new driver.Compiler();
+        String input = null;
+        String output = null;
+        boolean report_size = false;
+        for ( int i = 0; i < args.length; i++ )
         {
-            Program root = new MiniJavaParser( System.in ).Goal();
-
-            // Build the symbol table
-            BuildSymbolTableVisitor buildSymTab = new BuildSymbolTableVisitor();
-            root.accept( buildSymTab );
-
-            // Type check
-            TypeCheckVisitor typeCheck =
-                new TypeCheckVisitor( buildSymTab.getSymTab() );
-            root.accept( typeCheck );
+            if ( args[i].equals( "--batch" ) )
+            {
+                batch( args );
+                return;
+            }
+            if ( args[i].equals( "--test" ) )
+            {
+                test( args );
+                return;
+            }
+            if ( args[i].equals( "--profile" ) )
+            {
+                profile( args );
+                return;
+            }
+            if ( args[i].equals( "--server" ) || args[i].startsWith( "--server=" ) )
+            {
+                serve( args[i] );
+                return;
+            }
+            if ( compiler.option( args[i] ) )
+            {
+                report_size |= args[i].equals( "--compact" ) || args[i].equals( "--annotate" );
+                continue;
+            }
+            if ( input == null && args[i].endsWith( ".java" ) )
+            {
+                input = args[i];
+            }
+            else
+            {
+                output = args[i];
+            }
+        }
 
-            PrintWriter out = new PrintWriter( System.out );
-            if ( args.length >= 1 )
+        try
+        {
+            long size;
+            if ( output != null )
+            {
+                // An error leaves the previous output file as it was
+                if ( input != null )
+                {
+                    compiler.compile( input, output );
+                }
+                else
+                {
+                    compiler.compile( System.in, output );
+                }
+                size = compiler.size();
+            }
+            else
             {
-                out = new PrintWriter( new BufferedWriter( new FileWriter( args[0] ) ) );
+                AsmWriter out = new AsmWriter( Channels.newChannel( System.out ) );
+                if ( input != null )
+                {
+                    compiler.compile( input, out );
+                }
+                else
+                {
+                    compiler.compile( System.in, out );
+                }
+                out.close();
+                size = out.written();
             }
+            if ( report_size )
+            {
+                System.err.println( size + " bytes of assembly" );
+            }
+        }
+        catch ( CompileError e )
+        {
+            System.out.println( e.getMessage() );
+            System.exit( e.status() );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            System.out.println( e.getMessage() );
+            System.exit( -1 );
+        }
+        catch ( ParseException e )
+        {
+            System.out.println( e.toString() );
+        }
+        catch ( IOException e )
+        {
+            System.out.println( e.toString() );
+        }
+        catch ( UncheckedIOException e )
+        {
+            System.out.println( e.getCause().toString() );
+        }
+    }
 
-            CodeGenVisitor cgen = new CodeGenVisitor( buildSymTab.getSymTab(), out );
+    static void batch( String [] args )
+    {
+        BatchCompiler batch = new BatchCompiler();
+        try
+        {
+            for ( int i = 0; i < args.length; i++ )
+            {
+                if ( args[i].equals( "--batch" ) )
+                {
+                    continue;
+                }
+                if ( args[i].startsWith( "--jobs=" ) )
+                {
+                    batch.setJobs( Integer.parseInt( args[i].substring( 7 ) ) );
+                }
+                else if ( args[i].startsWith( "-" ) )
+                {
+                    batch.addOption( args[i] );
+                }
+                else
+                {
+                    batch.addSource( args[i] );
+                }
+            }
+            if ( batch.run( System.out ) > 0 )
+            {
+                System.exit( -1 );
+            }
+        }
+        catch ( IllegalArgumentException e )
+        {
+            System.out.println( e.getMessage() );
+            System.exit( -1 );
+        }
+        catch ( InterruptedException e )
+        {
+            System.out.println( e.toString() );
+        }
+    }
 
-            root.accept( cgen );
+    static void test( String [] args )
+    {
+        GoldenTest test = new GoldenTest();
+        ArrayList<String> files = new ArrayList<String>();
+        try
+        {
+            for ( int i = 0; i < args.length; i++ )
+            {
+                if ( args[i].equals( "--test" ) )
+                {
+                    continue;
+                }
+                if ( args[i].startsWith( "-" ) )
+                {
+                    test.addOption( args[i] );
+                }
+                else
+                {
+                    files.add( args[i] );
+                }
+            }
+        }
+        catch ( IllegalArgumentException e )
+        {
+            System.out.println( e.getMessage() );
+            System.exit( -1 );
+        }
+        if ( files.size() % 2 != 0 )
+        {
+            System.out.println( "Usage: java Main --test [options] <program> <golden output>..." );
+            System.out.println( files.get( files.size() - 1 ) + " has no golden output" );
+            System.exit( -1 );
+        }
+        for ( int i = 0; i < files.size(); i += 2 )
+        {
+            test.addTest( files.get( i ), files.get( i + 1 ) );
+        }
+        if ( test.run( System.out ) > 0 )
+        {
+            System.exit( -1 );
+        }
+    }
 
-            out.close();
+    static void profile( String [] args )
+    {
+        Profiler profiler = new Profiler();
+        try
+        {
+            for ( int i = 0; i < args.length; i++ )
+            {
+                if ( args[i].equals( "--profile" ) )
+                {
+                    continue;
+                }
+                if ( args[i].equals( "--summary" ) )
+                {
+                    profiler.setSummary( true );
+                }
+                else if ( args[i].startsWith( "-" ) )
+                {
+                    profiler.addOption( args[i] );
+                }
+                else
+                {
+                    profiler.addSource( args[i] );
+                }
+            }
         }
-        catch ( ParseException e )
+        catch ( IllegalArgumentException e )
         {
-            System.out.println( e.toString() );
+            System.out.println( e.getMessage() );
+            System.exit( -1 );
+        }
+        if ( profiler.run( System.out ) > 0 )
+        {
+            System.exit( -1 );
+        }
+    }
+
+    static void serve( String arg )
+    {
+        try
+        {
+            CompileServer server = new CompileServer();
+            if ( arg.startsWith( "--server=" ) )
+            {
+                server.listen( Integer.parseInt( arg.substring( 9 ) ) );
+            }
+            else
+            {
+                server.serve( System.in, System.out );
+            }
         }
         catch ( IOException e )
         {
@@ -0,0 +1,103 @@
+package bench;
+
+import lexer.Lexer;
+import lexer.LexerTokenManager;
+import myparser.JavaCharStream;
+import myparser.MiniJavaParserConstants;
+import myparser.MiniJavaParserTokenManager;
+import driver.ProgramGenerator;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Tokens per second of the token manager generated by JavaCC and of the
+// hand-written lexer (lexer.Lexer), alone and through the Token objects
+// LexerTokenManager makes for the parser. The "tokens" counter is the
+// tokens/s figure, "ops" is whole sources per second.
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class LexerBenchmark
+{
+    @Param( { "BinaryTree", "TreeVisitor", "synthetic:100x10", "synthetic:1000x10" } )
+    public String program;
+
+    byte[] source;
+
+    @State( Scope.Thread )
+    @AuxCounters( AuxCounters.Type.OPERATIONS )
+    public static class Tokens
+    {
+        public long tokens;
+
+        @Setup( Level.Iteration )
+        public void clear()
+        {
+            tokens = 0;
+        }
+    }
+
+    @Setup( Level.Trial )
+    public void setup() throws IOException
+    {
+        if ( program.startsWith( "synthetic:" ) )
+        {
+            String[] size = program.substring( 10 ).split( "x" );
+            ProgramGenerator g = new ProgramGenerator();
+            g.setClasses( Integer.parseInt( size[0] ) );
+            g.setMethods( Integer.parseInt( size[1] ) );
+            source = g.generate().getBytes();
+        }
+        else
+        {
+            String dir = System.getProperty( "minijava.input", "../input" );
+            source = Files.readAllBytes( Paths.get( dir, program + ".java" ) );
+        }
+    }
+
+    @Benchmark
+    public int javacc( Tokens counter )
+    {
+        MiniJavaParserTokenManager tm =
+            new MiniJavaParserTokenManager( new JavaCharStream( new ByteArrayInputStream( source ) ) );
+        return drain( tm, counter );
+    }
+
+    @Benchmark
+    public int lexer( Tokens counter )
+    {
+        Lexer lexer = new Lexer( source, source.length );
+        lexer.run();
+        counter.tokens += lexer.count;
+        return lexer.count;
+    }
+
+    @Benchmark
+    public int lexerTokens( Tokens counter )
+    {
+        Lexer lexer = new Lexer( source, source.length );
+        lexer.run();
+        return drain( new LexerTokenManager( lexer ), counter );
+    }
+
+    static int drain( MiniJavaParserTokenManager tm, Tokens counter )
+    {
+        int n = 0;
+        while ( true )
+        {
+            n++;
+            if ( tm.getNextToken().kind == MiniJavaParserConstants.EOF )
+            {
+                break;
+            }
+        }
+        counter.tokens += n;
+        return n;
+    }
+}
@@ -0,0 +1,127 @@
+package bench;
+
+import syntaxtree.Program;
+import visitor.BindVisitor;
+import visitor.BuildSymbolTableVisitor;
+import visitor.CodeGenVisitor;
+import visitor.TypeCheckVisitor;
+import lexer.Lexer;
+import lexer.LexerTokenManager;
+import myparser.MiniJavaParser;
+import myparser.ParseException;
+import mips.AsmWriter;
+import mips.InstructionList;
+import driver.ProgramGenerator;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Each phase of the compiler on its own: parsing (with the hand-written
+// lexer the compiler uses by default, and with the token manager generated
+// by JavaCC), building the symbol table, binding the names, type checking
+// and (stack machine) code generation. Every phase runs on the result of
+// the previous ones, computed once per trial.
+//
+// "program" is a program of ../input, or "synthetic:<classes>x<methods>"
+// for one made by driver.ProgramGenerator. Run with "-prof gc" for the
+// allocation rate of each phase.
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class PhaseBenchmark
+{
+    @Param( { "BinarySearch", "BinaryTree", "BubbleSort", "LinearSearch", "LinkedList",
+              "QuickSort", "TreeVisitor", "synthetic:100x10", "synthetic:1000x10" } )
+    public String program;
+
+    byte[] source;
+    Program root;
+    BuildSymbolTableVisitor symbols;
+
+    @Setup( Level.Trial )
+    public void setup() throws IOException, ParseException
+    {
+        if ( program.startsWith( "synthetic:" ) )
+        {
+            String[] size = program.substring( 10 ).split( "x" );
+            ProgramGenerator g = new ProgramGenerator();
+            g.setClasses( Integer.parseInt( size[0] ) );
+            g.setMethods( Integer.parseInt( size[1] ) );
+            source = g.generate().getBytes();
+        }
+        else
+        {
+            String dir = System.getProperty( "minijava.input", "../input" );
+            source = Files.readAllBytes( Paths.get( dir, program + ".java" ) );
+        }
+        root = parse();
+        symbols = buildSymbolTable();
+        bind();
+        typeCheck();
+    }
+
+    @Benchmark
+    public Program parse() throws ParseException
+    {
+        Lexer lexer = new Lexer( source, source.length );
+        lexer.run();
+        return new MiniJavaParser( new LexerTokenManager( lexer ) ).Goal();
+    }
+
+    // --javacc-lexer
+    @Benchmark
+    public Program parseJavacc() throws ParseException
+    {
+        return new MiniJavaParser( new ByteArrayInputStream( source ) ).Goal();
+    }
+
+    @Benchmark
+    public BuildSymbolTableVisitor buildSymbolTable()
+    {
+        BuildSymbolTableVisitor v = new BuildSymbolTableVisitor();
+        root.accept( v );
+        return v;
+    }
+
+    @Benchmark
+    public BindVisitor bind()
+    {
+        BindVisitor v = new BindVisitor( symbols.getSymTab() );
+        root.accept( v );
+        return v;
+    }
+
+    @Benchmark
+    public TypeCheckVisitor typeCheck()
+    {
+        TypeCheckVisitor v = new TypeCheckVisitor( symbols.getSymTab() );
+        root.accept( v );
+        return v;
+    }
+
+    @Benchmark
+    public InstructionList codeGen()
+    {
+        InstructionList code = new InstructionList();
+        root.accept( new CodeGenVisitor( symbols.getSymTab(), code ) );
+        return code;
+    }
+
+    // The code written out as it is generated (what -O0 does)
+    @Benchmark
+    public AsmWriter codeGenText()
+    {
+        AsmWriter out = new AsmWriter( Channels.newChannel( OutputStream.nullOutputStream() ) );
+        root.accept( new CodeGenVisitor( symbols.getSymTab(), out ) );
+        out.flush();
+        return out;
+    }
+}
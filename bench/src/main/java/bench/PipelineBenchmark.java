@@ -0,0 +1,62 @@
+package bench;
+
+import driver.Compiler;
+import driver.ProgramGenerator;
+import mips.AsmWriter;
+import myparser.ParseException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// The whole compiler (what "java Main" does, output included) on programs
+// of increasing size made by driver.ProgramGenerator, to see how the
+// compile time scales with the number of classes and methods.
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class PipelineBenchmark
+{
+    @Param( { "10", "100", "1000" } )
+    public int classes;
+
+    @Param( { "10" } )
+    public int methods;
+
+    @Param( { "" } )
+    public String options;      // options of Main, separated by spaces
+
+    byte[] source;
+
+    @Setup( Level.Trial )
+    public void setup()
+    {
+        ProgramGenerator g = new ProgramGenerator();
+        g.setClasses( classes );
+        g.setMethods( methods );
+        source = g.generate().getBytes();
+    }
+
+    @Benchmark
+    public int compile() throws IOException, ParseException
+    {
+        Compiler compiler = new Compiler();
+        for ( String o : options.split( " " ) )
+        {
+            if ( !o.isEmpty() )
+            {
+                compiler.option( o );
+            }
+        }
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        AsmWriter out = new AsmWriter( Channels.newChannel( text ) );
+        compiler.compile( new ByteArrayInputStream( source ), out );
+        out.close();
+        return text.size();
+    }
+}
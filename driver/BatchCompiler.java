@@ -0,0 +1,184 @@
+package driver;
+
+import visitor.CompileError;
+import myparser.ParseException;
+import myparser.TokenMgrError;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Compiles many programs in one JVM, on a pool of worker threads.
+//
+// Every source file "X.java" (or every .java file of a directory) is
+// compiled into "X.asm" next to it, with the options of Main. Each
+// compilation has its own Compiler, parser and visitors, so they can run
+// concurrently.
+public class BatchCompiler
+{
+    int jobs = Runtime.getRuntime().availableProcessors();
+    ArrayList<String> options = new ArrayList<String>();
+    ArrayList<File> sources = new ArrayList<File>();
+
+    // What happened to one source file
+    static class Result
+    {
+        File source;
+        int lines;
+        long size;      // of the output
+        String error;   // null if it compiled
+    }
+
+    // Set the number of worker threads
+    public void setJobs( int jobs )
+    {
+        this.jobs = Math.max( 1, jobs );
+    }
+
+    // A Main option, passed on to every compilation
+    public void addOption( String option )
+    {
+        if ( !new Compiler().option( option ) )
+        {
+            throw new IllegalArgumentException( "Unknown option " + option );
+        }
+        options.add( option );
+    }
+
+    // A source file, or a directory of them
+    public void addSource( String name )
+    {
+        sources.addAll( java_files( name ) );
+    }
+
+    // "name" if it is a file, else the .java files of directory "name"
+    static ArrayList<File> java_files( String name )
+    {
+        ArrayList<File> l = new ArrayList<File>();
+        File f = new File( name );
+        if ( f.isDirectory() )
+        {
+            File[] files = f.listFiles();
+            Arrays.sort( files );
+            for ( File g : files )
+            {
+                if ( g.isFile() && g.getName().endsWith( ".java" ) )
+                {
+                    l.add( g );
+                }
+            }
+        }
+        else
+        {
+            l.add( f );
+        }
+        return l;
+    }
+
+    static File output_file( File source )
+    {
+        String name = source.getPath();
+        if ( name.endsWith( ".java" ) )
+        {
+            name = name.substring( 0, name.length() - 5 );
+        }
+        return new File( name + ".asm" );
+    }
+
+    Result compile( File source )
+    {
+        Result r = new Result();
+        r.source = source;
+        Compiler compiler = new Compiler();
+        for ( String o : options )
+        {
+            compiler.option( o );
+        }
+        try
+        {
+            compiler.compile( source.getPath(), output_file( source ).getPath() );
+            r.lines = compiler.lines();
+            r.size = compiler.size();
+        }
+        catch ( ParseException | TokenMgrError | CompileError | IllegalArgumentException e )
+        {
+            r.error = CompileServer.one_line( e.getMessage() );
+        }
+        catch ( IOException e )
+        {
+            r.error = e.toString();
+        }
+        catch ( RuntimeException e )
+        {
+            r.error = "internal: " + e.toString();
+        }
+        catch ( StackOverflowError e )
+        {
+            // Nesting too deep for the parser or the visitors
+            r.error = "internal: " + e.toString();
+        }
+        catch ( OutOfMemoryError e )
+        {
+            // Only this file fails; what was built for it is dropped
+            compiler = null;
+            r.error = "internal: " + e.toString();
+        }
+        return r;
+    }
+
+    // Compile all the sources, print the errors and the throughput to
+    // "log". Returns the number of files that failed to compile.
+    public int run( PrintStream log ) throws InterruptedException
+    {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool( jobs );
+        ArrayList<Future<Result>> results = new ArrayList<Future<Result>>();
+        for ( final File f : sources )
+        {
+            results.add( pool.submit( () -> compile( f ) ) );
+        }
+
+        int failed = 0;
+        long lines = 0;
+        long size = 0;
+        try
+        {
+            for ( Future<Result> future : results )
+            {
+                Result r;
+                try
+                {
+                    r = future.get();
+                }
+                catch ( ExecutionException e )
+                {
+                    // Another Error in a worker
+                    throw new RuntimeException( e.getCause() );
+                }
+                if ( r.error != null )
+                {
+                    log.println( r.source + ": " + r.error );
+                    failed++;
+                }
+                lines += r.lines;
+                size += r.size;
+            }
+        }
+        finally
+        {
+            // Its threads would keep the JVM running
+            pool.shutdown();
+        }
+
+        double s = ( System.nanoTime() - start ) / 1e9;
+        log.println( String.format( "%d files (%d lines, %d bytes of assembly) in %.2f s with %d workers: "
+                                    + "%.1f files/s, %.0f lines/s%s",
+                                    sources.size(), lines, size, s, jobs,
+                                    sources.size() / s, lines / s,
+                                    failed > 0 ? ", " + failed + " failed" : "" ) );
+        return failed;
+    }
+}
@@ -0,0 +1,137 @@
+package driver;
+
+import visitor.CompileError;
+import myparser.ParseException;
+import myparser.TokenMgrError;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+// A long-running compiler: the JVM, the parser and the (JIT compiled)
+// passes stay resident, and programs are compiled one request after the
+// other, instead of starting a new JVM for every program.
+//
+// The protocol is line based. A request is
+//
+//     compile [options] <input file> <output file>
+//
+// with the options of Main, and is answered by one line:
+//
+//     ok <output file> <time> ms (parse <time>, check <time>, gen <time>) <size> bytes
+//     error <message>
+//
+// "quit" (or the end of the input) closes the connection, "shutdown"
+// also stops a socket server.
+public class CompileServer
+{
+    boolean shutdown = false;
+
+    // Serve the requests read from standard input
+    public void serve( InputStream in, OutputStream out ) throws IOException
+    {
+        BufferedReader requests = new BufferedReader( new InputStreamReader( in ) );
+        PrintWriter responses = new PrintWriter( new OutputStreamWriter( out ), true );
+        String line;
+        while ( !shutdown && ( line = requests.readLine() ) != null )
+        {
+            line = line.trim();
+            if ( line.isEmpty() )
+            {
+                continue;
+            }
+            if ( line.equals( "quit" ) )
+            {
+                break;
+            }
+            if ( line.equals( "shutdown" ) )
+            {
+                shutdown = true;
+                break;
+            }
+            responses.println( handle( line ) );
+        }
+    }
+
+    // Serve the connections to "port" on the loopback interface, one at
+    // a time, until a "shutdown" request
+    public void listen( int port ) throws IOException
+    {
+        ServerSocket server = new ServerSocket( port, 50, InetAddress.getLoopbackAddress() );
+        System.err.println( "Compile server listening on port " + server.getLocalPort() );
+        while ( !shutdown )
+        {
+            Socket s = server.accept();
+            try
+            {
+                serve( s.getInputStream(), s.getOutputStream() );
+            }
+            catch ( IOException e )
+            {
+                System.err.println( e.toString() );
+            }
+            finally
+            {
+                s.close();
+            }
+        }
+        server.close();
+    }
+
+    // Answer one request
+    String handle( String line )
+    {
+        String[] words = line.split( "\\s+" );
+        if ( !words[0].equals( "compile" ) || words.length < 3 )
+        {
+            return "error bad request: " + line;
+        }
+
+        Compiler compiler = new Compiler();
+        for ( int i = 1; i < words.length - 2; i++ )
+        {
+            if ( !compiler.option( words[i] ) )
+            {
+                return "error unknown option " + words[i];
+            }
+        }
+        String input = words[words.length - 2];
+        String output = words[words.length - 1];
+
+        try
+        {
+            compiler.compile( input, output );
+            return "ok " + output + " " + compiler.timing() + " " + compiler.size() + " bytes";
+        }
+        catch ( ParseException | TokenMgrError | CompileError | IllegalArgumentException e )
+        {
+            return "error " + one_line( e.getMessage() );
+        }
+        catch ( IOException e )
+        {
+            return "error " + one_line( e.toString() );
+        }
+        catch ( RuntimeException e )
+        {
+            // A bug in the compiler: report it and go on with the next request
+            return "error internal: " + one_line( e.toString() );
+        }
+        catch ( StackOverflowError e )
+        {
+            // Nesting too deep for the parser or the visitors
+            return "error internal: " + e.toString();
+        }
+        catch ( OutOfMemoryError e )
+        {
+            // A program too big for the heap: drop what was built for it
+            // and go on with the next request
+            compiler = null;
+            return "error internal: " + e.toString();
+        }
+    }
+
+    static String one_line( String s )
+    {
+        return ( s == null ) ? "" : s.replaceAll( "\\s*\\n\\s*", " " ).trim();
+    }
+}
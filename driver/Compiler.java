@@ -0,0 +1,329 @@
+package driver;
+
+import syntaxtree.*;
+import visitor.*;
+import myparser.*;
+import lexer.Lexer;
+import lexer.LexerTokenManager;
+import ir.*;
+import mips.AsmWriter;
+import mips.InstructionList;
+import mips.Peephole;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// One configuration of the compiler: the command line options, and the
+// phases that turn a MiniJava program into MIPS code.
+//
+// A Compiler keeps no state from one program to the next, so the compile
+// server (driver.CompileServer) runs many compilations with one instance.
+public class Compiler
+{
+    boolean regalloc = false;
+    boolean dump_ir = false;
+    boolean optimize = true;
+    ArrayList<String> rules = null;
+    int window = Peephole.DEFAULT_WINDOW;
+    boolean report = false;
+    int inline_size = Inliner.DEFAULT_SIZE;
+    boolean inline_report = false;
+    boolean javacc_lexer = false;
+    boolean compact = false;
+
+    // Time spent in each phase of the last compilation, in nanoseconds
+    long parse_time;
+    long check_time;
+    long gen_time;
+    int lines;      // of the last program compiled from a file
+    long size;      // bytes of assembly written by the last compile( input, output )
+
+    // Set option "arg" (see Main); false if it is not an option
+    public boolean option( String arg )
+    {
+        if ( arg.equals( "--regalloc" ) )
+        {
+            regalloc = true;
+        }
+        else if ( arg.equals( "-O0" ) )
+        {
+            optimize = false;
+        }
+        else if ( arg.startsWith( "--peephole=" ) )
+        {
+            rules = new ArrayList<String>( Arrays.asList( arg.substring( 11 ).split( "," ) ) );
+        }
+        else if ( arg.startsWith( "--peephole-window=" ) )
+        {
+            window = Integer.parseInt( arg.substring( 18 ) );
+        }
+        else if ( arg.equals( "--peephole-report" ) )
+        {
+            report = true;
+        }
+        else if ( arg.startsWith( "--inline=" ) )
+        {
+            inline_size = Integer.parseInt( arg.substring( 9 ) );
+        }
+        else if ( arg.equals( "--inline-report" ) )
+        {
+            inline_report = true;
+        }
+        else if ( arg.equals( "--ir" ) )
+        {
+            dump_ir = true;
+        }
+        else if ( arg.equals( "--javacc-lexer" ) )
+        {
+            javacc_lexer = true;
+        }
+        else if ( arg.equals( "--compact" ) )
+        {
+            compact = true;
+        }
+        else if ( arg.equals( "--annotate" ) )
+        {
+            compact = false;
+        }
+        else
+        {
+            return false;
+        }
+        return true;
+    }
+
+    // Compile the program read from "in" and write the result to "out".
+    // Semantic errors are thrown as visitor.CompileError.
+    public void compile( InputStream in, AsmWriter out ) throws IOException, ParseException
+    {
+        SourceBuffer source = SourceBuffer.get();
+        source.read( in );
+        compile( source.bytes(), source.length(), out );
+    }
+
+    // Compile file "input" and write the result to "out"
+    public void compile( String input, AsmWriter out ) throws IOException, ParseException
+    {
+        SourceBuffer source = read( input );
+        compile( source.bytes(), source.length(), out );
+    }
+
+    // Compile the first "length" bytes of "source" and write the result to
+    // "out"
+    void compile( byte[] source, int length, AsmWriter out ) throws ParseException
+    {
+        out.setComments( !compact );
+        out.setBlankLines( !compact );
+        InstructionList code = generate( source, length, out );
+        if ( code != null )
+        {
+            out.write( code );
+        }
+    }
+
+    // Compile the program read from "in" into MIPS code (--ir is ignored)
+    public InstructionList compile( InputStream in ) throws IOException, ParseException
+    {
+        SourceBuffer source = SourceBuffer.get();
+        source.read( in );
+        return generate( source.bytes(), source.length(), null );
+    }
+
+    // Compile file "input" into MIPS code (--ir is ignored)
+    public InstructionList compile( File input ) throws IOException, ParseException
+    {
+        SourceBuffer source = read( input.getPath() );
+        return generate( source.bytes(), source.length(), null );
+    }
+
+    // The bytes of file "input", in the buffer of this thread. It is only
+    // valid until the next file is read.
+    SourceBuffer read( String input ) throws IOException
+    {
+        SourceBuffer source = SourceBuffer.get();
+        source.read( Paths.get( input ) );
+        lines = source.lines();
+        return source;
+    }
+
+    // The AST of the program in the first "length" bytes of "source".
+    // The hand-written lexer is used unless --javacc-lexer is given. The
+    // token manager generated by JavaCC takes over for the sources the
+    // lexer does not support, and to report the syntax errors.
+    Program parse( byte[] source, int length ) throws ParseException
+    {
+        if ( !javacc_lexer )
+        {
+            Lexer lexer = new Lexer( source, length );
+            if ( lexer.run() )
+            {
+                try
+                {
+                    return new MiniJavaParser( new LexerTokenManager( lexer ) ).Goal();
+                }
+                catch ( ParseException e )
+                {
+                    // Parsed again below, for the error message
+                }
+            }
+        }
+        return new MiniJavaParser( new ByteArrayInputStream( source, 0, length ) ).Goal();
+    }
+
+    // The MIPS code of the program in the first "length" bytes of
+    // "source", or null if it was written to "out" instead: its IR (--ir),
+    // or with -O0 the code itself, since no pass runs over it then. With
+    // no "out", the code is always returned (and --ir is ignored).
+    InstructionList generate( byte[] source, int length, AsmWriter out ) throws ParseException
+    {
+        long start = System.nanoTime();
+        Program root = parse( source, length );
+        long parsed = System.nanoTime();
+
+        // Build the symbol table
+        BuildSymbolTableVisitor buildSymTab = new BuildSymbolTableVisitor();
+        root.accept( buildSymTab );
+
+        // Bind the variable names to their declarations
+        root.accept( new BindVisitor( buildSymTab.getSymTab() ) );
+
+        // Type check
+        TypeCheckVisitor typeCheck =
+            new TypeCheckVisitor( buildSymTab.getSymTab() );
+        root.accept( typeCheck );
+        long checked = System.nanoTime();
+
+        if ( optimize )
+        {
+            root.accept( new ConstantFoldVisitor() );
+        }
+
+        InstructionList list = ( optimize || out == null ) ? new InstructionList() : null;
+        AsmWriter code = ( list != null ) ? list : out;
+        if ( regalloc || dump_ir && out != null )
+        {
+            IRGenVisitor irgen = new IRGenVisitor( buildSymTab.getSymTab() );
+            root.accept( irgen );
+            if ( optimize )
+            {
+                optimize( irgen.getProgram() );
+            }
+            if ( dump_ir && out != null )
+            {
+                out.write( irgen.getProgram().toString() );
+                timing( start, parsed, checked );
+                return null;
+            }
+            new MipsEmitter( code ).emit( irgen.getProgram() );
+        }
+        else
+        {
+            CodeGenVisitor cgen = new CodeGenVisitor( buildSymTab.getSymTab(), code );
+            root.accept( cgen );
+        }
+
+        if ( optimize )
+        {
+            Peephole peephole = new Peephole( rules, window );
+            peephole.run( list );
+            if ( report )
+            {
+                peephole.report( System.err );
+            }
+        }
+        timing( start, parsed, checked );
+        return list;
+    }
+
+    // Compile file "input" into file "output". The output is only written
+    // if the compilation succeeds: it goes to "output.tmp" first, which
+    // then replaces it.
+    public void compile( String input, String output ) throws IOException, ParseException
+    {
+        write( read( input ), output );
+    }
+
+    // Compile the program read from "in" into file "output", the same way
+    public void compile( InputStream in, String output ) throws IOException, ParseException
+    {
+        SourceBuffer source = SourceBuffer.get();
+        source.read( in );
+        write( source, output );
+    }
+
+    void write( SourceBuffer source, String output ) throws IOException, ParseException
+    {
+        Path path = Paths.get( output );
+        Path temp = path.resolveSibling( path.getFileName() + ".tmp" );
+        FileChannel channel = FileChannel.open( temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING );
+        try
+        {
+            AsmWriter out = new AsmWriter( channel );
+            compile( source.bytes(), source.length(), out );
+            out.close();
+            size = out.written();
+            Files.move( temp, path, StandardCopyOption.REPLACE_EXISTING );
+        }
+        catch ( UncheckedIOException e )
+        {
+            throw e.getCause();
+        }
+        finally
+        {
+            channel.close();
+            Files.deleteIfExists( temp );
+        }
+    }
+
+    public int lines() { return lines; }
+
+    public long size() { return size; }
+
+    void timing( long start, long parsed, long checked )
+    {
+        parse_time = parsed - start;
+        check_time = checked - parsed;
+        gen_time = System.nanoTime() - checked;
+    }
+
+    // Timing of the last compilation, e.g. "2.1 ms (parse 0.8, check 0.3, gen 1.0)"
+    public String timing()
+    {
+        return String.format( "%.1f ms (parse %.1f, check %.1f, gen %.1f)",
+                              ms( parse_time + check_time + gen_time ),
+                              ms( parse_time ), ms( check_time ), ms( gen_time ) );
+    }
+
+    static double ms( long ns )
+    {
+        return ns / 1e6;
+    }
+
+    // The passes over the three-address code
+    void optimize( IRProgram p )
+    {
+        if ( inline_size > 0 )
+        {
+            Inliner inliner = new Inliner( p, inline_size );
+            inliner.run();
+            if ( inline_report )
+            {
+                inliner.report( System.err );
+            }
+        }
+        ArrayList<IRMethod> methods = new ArrayList<IRMethod>( p.methods() );
+        methods.add( 0, p.main() );
+        for ( IRMethod m : methods )
+        {
+            new ConstantPropagation( m ).run();
+            new BoundsCheckElimination( m ).run();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package driver;
+
+import visitor.CompileError;
+import myparser.ParseException;
+import myparser.TokenMgrError;
+import mips.InstructionList;
+import mips.Simulator;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+// Runs the test programs in one JVM: each program is compiled, its code is
+// run by mips.Simulator (instead of MARS) and the output is compared with
+// its golden file. Prints the number of instructions each program
+// executed, to compare the code generators.
+public class GoldenTest
+{
+    // Programs that run longer than this are assumed not to terminate
+    static final long LIMIT = 500000000L;
+
+    ArrayList<String> options = new ArrayList<String>();
+    ArrayList<String> sources = new ArrayList<String>();
+    ArrayList<String> goldens = new ArrayList<String>();
+
+    // A Main option, passed on to every compilation
+    public void addOption( String option )
+    {
+        if ( !new Compiler().option( option ) )
+        {
+            throw new IllegalArgumentException( "Unknown option " + option );
+        }
+        options.add( option );
+    }
+
+    // Program "source" must print the contents of file "golden"
+    public void addTest( String source, String golden )
+    {
+        sources.add( source );
+        goldens.add( golden );
+    }
+
+    // Run all the tests, report to "log". Returns the number of failures.
+    public int run( PrintStream log )
+    {
+        int failed = 0;
+        long total = 0;
+        for ( int t = 0; t < sources.size(); t++ )
+        {
+            String source = sources.get( t );
+            String error = null;
+            try
+            {
+                Compiler compiler = new Compiler();
+                for ( String o : options )
+                {
+                    compiler.option( o );
+                }
+                InstructionList code = compiler.compile( new File( source ) );
+
+                Simulator sim = new Simulator( code );
+                sim.setName( new File( source ).getName().replace( ".java", ".asm" ) );
+                sim.setLimit( LIMIT );
+                sim.run();
+                String expected = new String( Files.readAllBytes( Paths.get( goldens.get( t ) ) ) );
+                error = first_difference( sim.output(), expected );
+                if ( error == null )
+                {
+                    log.println( String.format( "Run %-28s %12d instructions", source, sim.executed() ) );
+                    total += sim.executed();
+                }
+            }
+            catch ( ParseException | TokenMgrError | CompileError | IllegalArgumentException e )
+            {
+                error = CompileServer.one_line( e.getMessage() );
+            }
+            catch ( IOException e )
+            {
+                error = e.toString();
+            }
+            if ( error != null )
+            {
+                log.println( source + " failed: " + error );
+                failed++;
+            }
+        }
+        log.println( String.format( "%d passed, %d failed, %d instructions",
+                                    sources.size() - failed, failed, total ) );
+        return failed;
+    }
+
+    // Where "output" differs from "expected", or null if it does not
+    static String first_difference( String output, String expected )
+    {
+        String[] a = output.split( "\n", -1 );
+        String[] b = expected.split( "\n", -1 );
+        for ( int i = 0; i < Math.max( a.length, b.length ); i++ )
+        {
+            String x = ( i < a.length ) ? a[i] : "<end of output>";
+            String y = ( i < b.length ) ? b[i] : "<end of output>";
+            if ( !x.equals( y ) )
+            {
+                return "line " + ( i + 1 ) + ": got \"" + x + "\", expected \"" + y + "\"";
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,101 @@
+package driver;
+
+import visitor.CompileError;
+import myparser.ParseException;
+import myparser.TokenMgrError;
+import mips.InstructionList;
+import mips.Profile;
+import mips.Simulator;
+import java.io.*;
+import java.util.ArrayList;
+
+// Compiles programs, runs them with mips.Simulator and reports where their
+// instructions go (see mips.Profile): by category and by method for each
+// program, then the totals of all of them, so that the effect of a change
+// to the code generators can be measured.
+public class Profiler
+{
+    ArrayList<String> options = new ArrayList<String>();
+    ArrayList<File> sources = new ArrayList<File>();
+    boolean summary = false;    // only the table of totals
+
+    // A Main option, passed on to every compilation
+    public void addOption( String option )
+    {
+        if ( !new Compiler().option( option ) )
+        {
+            throw new IllegalArgumentException( "Unknown option " + option );
+        }
+        options.add( option );
+    }
+
+    // A program, or a directory of them
+    public void addSource( String name )
+    {
+        sources.addAll( BatchCompiler.java_files( name ) );
+    }
+
+    // Only print the instructions and cycles of each program
+    public void setSummary( boolean summary )
+    {
+        this.summary = summary;
+    }
+
+    // Profile all the programs. Returns the number that failed to compile
+    // or to run.
+    public int run( PrintStream out )
+    {
+        ArrayList<String> names = new ArrayList<String>();
+        ArrayList<Profile> profiles = new ArrayList<Profile>();
+        int failed = 0;
+        for ( File source : sources )
+        {
+            try
+            {
+                Compiler compiler = new Compiler();
+                for ( String o : options )
+                {
+                    compiler.option( o );
+                }
+                InstructionList code = compiler.compile( source );
+
+                Simulator sim = new Simulator( code );
+                sim.setName( source.getName().replace( ".java", ".asm" ) );
+                sim.setLimit( GoldenTest.LIMIT );
+                sim.setProfiling( true );
+                sim.run();
+                names.add( source.getPath() );
+                profiles.add( sim.profile() );
+                if ( !summary )
+                {
+                    out.println( "== " + source );
+                    sim.profile().report( out );
+                    out.println();
+                }
+            }
+            catch ( ParseException | TokenMgrError | CompileError | IllegalArgumentException e )
+            {
+                out.println( source + " failed: " + CompileServer.one_line( e.getMessage() ) );
+                failed++;
+            }
+            catch ( IOException e )
+            {
+                out.println( source + " failed: " + e.toString() );
+                failed++;
+            }
+        }
+
+        long instructions = 0;
+        long cycles = 0;
+        out.println( String.format( "%-32s %12s %12s", "program", "instructions", "cycles" ) );
+        for ( int i = 0; i < profiles.size(); i++ )
+        {
+            Profile.Function t = profiles.get( i ).total();
+            out.println( String.format( "%-32s %12d %12d", names.get( i ), t.instructions(), t.cycles() ) );
+            instructions += t.instructions();
+            cycles += t.cycles();
+        }
+        out.println( String.format( "%-32s %12d %12d", "total", instructions, cycles ) );
+        return failed;
+    }
+}
@@ -0,0 +1,329 @@
+package driver;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+// Generates type correct MiniJava programs of a given size, to stress the
+// compiler and see how it scales:
+//
+//   java driver.ProgramGenerator [options] > program.java
+//     --classes=n        number of classes (besides the main class)
+//     --depth=n          length of the inheritance chains
+//     --methods=n        methods per class
+//     --statements=n     statements per method body (and loop body)
+//     --expr-depth=n     depth of the expressions (at most 20)
+//     --loop-depth=n     nesting of the while loops
+//     --seed=n           the same seed gives the same program
+//
+// The programs also run: loops count up to a small bound, a method only
+// calls methods of its class declared before it or methods of its
+// ancestors, and the values stored in variables are kept small so that
+// the additions cannot overflow.
+public class ProgramGenerator
+{
+    int classes = 10;
+    int depth = 3;
+    int methods = 5;
+    int statements = 4;
+    int expr_depth = 3;
+    int loop_depth = 2;
+    long seed = 1;
+
+    static final int LOOP_BOUND = 3;
+    static final int ARRAY_SIZE = 10;
+    static final int MAX_VALUE = 1000;      // of the values stored
+    static final int MAX_EXPR_DEPTH = 20;   // 1000 * 2^20 still fits in an int
+
+    Random random;
+    StringBuilder out;
+    int indent;
+    int loop;                   // nesting of the current loop
+    int cls;                    // the class being generated
+    int method;                 // the method being generated
+
+    // Set option "arg"; false if it is not an option
+    public boolean option( String arg )
+    {
+        int eq = arg.indexOf( '=' );
+        if ( eq < 0 || !arg.startsWith( "--" ) )
+        {
+            return false;
+        }
+        String name = arg.substring( 2, eq );
+        int v = Integer.parseInt( arg.substring( eq + 1 ) );
+        switch ( name )
+        {
+            case "classes": classes = Math.max( 1, v ); break;
+            case "depth": depth = Math.max( 1, v ); break;
+            case "methods": methods = Math.max( 1, v ); break;
+            case "statements": statements = Math.max( 1, v ); break;
+            case "expr-depth": expr_depth = Math.min( Math.max( 0, v ), MAX_EXPR_DEPTH ); break;
+            case "loop-depth": loop_depth = Math.max( 0, v ); break;
+            case "seed": seed = v; break;
+            default: return false;
+        }
+        return true;
+    }
+
+    public void setClasses( int n ) { classes = Math.max( 1, n ); }
+
+    public void setMethods( int n ) { methods = Math.max( 1, n ); }
+
+    // The superclass of class "c" (-1 if none)
+    int parent( int c )
+    {
+        return ( c % depth == 0 ) ? -1 : c - 1;
+    }
+
+    public String generate()
+    {
+        random = new Random( seed );
+        out = new StringBuilder();
+        indent = 0;
+
+        line( "class Main" );
+        open();
+        line( "public static void main( String[] a )" );
+        open();
+        open();
+        for ( int c = depth - 1; c < classes; c += depth )
+        {
+            line( "System.out.println( new C" + c + "().m" + c + "_" + ( methods - 1 ) + "( 1, 2 ) );" );
+        }
+        if ( classes % depth != 0 )
+        {
+            line( "System.out.println( new C" + ( classes - 1 ) + "().m" + ( classes - 1 ) + "_" + ( methods - 1 ) + "( 1, 2 ) );" );
+        }
+        close();
+        close();
+        close();
+
+        for ( cls = 0; cls < classes; cls++ )
+        {
+            out.append( "\n" );
+            line( "class C" + cls + ( parent( cls ) >= 0 ? " extends C" + parent( cls ) : "" ) );
+            open();
+            line( "int f" + cls + ";" );
+            line( "int[] a" + cls + ";" );
+            for ( method = 0; method < methods; method++ )
+            {
+                out.append( "\n" );
+                method();
+            }
+            close();
+        }
+        return out.toString();
+    }
+
+    void method()
+    {
+        line( "public int m" + cls + "_" + method + "( int p, int q )" );
+        open();
+        line( "int x;" );
+        line( "int y;" );
+        line( "int t;" );
+        for ( int l = 0; l < loop_depth; l++ )
+        {
+            line( "int i" + l + ";" );
+        }
+        line( "a" + cls + " = new int[ " + ARRAY_SIZE + " ];" );
+        line( "x = p;" );
+        line( "y = q;" );
+        line( "f" + cls + " = 0;" );
+        loop = 0;
+        statements( statements );
+        String call = call();
+        if ( call != null )
+        {
+            line( "t = " + call + ";" );
+            store( "x" );
+        }
+        line( "return x;" );
+        close();
+    }
+
+    // A call to a method declared before this one in the class or its
+    // ancestors (null if there is none)
+    String call()
+    {
+        ArrayList<String> callees = new ArrayList<String>();
+        for ( int m = 0; m < method; m++ )
+        {
+            callees.add( "m" + cls + "_" + m );
+        }
+        for ( int c = parent( cls ); c >= 0; c = parent( c ) )
+        {
+            for ( int m = 0; m < methods; m++ )
+            {
+                callees.add( "m" + c + "_" + m );
+            }
+        }
+        if ( callees.isEmpty() )
+        {
+            return null;
+        }
+        return "this." + callees.get( random.nextInt( callees.size() ) ) + "( x, y )";
+    }
+
+    void statements( int n )
+    {
+        for ( int s = 0; s < n; s++ )
+        {
+            int kind = random.nextInt( 6 );
+            if ( kind == 0 && loop < loop_depth )
+            {
+                loop();
+            }
+            else if ( kind == 1 )
+            {
+                line( "if ( " + condition( expr_depth ) + " )" );
+                open();
+                assign();
+                close();
+                line( "else" );
+                open();
+                assign();
+                close();
+            }
+            else if ( kind == 2 && loop == 0 )
+            {
+                line( "System.out.println( " + expression( expr_depth ) + " );" );
+            }
+            else
+            {
+                assign();
+            }
+        }
+    }
+
+    void loop()
+    {
+        String i = "i" + loop;
+        line( i + " = 0;" );
+        line( "while ( " + i + " < " + LOOP_BOUND + " )" );
+        open();
+        loop++;
+        statements( statements );
+        loop--;
+        line( i + " = " + i + " + 1;" );
+        close();
+    }
+
+    // An assignment to a variable, a field or an array element
+    void assign()
+    {
+        line( "t = " + expression( expr_depth ) + ";" );
+        switch ( random.nextInt( 4 ) )
+        {
+            case 0:
+                store( "x" );
+                break;
+            case 1:
+                store( "y" );
+                break;
+            case 2:
+                store( "f" + cls );
+                break;
+            default:
+                store( "a" + cls + "[ " + random.nextInt( ARRAY_SIZE ) + " ]" );
+                break;
+        }
+    }
+
+    // "v = t", or "v = 1" if t is not small
+    void store( String v )
+    {
+        line( "if ( t < " + MAX_VALUE + " && ( 0 - " + MAX_VALUE + " ) < t )" );
+        line( "    " + v + " = t;" );
+        line( "else" );
+        line( "    " + v + " = 1;" );
+    }
+
+    // An int expression at most twice as large as its operands
+    String expression( int d )
+    {
+        if ( d == 0 || random.nextInt( 4 ) == 0 )
+        {
+            return leaf();
+        }
+        switch ( random.nextInt( 4 ) )
+        {
+            case 0:
+                return "( " + expression( d - 1 ) + " + " + expression( d - 1 ) + " )";
+            case 1:
+                return "( " + expression( d - 1 ) + " - " + expression( d - 1 ) + " )";
+            case 2:
+                return "( " + expression( d - 1 ) + " * 2 )";
+            default:
+                return "( " + expression( d - 1 ) + " )";
+        }
+    }
+
+    String leaf()
+    {
+        switch ( random.nextInt( 8 ) )
+        {
+            case 0: return "" + random.nextInt( 100 );
+            case 1: return "p";
+            case 2: return "q";
+            case 3: return "y";
+            case 4: return "f" + cls;
+            case 5: return "a" + cls + "[ " + random.nextInt( ARRAY_SIZE ) + " ]";
+            case 6: return "a" + cls + ".length";
+            default: return "x";
+        }
+    }
+
+    String condition( int d )
+    {
+        switch ( random.nextInt( 4 ) )
+        {
+            case 0:
+                return condition_leaf( d ) + " && " + condition_leaf( d );
+            case 1:
+                return "!( " + condition_leaf( d ) + " )";
+            default:
+                return condition_leaf( d );
+        }
+    }
+
+    String condition_leaf( int d )
+    {
+        return "( " + expression( d / 2 ) + " < " + expression( d / 2 ) + " )";
+    }
+
+    void line( String s )
+    {
+        for ( int i = 0; i < indent; i++ )
+        {
+            out.append( "    " );
+        }
+        out.append( s ).append( "\n" );
+    }
+
+    void open()
+    {
+        line( "{" );
+        indent++;
+    }
+
+    void close()
+    {
+        indent--;
+        line( "}" );
+    }
+
+    public static void main( String [] args )
+    {
+        ProgramGenerator g = new ProgramGenerator();
+        for ( String a : args )
+        {
+            if ( !g.option( a ) )
+            {
+                System.out.println( "Unknown option " + a );
+                System.exit( -1 );
+            }
+        }
+        System.out.print( g.generate() );
+    }
+}
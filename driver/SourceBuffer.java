@@ -0,0 +1,117 @@
+package driver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// The bytes of a source file, read with one bulk read (a few for standard
+// input) into an array that is kept from one file to the next, and handed
+// to the lexer as is.
+//
+// Each thread has its own (see get()), so the workers of BatchCompiler and
+// the compile server read file after file without allocating or refilling
+// a stream buffer per character.
+public class SourceBuffer
+{
+    static final int INITIAL_SIZE = 64 * 1024;
+
+    static final ThreadLocal<SourceBuffer> buffers = ThreadLocal.withInitial( SourceBuffer::new );
+
+    byte[] bytes = new byte[INITIAL_SIZE];
+    int length;
+
+    // The buffer of the current thread
+    public static SourceBuffer get()
+    {
+        return buffers.get();
+    }
+
+    public byte[] bytes() { return bytes; }
+
+    public int length() { return length; }
+
+    // Read all of file "path"
+    public void read( Path path ) throws IOException
+    {
+        FileChannel channel = FileChannel.open( path, StandardOpenOption.READ );
+        try
+        {
+            long size = channel.size();
+            if ( size > Integer.MAX_VALUE - 8 )
+            {
+                throw new IOException( path + " is too large" );
+            }
+            // One more byte, so that the first read normally gets it all
+            // and the second one sees the end
+            length = 0;
+            reserve( ( int ) size + 1 );
+            ByteBuffer b = ByteBuffer.wrap( bytes );
+            while ( true )
+            {
+                if ( !b.hasRemaining() )
+                {
+                    // The file has grown meanwhile
+                    length = b.position();
+                    reserve( length + 1 );
+                    b = ByteBuffer.wrap( bytes, length, bytes.length - length );
+                }
+                if ( channel.read( b ) < 0 )
+                {
+                    break;
+                }
+            }
+            length = b.position();
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    // Read "in" up to its end
+    public void read( InputStream in ) throws IOException
+    {
+        length = 0;
+        while ( true )
+        {
+            if ( length == bytes.length )
+            {
+                reserve( length + 1 );
+            }
+            int n = in.read( bytes, length, bytes.length - length );
+            if ( n < 0 )
+            {
+                return;
+            }
+            length += n;
+        }
+    }
+
+    // The number of lines read
+    public int lines()
+    {
+        int n = 0;
+        for ( int i = 0; i < length; i++ )
+        {
+            if ( bytes[i] == '\n' )
+            {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    // Room for at least "size" bytes (the contents are kept)
+    void reserve( int size )
+    {
+        if ( size > bytes.length )
+        {
+            byte[] b = new byte[Math.max( size, 2 * bytes.length )];
+            System.arraycopy( bytes, 0, b, 0, length );
+            bytes = b;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ir;
+
+import java.util.ArrayList;
+
+// A maximal sequence of quads entered only at the top and left only at the
+// bottom.
+public class BasicBlock
+{
+    int id;
+    ArrayList<Quad> quads;
+    ArrayList<BasicBlock> succ;
+    ArrayList<BasicBlock> pred;
+
+    BasicBlock( int id )
+    {
+        this.id = id;
+        quads = new ArrayList<Quad>();
+        succ = new ArrayList<BasicBlock>();
+        pred = new ArrayList<BasicBlock>();
+    }
+
+    public int id() { return id; }
+
+    public ArrayList<Quad> quads() { return quads; }
+
+    public ArrayList<BasicBlock> succ() { return succ; }
+
+    public ArrayList<BasicBlock> pred() { return pred; }
+
+    // The label the block starts with (null if it has none)
+    public String label()
+    {
+        if ( !quads.isEmpty() && quads.get( 0 ).op == Quad.Op.LABEL )
+        {
+            return quads.get( 0 ).label;
+        }
+        return null;
+    }
+
+    // The last quad of the block (null if the block is empty)
+    public Quad last()
+    {
+        return quads.isEmpty() ? null : quads.get( quads.size() - 1 );
+    }
+
+    void addEdge( BasicBlock to )
+    {
+        if ( !succ.contains( to ) )
+        {
+            succ.add( to );
+            to.pred.add( this );
+        }
+    }
+
+    public String toString()
+    {
+        StringBuilder s = new StringBuilder( "B" + id );
+        for ( int i = 0; i < succ.size(); i++ )
+        {
+            s.append( i == 0 ? " -> " : ", " ).append( "B" ).append( succ.get( i ).id );
+        }
+        return s.toString();
+    }
+}
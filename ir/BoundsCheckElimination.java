@@ -0,0 +1,842 @@
+package ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+// Remove the BOUNDS checks whose index is known to be in [0, length).
+//
+// A forward analysis over the control flow graph of one method tracks, on
+// entry to each block:
+//   - an interval [lo, hi] for every temp
+//   - which temps hold the length of which array
+//   - for every array, the temps known to be smaller than its length
+//   - a lower bound for the length of the arrays allocated in the method
+//
+// Facts come from the instructions (i = 0, i = i + 1, a = new int [10],
+// a check that passed) and from the branches: on the edge where i < n holds
+// with n = a.length, i is below the length of a. Intervals are widened at
+// loop heads. Only the facts about the temps live on entry to a block are
+// kept in its state.
+//
+// An array is known by the temp holding it, or, for a field, by the object
+// temp and the field offset; a store to that offset or a call forgets
+// everything known about the field.
+public class BoundsCheckElimination
+{
+    static final long MIN = Integer.MIN_VALUE;
+    static final long MAX = Integer.MAX_VALUE;
+
+    // Visits of a block before its intervals are widened
+    static final int WIDEN_AFTER = 2;
+
+    // An array: the one held by temp "base" (offset < 0) or the one in the
+    // field at "offset" of the object held by temp "base"
+    static class ArrayKey
+    {
+        int base;
+        int offset;
+
+        ArrayKey( int base, int offset )
+        {
+            this.base = base;
+            this.offset = offset;
+        }
+
+        boolean isField() { return offset >= 0; }
+
+        public boolean equals( Object o )
+        {
+            if ( !( o instanceof ArrayKey ) )
+            {
+                return false;
+            }
+            ArrayKey k = ( ArrayKey ) o;
+            return base == k.base && offset == k.offset;
+        }
+
+        public int hashCode()
+        {
+            return base * 31 + offset;
+        }
+    }
+
+    // What is known about a temp; a temp without a Fact may hold anything
+    static class Fact
+    {
+        long lo = MIN;
+        long hi = MAX;
+        ArrayKey array;     // the array it holds (null: its own, see array())
+        ArrayKey length;    // the array whose length it holds
+
+        Fact copy()
+        {
+            Fact f = new Fact();
+            f.lo = lo;
+            f.hi = hi;
+            f.array = array;
+            f.length = length;
+            return f;
+        }
+
+        boolean isEmpty()
+        {
+            return lo == MIN && hi == MAX && array == null && length == null;
+        }
+    }
+
+    // The facts on entry to a block. Only the temps something is known
+    // about have an entry, and only the live ones are kept from one block
+    // to the next, so a state stays small however many temps the method
+    // has.
+    static class State
+    {
+        HashMap<Integer, Fact> facts;
+        HashMap<ArrayKey, BitSet> below;   // temps smaller than the length
+        HashMap<ArrayKey, Long> minLength;
+        // The temps whose array or length is based on a temp, or is the
+        // field at an offset (entries may be out of date)
+        HashMap<Integer, ArrayList<Integer>> based;
+        HashMap<Integer, ArrayList<Integer>> fields;
+
+        // Nothing known about any temp
+        State()
+        {
+            facts = new HashMap<Integer, Fact>();
+            below = new HashMap<ArrayKey, BitSet>();
+            minLength = new HashMap<ArrayKey, Long>();
+            based = new HashMap<Integer, ArrayList<Integer>>();
+            fields = new HashMap<Integer, ArrayList<Integer>>();
+        }
+
+        long lo( int t )
+        {
+            Fact f = facts.get( t );
+            return ( f == null ) ? MIN : f.lo;
+        }
+
+        long hi( int t )
+        {
+            Fact f = facts.get( t );
+            return ( f == null ) ? MAX : f.hi;
+        }
+
+        ArrayKey array( int t )
+        {
+            Fact f = facts.get( t );
+            return ( f == null || f.array == null ) ? new ArrayKey( t, -1 ) : f.array;
+        }
+
+        ArrayKey length( int t )
+        {
+            Fact f = facts.get( t );
+            return ( f == null ) ? null : f.length;
+        }
+
+        Fact fact( int t )
+        {
+            Fact f = facts.get( t );
+            if ( f == null )
+            {
+                f = new Fact();
+                facts.put( t, f );
+            }
+            return f;
+        }
+
+        void setArray( int t, ArrayKey k )
+        {
+            fact( t ).array = k;
+            index( t, k );
+        }
+
+        void setLength( int t, ArrayKey k )
+        {
+            fact( t ).length = k;
+            index( t, k );
+        }
+
+        void index( int t, ArrayKey k )
+        {
+            add( based, k.base, t );
+            if ( k.isField() )
+            {
+                add( fields, k.offset, t );
+            }
+        }
+
+        static void add( HashMap<Integer, ArrayList<Integer>> m, int key, int t )
+        {
+            ArrayList<Integer> l = m.get( key );
+            if ( l == null )
+            {
+                l = new ArrayList<Integer>();
+                m.put( key, l );
+            }
+            l.add( t );
+        }
+
+        // A copy keeping only what concerns the temps in "live" (all of it
+        // if live is null)
+        State copy( BitSet live )
+        {
+            State s = new State();
+            for ( Map.Entry<Integer, Fact> e : facts.entrySet() )
+            {
+                int t = e.getKey();
+                if ( live != null && !live.get( t ) )
+                {
+                    continue;
+                }
+                Fact f = e.getValue().copy();
+                s.facts.put( t, f );
+                if ( f.array != null )
+                {
+                    s.index( t, f.array );
+                }
+                if ( f.length != null )
+                {
+                    s.index( t, f.length );
+                }
+            }
+            for ( Map.Entry<ArrayKey, BitSet> e : below.entrySet() )
+            {
+                if ( live != null && !s.known( e.getKey(), live ) )
+                {
+                    continue;
+                }
+                BitSet b = ( BitSet ) e.getValue().clone();
+                if ( live != null )
+                {
+                    b.and( live );
+                }
+                if ( !b.isEmpty() )
+                {
+                    s.below.put( e.getKey(), b );
+                }
+            }
+            for ( Map.Entry<ArrayKey, Long> e : minLength.entrySet() )
+            {
+                if ( live == null || s.known( e.getKey(), live ) )
+                {
+                    s.minLength.put( e.getKey(), e.getValue() );
+                }
+            }
+            return s;
+        }
+
+        // Whether a live temp may still reach array "k": it is based on one,
+        // or one holds it or its length
+        boolean known( ArrayKey k, BitSet live )
+        {
+            if ( live.get( k.base ) )
+            {
+                return true;
+            }
+            ArrayList<Integer> l = based.get( k.base );
+            if ( l != null )
+            {
+                for ( int t : l )
+                {
+                    if ( k.equals( array( t ) ) || k.equals( length( t ) ) )
+                    {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        BitSet below( ArrayKey k )
+        {
+            BitSet b = below.get( k );
+            if ( b == null )
+            {
+                b = new BitSet();
+                below.put( k, b );
+            }
+            return b;
+        }
+
+        // this = this join s; true if this changed
+        boolean join( State s )
+        {
+            boolean changed = false;
+            for ( Iterator<Map.Entry<Integer, Fact>> it = facts.entrySet().iterator(); it.hasNext(); )
+            {
+                Map.Entry<Integer, Fact> e = it.next();
+                int i = e.getKey();
+                Fact f = e.getValue();
+                if ( s.lo( i ) < f.lo )
+                {
+                    f.lo = s.lo( i );
+                    changed = true;
+                }
+                if ( s.hi( i ) > f.hi )
+                {
+                    f.hi = s.hi( i );
+                    changed = true;
+                }
+                if ( f.array != null && !f.array.equals( s.array( i ) ) )
+                {
+                    f.array = null;
+                    changed = true;
+                }
+                if ( f.length != null && !f.length.equals( s.length( i ) ) )
+                {
+                    f.length = null;
+                    changed = true;
+                }
+                if ( f.isEmpty() )
+                {
+                    it.remove();
+                }
+            }
+            for ( Iterator<ArrayKey> it = below.keySet().iterator(); it.hasNext(); )
+            {
+                ArrayKey k = it.next();
+                BitSet b = below.get( k );
+                BitSet o = s.below.get( k );
+                int before = b.cardinality();
+                if ( o == null )
+                {
+                    b.clear();
+                }
+                else
+                {
+                    b.and( o );
+                }
+                changed |= b.cardinality() != before;
+                if ( b.isEmpty() )
+                {
+                    it.remove();
+                }
+            }
+            for ( Iterator<ArrayKey> it = minLength.keySet().iterator(); it.hasNext(); )
+            {
+                ArrayKey k = it.next();
+                Long o = s.minLength.get( k );
+                if ( o == null )
+                {
+                    it.remove();
+                    changed = true;
+                }
+                else if ( o < minLength.get( k ) )
+                {
+                    minLength.put( k, o );
+                    changed = true;
+                }
+            }
+            return changed;
+        }
+
+        // Give up on the bounds that moved since "old"
+        void widen( State old )
+        {
+            for ( Map.Entry<Integer, Fact> e : facts.entrySet() )
+            {
+                int i = e.getKey();
+                Fact f = e.getValue();
+                if ( f.lo < old.lo( i ) )
+                {
+                    f.lo = MIN;
+                }
+                if ( f.hi > old.hi( i ) )
+                {
+                    f.hi = MAX;
+                }
+            }
+            for ( ArrayKey k : minLength.keySet() )
+            {
+                if ( minLength.get( k ) < old.minLength.get( k ) )
+                {
+                    minLength.put( k, 0L );
+                }
+            }
+        }
+
+        // Temp "t" is written: forget what depends on its old value
+        void kill( int t )
+        {
+            facts.remove( t );
+            ArrayList<Integer> l = based.remove( t );
+            if ( l != null )
+            {
+                for ( int i : l )
+                {
+                    Fact f = facts.get( i );
+                    if ( f == null )
+                    {
+                        continue;
+                    }
+                    if ( f.array != null && f.array.base == t )
+                    {
+                        f.array = null;
+                    }
+                    if ( f.length != null && f.length.base == t )
+                    {
+                        f.length = null;
+                    }
+                }
+            }
+            for ( Iterator<ArrayKey> it = below.keySet().iterator(); it.hasNext(); )
+            {
+                ArrayKey k = it.next();
+                if ( k.base == t )
+                {
+                    it.remove();
+                }
+                else
+                {
+                    below.get( k ).clear( t );
+                }
+            }
+            for ( Iterator<ArrayKey> it = minLength.keySet().iterator(); it.hasNext(); )
+            {
+                if ( it.next().base == t )
+                {
+                    it.remove();
+                }
+            }
+        }
+
+        // A field may have changed: forget the arrays held in fields at
+        // "offset" (any field if offset < 0)
+        void killField( int offset )
+        {
+            if ( offset < 0 )
+            {
+                for ( ArrayList<Integer> l : fields.values() )
+                {
+                    forgetFields( l, offset );
+                }
+                fields.clear();
+            }
+            else
+            {
+                forgetFields( fields.remove( offset ), offset );
+            }
+            for ( Iterator<ArrayKey> it = below.keySet().iterator(); it.hasNext(); )
+            {
+                ArrayKey k = it.next();
+                if ( k.isField() && ( offset < 0 || k.offset == offset ) )
+                {
+                    it.remove();
+                }
+            }
+            for ( Iterator<ArrayKey> it = minLength.keySet().iterator(); it.hasNext(); )
+            {
+                ArrayKey k = it.next();
+                if ( k.isField() && ( offset < 0 || k.offset == offset ) )
+                {
+                    it.remove();
+                }
+            }
+        }
+
+        void forgetFields( ArrayList<Integer> l, int offset )
+        {
+            if ( l == null )
+            {
+                return;
+            }
+            for ( int i : l )
+            {
+                Fact f = facts.get( i );
+                if ( f == null )
+                {
+                    continue;
+                }
+                if ( f.array != null && f.array.isField() && ( offset < 0 || f.array.offset == offset ) )
+                {
+                    f.array = null;
+                }
+                if ( f.length != null && f.length.isField() && ( offset < 0 || f.length.offset == offset ) )
+                {
+                    f.length = null;
+                }
+            }
+        }
+
+        // "d" gets the value of "s": it is below the same lengths
+        void copyBelow( int s, int d )
+        {
+            for ( BitSet b : below.values() )
+            {
+                if ( b.get( s ) )
+                {
+                    b.set( d );
+                }
+            }
+        }
+    }
+
+    IRMethod func;
+    ControlFlowGraph cfg;
+    Liveness live;
+    State[] in;          // null for the blocks never reached
+    int removed;
+
+    public BoundsCheckElimination( IRMethod func )
+    {
+        this.func = func;
+    }
+
+    // Run the pass; returns the number of checks removed
+    public int run()
+    {
+        cfg = new ControlFlowGraph( func );
+        analyze();
+        rewrite();
+        cfg.linearize();
+        if ( removed > 0 )
+        {
+            // The index computations may not be needed any more
+            ConstantPropagation.removeDeadCode( func );
+        }
+        return removed;
+    }
+
+    void analyze()
+    {
+        int n = cfg.blocks().size();
+        live = new Liveness( cfg );
+        in = new State[n];
+        int[] visits = new int[n];
+        boolean[] queued = new boolean[n];
+        in[0] = new State();
+
+        ArrayDeque<BasicBlock> work = new ArrayDeque<BasicBlock>();
+        work.add( cfg.entry() );
+        queued[0] = true;
+        while ( !work.isEmpty() )
+        {
+            BasicBlock b = work.poll();
+            queued[b.id] = false;
+            visits[b.id]++;
+            State s = in[b.id].copy( null );
+            for ( Quad q : b.quads )
+            {
+                transfer( q, s );
+            }
+
+            Quad last = b.last();
+            for ( BasicBlock t : b.succ )
+            {
+                State e = s;
+                if ( last != null && last.op == Quad.Op.IFFALSE )
+                {
+                    // Taken when the condition is false
+                    boolean taken = ( t == cfg.block( last.label ) );
+                    e = s.copy( null );
+                    refine( b, last.src1, !taken, e );
+                }
+                if ( in[t.id] == null )
+                {
+                    in[t.id] = e.copy( live.liveIn( t ) );
+                    work.add( t );
+                    queued[t.id] = true;
+                    continue;
+                }
+                boolean widen = visits[t.id] >= WIDEN_AFTER;
+                State old = widen ? in[t.id].copy( null ) : null;
+                if ( in[t.id].join( e ) )
+                {
+                    if ( widen )
+                    {
+                        in[t.id].widen( old );
+                    }
+                    if ( !queued[t.id] )
+                    {
+                        work.add( t );
+                        queued[t.id] = true;
+                    }
+                }
+            }
+        }
+    }
+
+    void rewrite()
+    {
+        for ( BasicBlock b : cfg.blocks() )
+        {
+            if ( in[b.id] == null )
+            {
+                continue;
+            }
+            State s = in[b.id].copy( null );
+            ArrayList<Quad> kept = new ArrayList<Quad>( b.quads.size() );
+            for ( Quad q : b.quads )
+            {
+                if ( transfer( q, s ) )
+                {
+                    removed++;
+                }
+                else
+                {
+                    kept.add( q );
+                }
+            }
+            b.quads.clear();
+            b.quads.addAll( kept );
+        }
+    }
+
+    static long clamp( long v )
+    {
+        return Math.max( MIN, Math.min( MAX, v ) );
+    }
+
+    // Apply "q" to "s". Returns true if "q" is a check known to pass.
+    boolean transfer( Quad q, State s )
+    {
+        switch ( q.op )
+        {
+            case BOUNDS:
+            {
+                int i = q.src1.id;
+                ArrayKey a = s.array( q.src2.id );
+                Long min = s.minLength.get( a );
+                boolean below = s.below( a ).get( i ) || ( min != null && s.hi( i ) < min );
+                boolean redundant = s.lo( i ) >= 0 && below;
+                // From here on the index is known to be in range
+                s.fact( i ).lo = Math.max( s.lo( i ), 0 );
+                s.below( a ).set( i );
+                return redundant;
+            }
+            case STORE:
+            {
+                s.killField( q.imm );
+                // The field now holds the array of src2
+                ArrayKey f = new ArrayKey( q.src1.id, q.imm );
+                ArrayKey a = s.array( q.src2.id );
+                if ( s.minLength.containsKey( a ) )
+                {
+                    s.minLength.put( f, s.minLength.get( a ) );
+                }
+                if ( s.below.containsKey( a ) )
+                {
+                    s.below( f ).or( s.below.get( a ) );
+                }
+                return false;
+            }
+            case CALL:
+            case VCALL:
+                s.killField( -1 );
+                break;
+        }
+
+        Temp d = q.def();
+        if ( d == null )
+        {
+            return false;
+        }
+
+        // Compute the facts about d from the old values before killing them
+        long lo = MIN;
+        long hi = MAX;
+        ArrayKey array = null;
+        ArrayKey length = null;
+        Long min = null;
+        int below_of = -1;    // d is below every length "below_of" is below
+        long lo2 = ( q.src2 == null ) ? q.imm : s.lo( q.src2.id );   // right operand
+        long hi2 = ( q.src2 == null ) ? q.imm : s.hi( q.src2.id );
+        switch ( q.op )
+        {
+            case LI:
+                lo = hi = q.imm;
+                break;
+            case MOVE:
+                lo = s.lo( q.src1.id );
+                hi = s.hi( q.src1.id );
+                array = s.array( q.src1.id );
+                length = s.length( q.src1.id );
+                below_of = q.src1.id;
+                break;
+            case ADD:
+                // add traps on overflow: the result stays in range
+                lo = clamp( s.lo( q.src1.id ) + lo2 );
+                hi = clamp( s.hi( q.src1.id ) + hi2 );
+                if ( hi2 <= 0 )
+                {
+                    below_of = q.src1.id;
+                }
+                break;
+            case SUB:
+                lo = clamp( s.lo( q.src1.id ) - hi2 );
+                hi = clamp( s.hi( q.src1.id ) - lo2 );
+                if ( lo2 >= 0 )
+                {
+                    below_of = q.src1.id;
+                }
+                break;
+            case MUL:
+            {
+                long a = s.lo( q.src1.id ) * lo2;
+                long b = s.lo( q.src1.id ) * hi2;
+                long c = s.hi( q.src1.id ) * lo2;
+                long e = s.hi( q.src1.id ) * hi2;
+                lo = Math.min( Math.min( a, b ), Math.min( c, e ) );
+                hi = Math.max( Math.max( a, b ), Math.max( c, e ) );
+                if ( lo < MIN || hi > MAX )
+                {
+                    // mult / mflo wraps around
+                    lo = MIN;
+                    hi = MAX;
+                }
+                break;
+            }
+            case LT:
+            case NOT:
+                lo = 0;
+                hi = 1;
+                break;
+            case AND:
+                if ( s.lo( q.src1.id ) >= 0 && lo2 >= 0 )
+                {
+                    lo = 0;
+                    hi = Math.min( s.hi( q.src1.id ), hi2 );
+                }
+                break;
+            case LOAD:
+                array = new ArrayKey( q.src1.id, q.imm );
+                if ( q.imm == 0 )
+                {
+                    length = s.array( q.src1.id );
+                    min = s.minLength.get( length );
+                    if ( min != null )
+                    {
+                        lo = min;
+                    }
+                }
+                break;
+            case NEWARRAY:
+                min = Math.max( 0, s.lo( q.src1.id ) );
+                break;
+        }
+
+        // The lengths the new value is below
+        ArrayList<ArrayKey> keys = new ArrayList<ArrayKey>();
+        if ( below_of >= 0 )
+        {
+            for ( ArrayKey k : s.below.keySet() )
+            {
+                if ( s.below.get( k ).get( below_of ) && k.base != d.id )
+                {
+                    keys.add( k );
+                }
+            }
+        }
+
+        // n - k with k > 0 is below the length n is
+        boolean minus = ( q.op == Quad.Op.SUB && lo2 > 0 ) || ( q.op == Quad.Op.ADD && hi2 < 0 );
+        ArrayKey n = minus ? s.length( q.src1.id ) : null;
+        if ( n != null && n.base != d.id )
+        {
+            keys.add( n );
+        }
+
+        s.kill( d.id );
+        if ( lo != MIN || hi != MAX )
+        {
+            s.fact( d.id ).lo = lo;
+            s.fact( d.id ).hi = hi;
+        }
+        if ( array != null && array.base != d.id )
+        {
+            s.setArray( d.id, array );
+        }
+        if ( length != null && length.base != d.id )
+        {
+            s.setLength( d.id, length );
+        }
+        if ( q.op == Quad.Op.NEWARRAY )
+        {
+            s.minLength.put( s.array( d.id ), min );
+        }
+        for ( ArrayKey k : keys )
+        {
+            s.below( k ).set( d.id );
+        }
+        return false;
+    }
+
+    // The quad of block "b" defining "t" before the quad at "end", if its
+    // operands are not written again before "end"
+    static Quad local_def( BasicBlock b, int end, Temp t )
+    {
+        for ( int i = end - 1; i >= 0; i-- )
+        {
+            Quad q = b.quads.get( i );
+            if ( q.def() != t )
+            {
+                continue;
+            }
+            for ( int j = i + 1; j < end; j++ )
+            {
+                Temp w = b.quads.get( j ).def();
+                for ( Temp u : q.uses() )
+                {
+                    if ( u == w )
+                    {
+                        return null;
+                    }
+                }
+            }
+            return q;
+        }
+        return null;
+    }
+
+    // Refine "s" knowing that the condition "c" (tested at the end of "b")
+    // is "value"
+    void refine( BasicBlock b, Temp c, boolean value, State s )
+    {
+        Quad q = local_def( b, b.quads.size() - 1, c );
+        if ( q == null )
+        {
+            return;
+        }
+        if ( q.op == Quad.Op.AND && value && q.src2 != null )
+        {
+            refine( b, q.src1, true, s );
+            refine( b, q.src2, true, s );
+        }
+        else if ( q.op == Quad.Op.LT )
+        {
+            refine_lt( q, value, s );
+        }
+    }
+
+    // q: x < y
+    void refine_lt( Quad q, boolean holds, State s )
+    {
+        int x = q.src1.id;
+        int y = ( q.src2 == null ) ? -1 : q.src2.id;
+        long ylo = ( y < 0 ) ? q.imm : s.lo( y );
+        long yhi = ( y < 0 ) ? q.imm : s.hi( y );
+        if ( holds )
+        {
+            s.fact( x ).hi = Math.min( s.hi( x ), yhi - 1 );
+            if ( y >= 0 )
+            {
+                s.fact( y ).lo = Math.max( s.lo( y ), s.lo( x ) + 1 );
+                if ( s.length( y ) != null )
+                {
+                    s.below( s.length( y ) ).set( x );
+                }
+            }
+        }
+        else
+        {
+            s.fact( x ).lo = Math.max( s.lo( x ), ylo );
+            if ( y >= 0 )
+            {
+                s.fact( y ).hi = Math.min( s.hi( y ), s.hi( x ) );
+            }
+        }
+    }
+}
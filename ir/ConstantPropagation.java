@@ -0,0 +1,885 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Sparse conditional constant propagation (Wegman & Zadeck) over the SSA
+// form of one method.
+//
+// The temps are renamed into SSA values: one per instruction writing a
+// temp, one per phi placed at the dominance frontier of the definitions,
+// and one per temp for its (unknown) value on entry. Every value is TOP (no
+// definition reached yet), a constant or NAC (not a constant). Two
+// worklists drive the analysis: the control flow edges found executable,
+// and the values that went down the lattice, whose uses are evaluated
+// again. A branch on a known condition leaves the edge to the other arm
+// out, so its values do not reach the phis below it. Each value goes down
+// at most twice, so the work is proportional to the size of the SSA form.
+//
+// The method is then rewritten:
+//   - instructions computing a constant become LI
+//   - a constant right operand becomes the immediate of the instruction
+//   - branches on a constant become a jump (or disappear)
+//   - unreachable blocks and unused constant computations are deleted
+//
+// Folding follows the MIPS instructions: MUL wraps around like mult / mflo
+// while an ADD or SUB that overflows is left in place to trap at run time.
+public class ConstantPropagation
+{
+    static final int TOP = 0;
+    static final int CONST = 1;
+    static final int NAC = 2;
+
+    IRMethod func;
+    ControlFlowGraph cfg;
+    int temps;
+
+    // The quads in block order, with their block
+    Quad[] quads;
+    int[] block_of;
+    int[] first;         // index of the first quad of each block
+
+    // The dominator tree of the blocks reached from the entry
+    int[] idom;          // -1 for the blocks not reached
+    int[] child;         // first child in the tree, -1 if none
+    int[] sibling;       // next child of the same parent
+
+    // pred_pos[b][k]: the position of b in the pred list of its k-th
+    // successor
+    int[][] pred_pos;
+
+    // Phis: phi p defines value temps + p
+    int phi_count;
+    int[] phi_block;
+    int[] phi_temp;
+    int[][] phi_args;    // the value on each incoming edge (pred order)
+    int[] phi_first;     // first phi of each block, -1 if none
+    int[] phi_next;
+
+    // The values: 0 .. temps - 1 on entry, then the phis, then one per quad
+    // (temps + phi_count + i for quad i)
+    int[] kinds;
+    int[] values;
+    int[] use1;          // the value read as src1 / src2 by each quad
+    int[] use2;
+
+    // Def-use chains: the users of each value, a quad i or the phi -1 - p
+    int[] user_first;
+    int[] user_next;
+    int[] user;
+    int user_count;
+
+    // The analysis
+    boolean[][] executable;   // executable[b][i]: the edge from pred i of b
+    boolean[] reached;        // the blocks with an executable edge in
+    int[] edge_work;          // 2 * b + k for the k-th successor of b
+    int edge_top;
+    int[] value_work;
+    int value_top;
+
+    // Result of eval()
+    int kind;
+    int value;
+
+    public ConstantPropagation( IRMethod func )
+    {
+        this.func = func;
+    }
+
+    public void run()
+    {
+        cfg = new ControlFlowGraph( func );
+        number();
+        dominators();
+        placePhis();
+        rename();
+        analyze();
+        rewrite();
+        cfg.linearize();
+        removeDeadCode( func );
+        removeJumpsToNext();
+    }
+
+    // Number the quads in block order
+    void number()
+    {
+        ArrayList<BasicBlock> blocks = cfg.blocks();
+        temps = func.tempCount();
+        int n = 0;
+        first = new int[blocks.size() + 1];
+        for ( BasicBlock b : blocks )
+        {
+            first[b.id] = n;
+            n += b.quads.size();
+        }
+        first[blocks.size()] = n;
+        quads = new Quad[n];
+        block_of = new int[n];
+        for ( BasicBlock b : blocks )
+        {
+            for ( int j = 0; j < b.quads.size(); j++ )
+            {
+                quads[first[b.id] + j] = b.quads.get( j );
+                block_of[first[b.id] + j] = b.id;
+            }
+        }
+
+        pred_pos = new int[blocks.size()][];
+        for ( BasicBlock b : blocks )
+        {
+            pred_pos[b.id] = new int[b.succ.size()];
+        }
+        for ( BasicBlock t : blocks )
+        {
+            for ( int i = 0; i < t.pred.size(); i++ )
+            {
+                BasicBlock p = t.pred.get( i );
+                pred_pos[p.id][p.succ.indexOf( t )] = i;
+            }
+        }
+    }
+
+    // Cooper, Harvey & Kennedy: iterate over the blocks in reverse postorder
+    // until the immediate dominators settle
+    void dominators()
+    {
+        ArrayList<BasicBlock> blocks = cfg.blocks();
+        int n = blocks.size();
+        int[] order = new int[n];
+        int count = postorder( order );
+        int[] rpo = new int[count];      // reverse postorder
+        int[] rank = new int[n];         // position in rpo
+        for ( int i = 0; i < count; i++ )
+        {
+            rpo[count - 1 - i] = order[i];
+            rank[order[i]] = count - 1 - i;
+        }
+
+        idom = new int[n];
+        Arrays.fill( idom, -1 );
+        idom[0] = 0;
+        boolean changed = true;
+        while ( changed )
+        {
+            changed = false;
+            for ( int i = 1; i < count; i++ )
+            {
+                BasicBlock b = blocks.get( rpo[i] );
+                int d = -1;
+                for ( BasicBlock p : b.pred )
+                {
+                    if ( idom[p.id] < 0 )
+                    {
+                        continue;
+                    }
+                    d = ( d < 0 ) ? p.id : intersect( p.id, d, rank );
+                }
+                if ( idom[b.id] != d )
+                {
+                    idom[b.id] = d;
+                    changed = true;
+                }
+            }
+        }
+
+        child = new int[n];
+        sibling = new int[n];
+        Arrays.fill( child, -1 );
+        for ( int i = count - 1; i > 0; i-- )
+        {
+            int b = rpo[i];
+            sibling[b] = child[idom[b]];
+            child[idom[b]] = b;
+        }
+    }
+
+    // The blocks reached from the entry in postorder; returns their number
+    int postorder( int[] order )
+    {
+        ArrayList<BasicBlock> blocks = cfg.blocks();
+        boolean[] seen = new boolean[blocks.size()];
+        int[] stack = new int[blocks.size()];
+        int[] next = new int[blocks.size()];    // next successor to visit
+        int top = 0;
+        int count = 0;
+        stack[top++] = 0;
+        seen[0] = true;
+        while ( top > 0 )
+        {
+            BasicBlock b = blocks.get( stack[top - 1] );
+            if ( next[b.id] < b.succ.size() )
+            {
+                BasicBlock s = b.succ.get( next[b.id]++ );
+                if ( !seen[s.id] )
+                {
+                    seen[s.id] = true;
+                    stack[top++] = s.id;
+                }
+                continue;
+            }
+            order[count++] = b.id;
+            top--;
+        }
+        return count;
+    }
+
+    int intersect( int a, int b, int[] rank )
+    {
+        while ( a != b )
+        {
+            while ( rank[a] > rank[b] )
+            {
+                a = idom[a];
+            }
+            while ( rank[b] > rank[a] )
+            {
+                b = idom[b];
+            }
+        }
+        return a;
+    }
+
+    // Semi-pruned SSA: a temp read in a block before being written there
+    // gets a phi at the iterated dominance frontier of its definitions. The
+    // entry defines every temp, so it needs no phi.
+    void placePhis()
+    {
+        ArrayList<BasicBlock> blocks = cfg.blocks();
+        int n = blocks.size();
+
+        // Dominance frontiers
+        ArrayList<ArrayList<Integer>> frontier = new ArrayList<ArrayList<Integer>>( n );
+        for ( int i = 0; i < n; i++ )
+        {
+            frontier.add( new ArrayList<Integer>() );
+        }
+        int[] last = new int[n];
+        Arrays.fill( last, -1 );
+        for ( BasicBlock b : blocks )
+        {
+            if ( idom[b.id] < 0 || ( b.pred.size() < 2 && b.id != 0 ) )
+            {
+                continue;
+            }
+            for ( BasicBlock p : b.pred )
+            {
+                for ( int r = p.id; idom[p.id] >= 0 && r != idom[b.id] && last[r] != b.id; r = idom[r] )
+                {
+                    frontier.get( r ).add( b.id );
+                    last[r] = b.id;
+                }
+            }
+        }
+
+        // The blocks writing each temp read across blocks
+        boolean[] global = new boolean[temps];
+        int[] def_first = new int[temps];
+        Arrays.fill( def_first, -1 );
+        int[] def_next = new int[quads.length];
+        int[] written = new int[temps];        // block id + 1 of the last write
+        for ( BasicBlock b : blocks )
+        {
+            if ( idom[b.id] < 0 )
+            {
+                continue;
+            }
+            for ( int i = first[b.id]; i < first[b.id + 1]; i++ )
+            {
+                Quad q = quads[i];
+                for ( Temp t : q.uses() )
+                {
+                    if ( written[t.id] != b.id + 1 )
+                    {
+                        global[t.id] = true;
+                    }
+                }
+                Temp d = q.def();
+                if ( d != null && written[d.id] != b.id + 1 )
+                {
+                    written[d.id] = b.id + 1;
+                    def_next[i] = def_first[d.id];
+                    def_first[d.id] = i;
+                }
+            }
+        }
+
+        ArrayList<Integer> block = new ArrayList<Integer>();
+        ArrayList<Integer> temp = new ArrayList<Integer>();
+        int[] has_phi = new int[n];             // temp + 1 of the last phi
+        int[] queued = new int[n];
+        int[] work = new int[n];
+        for ( int t = 0; t < temps; t++ )
+        {
+            if ( !global[t] )
+            {
+                continue;
+            }
+            int top = 0;
+            for ( int i = def_first[t]; i >= 0; i = def_next[i] )
+            {
+                work[top++] = block_of[i];
+                queued[block_of[i]] = t + 1;
+            }
+            while ( top > 0 )
+            {
+                for ( int f : frontier.get( work[--top] ) )
+                {
+                    if ( f == 0 || has_phi[f] == t + 1 )
+                    {
+                        continue;
+                    }
+                    has_phi[f] = t + 1;
+                    block.add( f );
+                    temp.add( t );
+                    if ( queued[f] != t + 1 )
+                    {
+                        queued[f] = t + 1;
+                        work[top++] = f;
+                    }
+                }
+            }
+        }
+
+        phi_count = block.size();
+        phi_block = new int[phi_count];
+        phi_temp = new int[phi_count];
+        phi_args = new int[phi_count][];
+        phi_next = new int[phi_count];
+        phi_first = new int[n];
+        Arrays.fill( phi_first, -1 );
+        for ( int p = 0; p < phi_count; p++ )
+        {
+            phi_block[p] = block.get( p );
+            phi_temp[p] = temp.get( p );
+            phi_args[p] = new int[blocks.get( phi_block[p] ).pred.size()];
+            Arrays.fill( phi_args[p], -1 );
+            phi_next[p] = phi_first[phi_block[p]];
+            phi_first[phi_block[p]] = p;
+        }
+    }
+
+    // The value of quad i
+    int value_of( int i )
+    {
+        return temps + phi_count + i;
+    }
+
+    void add_user( int v, int u )
+    {
+        if ( user_count == user.length )
+        {
+            user = Arrays.copyOf( user, 2 * user.length );
+            user_next = Arrays.copyOf( user_next, 2 * user_next.length );
+        }
+        user[user_count] = u;
+        user_next[user_count] = user_first[v];
+        user_first[v] = user_count++;
+    }
+
+    // Give every use its SSA value, walking the dominator tree with the
+    // current value of every temp
+    void rename()
+    {
+        ArrayList<BasicBlock> blocks = cfg.blocks();
+        int n = blocks.size();
+        int values_count = value_of( quads.length );
+        use1 = new int[quads.length];
+        use2 = new int[quads.length];
+        Arrays.fill( use1, -1 );
+        Arrays.fill( use2, -1 );
+        user_first = new int[values_count];
+        Arrays.fill( user_first, -1 );
+        user = new int[quads.length + 16];
+        user_next = new int[quads.length + 16];
+
+        int[] current = new int[temps];
+        for ( int t = 0; t < temps; t++ )
+        {
+            current[t] = t;
+        }
+        // The values replaced in the blocks being visited, to restore them
+        int[] undo_temp = new int[values_count];
+        int[] undo_value = new int[values_count];
+        int undo = 0;
+        int[] marks = new int[n];
+        int mark = 0;
+        int[] stack = new int[2 * n];
+        int top = 0;
+        stack[top++] = 0;
+        while ( top > 0 )
+        {
+            int b = stack[--top];
+            if ( b < 0 )
+            {
+                for ( int m = marks[--mark]; undo > m; )
+                {
+                    undo--;
+                    current[undo_temp[undo]] = undo_value[undo];
+                }
+                continue;
+            }
+            marks[mark++] = undo;
+            stack[top++] = -1;
+
+            for ( int p = phi_first[b]; p >= 0; p = phi_next[p] )
+            {
+                undo_temp[undo] = phi_temp[p];
+                undo_value[undo++] = current[phi_temp[p]];
+                current[phi_temp[p]] = temps + p;
+            }
+            for ( int i = first[b]; i < first[b + 1]; i++ )
+            {
+                Quad q = quads[i];
+                if ( is_pure( q ) || q.op == Quad.Op.IFFALSE )
+                {
+                    if ( q.src1 != null )
+                    {
+                        use1[i] = current[q.src1.id];
+                        add_user( use1[i], i );
+                    }
+                    if ( q.src2 != null )
+                    {
+                        use2[i] = current[q.src2.id];
+                        add_user( use2[i], i );
+                    }
+                }
+                Temp d = q.def();
+                if ( d != null )
+                {
+                    undo_temp[undo] = d.id;
+                    undo_value[undo++] = current[d.id];
+                    current[d.id] = value_of( i );
+                }
+            }
+            BasicBlock bb = blocks.get( b );
+            for ( int k = 0; k < bb.succ.size(); k++ )
+            {
+                for ( int p = phi_first[bb.succ.get( k ).id]; p >= 0; p = phi_next[p] )
+                {
+                    int v = current[phi_temp[p]];
+                    phi_args[p][pred_pos[b][k]] = v;
+                    add_user( v, -1 - p );
+                }
+            }
+            for ( int c = child[b]; c >= 0; c = sibling[c] )
+            {
+                stack[top++] = c;
+            }
+        }
+    }
+
+    void analyze()
+    {
+        ArrayList<BasicBlock> blocks = cfg.blocks();
+        int n = blocks.size();
+        kinds = new int[value_of( quads.length )];
+        values = new int[kinds.length];
+        // Parameters, "this" and variables read before being written are
+        // unknown on entry
+        Arrays.fill( kinds, 0, temps, NAC );
+
+        executable = new boolean[n][];
+        for ( BasicBlock b : blocks )
+        {
+            executable[b.id] = new boolean[b.pred.size()];
+        }
+        reached = new boolean[n];
+        // A block queues its edges when it is reached and each time the
+        // condition of its branch goes down
+        edge_work = new int[6 * n + 1];
+        edge_top = 0;
+        // A value is queued each time it goes down: at most twice
+        value_work = new int[2 * kinds.length + 1];
+        value_top = 0;
+
+        visit_block( 0 );
+        while ( edge_top > 0 || value_top > 0 )
+        {
+            if ( edge_top > 0 )
+            {
+                int e = edge_work[--edge_top];
+                BasicBlock b = blocks.get( e / 2 );
+                BasicBlock t = b.succ.get( e % 2 );
+                int i = pred_pos[b.id][e % 2];
+                if ( executable[t.id][i] )
+                {
+                    continue;
+                }
+                executable[t.id][i] = true;
+                for ( int p = phi_first[t.id]; p >= 0; p = phi_next[p] )
+                {
+                    visit_phi( p );
+                }
+                if ( !reached[t.id] )
+                {
+                    visit_block( t.id );
+                }
+                continue;
+            }
+            int v = value_work[--value_top];
+            for ( int u = user_first[v]; u >= 0; u = user_next[u] )
+            {
+                int x = user[u];
+                if ( x < 0 )
+                {
+                    if ( reached[phi_block[-1 - x]] )
+                    {
+                        visit_phi( -1 - x );
+                    }
+                }
+                else if ( reached[block_of[x]] )
+                {
+                    visit_quad( x );
+                }
+            }
+        }
+    }
+
+    void visit_block( int b )
+    {
+        reached[b] = true;
+        for ( int i = first[b]; i < first[b + 1]; i++ )
+        {
+            visit_quad( i );
+        }
+        BasicBlock bb = cfg.blocks().get( b );
+        Quad q = bb.last();
+        if ( q == null || q.op != Quad.Op.IFFALSE )
+        {
+            for ( int k = 0; k < bb.succ.size(); k++ )
+            {
+                edge_work[edge_top++] = 2 * b + k;
+            }
+        }
+    }
+
+    void visit_phi( int p )
+    {
+        int b = phi_block[p];
+        int k = TOP;
+        int v = 0;
+        for ( int i = 0; i < phi_args[p].length; i++ )
+        {
+            int a = phi_args[p][i];
+            if ( !executable[b][i] || kinds[a] == TOP )
+            {
+                continue;
+            }
+            if ( k == TOP )
+            {
+                k = kinds[a];
+                v = values[a];
+            }
+            else if ( kinds[a] == NAC || values[a] != v )
+            {
+                k = NAC;
+            }
+        }
+        lower( temps + p, k, v );
+    }
+
+    void visit_quad( int i )
+    {
+        Quad q = quads[i];
+        if ( q.op == Quad.Op.IFFALSE )
+        {
+            branch( i );
+            return;
+        }
+        if ( q.def() != null )
+        {
+            eval( i );
+            lower( value_of( i ), kind, value );
+        }
+    }
+
+    // Queue the edges out of the block of IFFALSE i that may be taken
+    void branch( int i )
+    {
+        Quad q = quads[i];
+        BasicBlock b = cfg.blocks().get( block_of[i] );
+        int c = use1[i];
+        if ( kinds[c] == TOP )
+        {
+            return;
+        }
+        for ( int k = 0; k < b.succ.size(); k++ )
+        {
+            BasicBlock t = b.succ.get( k );
+            boolean taken = ( t == cfg.block( q.label ) );
+            boolean next = ( t.id == b.id + 1 );
+            if ( kinds[c] == NAC || ( values[c] == 0 ? taken : next ) )
+            {
+                edge_work[edge_top++] = 2 * b.id + k;
+            }
+        }
+    }
+
+    // Move value v down to kind / value
+    void lower( int v, int k, int x )
+    {
+        if ( kinds[v] == NAC || k == TOP )
+        {
+            return;
+        }
+        if ( kinds[v] == TOP )
+        {
+            kinds[v] = k;
+            values[v] = x;
+        }
+        else if ( k == NAC || values[v] != x )
+        {
+            kinds[v] = NAC;
+        }
+        else
+        {
+            return;
+        }
+        value_work[value_top++] = v;
+    }
+
+    // Compute the lattice value of the temp defined by quad i into kind /
+    // value
+    void eval( int i )
+    {
+        Quad q = quads[i];
+        kind = NAC;
+        value = 0;
+        int a = use1[i];
+        switch ( q.op )
+        {
+            case LI:
+                kind = CONST;
+                value = q.imm;
+                return;
+            case MOVE:
+                kind = kinds[a];
+                value = values[a];
+                return;
+            case NOT:
+                kind = kinds[a];
+                value = values[a] ^ 1;
+                return;
+            case SLL:
+                kind = kinds[a];
+                value = values[a] << q.imm;
+                return;
+            case ADD:
+            case SUB:
+            case MUL:
+            case LT:
+            case AND:
+                break;
+            default:
+                return;
+        }
+
+        int ka = kinds[a];
+        int kb = ( q.src2 == null ) ? CONST : kinds[use2[i]];
+        if ( ka == NAC || kb == NAC )
+        {
+            return;
+        }
+        if ( ka == TOP || kb == TOP )
+        {
+            kind = TOP;
+            return;
+        }
+        int x = values[a];
+        int y = ( q.src2 == null ) ? q.imm : values[use2[i]];
+        long v = 0;
+        switch ( q.op )
+        {
+            case ADD: v = ( long ) x + y; break;
+            case SUB: v = ( long ) x - y; break;
+            case MUL: v = x * y; break;
+            case LT:  v = ( x < y ) ? 1 : 0; break;
+            case AND: v = x & y; break;
+        }
+        if ( v != ( int ) v )
+        {
+            return;  // add / sub overflow: NAC
+        }
+        kind = CONST;
+        value = ( int ) v;
+    }
+
+    static boolean is_pure( Quad q )
+    {
+        switch ( q.op )
+        {
+            case LI:
+            case LA:
+            case MOVE:
+            case ADD:
+            case SUB:
+            case MUL:
+            case LT:
+            case AND:
+            case NOT:
+            case SLL:
+                return true;
+        }
+        return false;
+    }
+
+    static boolean is_commutative( Quad.Op op )
+    {
+        return op == Quad.Op.ADD || op == Quad.Op.MUL || op == Quad.Op.AND;
+    }
+
+    // Whether value v (-1 for no operand) is a known constant
+    boolean constant( int v )
+    {
+        return v >= 0 && kinds[v] == CONST;
+    }
+
+    void rewrite()
+    {
+        ArrayList<BasicBlock> live = new ArrayList<BasicBlock>();
+        for ( BasicBlock b : cfg.blocks() )
+        {
+            if ( !reached[b.id] )
+            {
+                continue;
+            }
+            live.add( b );
+
+            ArrayList<Quad> kept = new ArrayList<Quad>( b.quads.size() );
+            for ( int i = first[b.id]; i < first[b.id + 1]; i++ )
+            {
+                Quad q = quads[i];
+                if ( q.op == Quad.Op.IFFALSE && constant( use1[i] ) )
+                {
+                    if ( values[use1[i]] != 0 )
+                    {
+                        continue;
+                    }
+                    q.op = Quad.Op.JUMP;
+                    q.src1 = null;
+                }
+                else if ( is_pure( q ) && q.op != Quad.Op.LI && q.op != Quad.Op.LA )
+                {
+                    int v = value_of( i );
+                    if ( kinds[v] == CONST )
+                    {
+                        q.op = Quad.Op.LI;
+                        q.src1 = null;
+                        q.src2 = null;
+                        q.imm = values[v];
+                    }
+                    else if ( constant( use2[i] ) )
+                    {
+                        q.imm = values[use2[i]];
+                        q.src2 = null;
+                    }
+                    else if ( q.src2 != null && constant( use1[i] ) && is_commutative( q.op ) )
+                    {
+                        q.imm = values[use1[i]];
+                        q.src1 = q.src2;
+                        q.src2 = null;
+                    }
+                }
+                kept.add( q );
+            }
+            b.quads.clear();
+            b.quads.addAll( kept );
+        }
+        cfg.blocks().clear();
+        cfg.blocks().addAll( live );
+    }
+
+    // Delete the side-effect free instructions whose result is never read
+    // (ADD and SUB may trap, so they stay). Deleting one may leave its
+    // operands unused in turn: those temps are queued, and the list is
+    // compacted once at the end.
+    static void removeDeadCode( IRMethod func )
+    {
+        ArrayList<Quad> quads = func.quads();
+        int n = func.tempCount();
+        int[] uses = new int[n];
+        int[] def_first = new int[n];     // the removable quads writing a temp
+        int[] def_next = new int[quads.size()];
+        Arrays.fill( def_first, -1 );
+        for ( int i = 0; i < quads.size(); i++ )
+        {
+            Quad q = quads.get( i );
+            for ( Temp t : q.uses() )
+            {
+                uses[t.id]++;
+            }
+            if ( removable( q ) )
+            {
+                def_next[i] = def_first[q.dst.id];
+                def_first[q.dst.id] = i;
+            }
+        }
+
+        boolean[] dead = new boolean[quads.size()];
+        int[] work = new int[n];
+        int top = 0;
+        for ( int t = 0; t < n; t++ )
+        {
+            if ( uses[t] == 0 )
+            {
+                work[top++] = t;
+            }
+        }
+        while ( top > 0 )
+        {
+            for ( int i = def_first[work[--top]]; i >= 0; i = def_next[i] )
+            {
+                dead[i] = true;
+                for ( Temp u : quads.get( i ).uses() )
+                {
+                    if ( --uses[u.id] == 0 )
+                    {
+                        work[top++] = u.id;
+                    }
+                }
+            }
+        }
+
+        int j = 0;
+        for ( int i = 0; i < quads.size(); i++ )
+        {
+            if ( !dead[i] )
+            {
+                quads.set( j++, quads.get( i ) );
+            }
+        }
+        quads.subList( j, quads.size() ).clear();
+    }
+
+    static boolean removable( Quad q )
+    {
+        return is_pure( q ) && q.op != Quad.Op.ADD && q.op != Quad.Op.SUB;
+    }
+
+    // "goto L" right before "L:" (or before another such jump)
+    void removeJumpsToNext()
+    {
+        ArrayList<Quad> quads = func.quads();
+        boolean[] dead = new boolean[quads.size()];
+        String next = null;     // the label of the next quad kept
+        for ( int i = quads.size() - 1; i >= 0; i-- )
+        {
+            Quad q = quads.get( i );
+            if ( q.op == Quad.Op.JUMP && q.label.equals( next ) )
+            {
+                dead[i] = true;
+                continue;
+            }
+            next = ( q.op == Quad.Op.LABEL ) ? q.label : null;
+        }
+        int j = 0;
+        for ( int i = 0; i < quads.size(); i++ )
+        {
+            if ( !dead[i] )
+            {
+                quads.set( j++, quads.get( i ) );
+            }
+        }
+        quads.subList( j, quads.size() ).clear();
+    }
+}
@@ -0,0 +1,118 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// The basic blocks of an IRMethod and the edges between them.
+//
+// The quad list of the method stays the reference representation: a pass
+// builds the graph, works on the blocks and calls linearize() to write the
+// (possibly modified) blocks back in order.
+public class ControlFlowGraph
+{
+    IRMethod func;
+    ArrayList<BasicBlock> blocks;
+    HashMap<String, BasicBlock> labels;  // label -> block starting with it
+
+    public ControlFlowGraph( IRMethod func )
+    {
+        this.func = func;
+        blocks = new ArrayList<BasicBlock>();
+        labels = new HashMap<String, BasicBlock>();
+        split();
+        connect();
+    }
+
+    public IRMethod method() { return func; }
+
+    public ArrayList<BasicBlock> blocks() { return blocks; }
+
+    public BasicBlock entry()
+    {
+        return blocks.get( 0 );
+    }
+
+    // The block starting with "label"
+    public BasicBlock block( String label )
+    {
+        return labels.get( label );
+    }
+
+    // A block starts at a label and ends after a jump, a branch or a return
+    void split()
+    {
+        BasicBlock b = new BasicBlock( 0 );
+        blocks.add( b );
+        for ( Quad q : func.quads() )
+        {
+            if ( q.op == Quad.Op.LABEL && !b.quads.isEmpty() )
+            {
+                b = new BasicBlock( blocks.size() );
+                blocks.add( b );
+            }
+            if ( q.op == Quad.Op.LABEL )
+            {
+                labels.put( q.label, b );
+            }
+            b.quads.add( q );
+            if ( ends_block( q ) )
+            {
+                b = new BasicBlock( blocks.size() );
+                blocks.add( b );
+            }
+        }
+        if ( b.quads.isEmpty() && blocks.size() > 1 )
+        {
+            blocks.remove( blocks.size() - 1 );
+        }
+    }
+
+    static boolean ends_block( Quad q )
+    {
+        return q.op == Quad.Op.JUMP || q.op == Quad.Op.IFFALSE || q.op == Quad.Op.RETURN;
+    }
+
+    void connect()
+    {
+        for ( int i = 0; i < blocks.size(); i++ )
+        {
+            BasicBlock b = blocks.get( i );
+            Quad q = b.last();
+            if ( q != null && ( q.op == Quad.Op.JUMP || q.op == Quad.Op.IFFALSE ) )
+            {
+                b.addEdge( labels.get( q.label ) );
+            }
+            boolean falls_through = ( q == null ) || ( q.op != Quad.Op.JUMP && q.op != Quad.Op.RETURN );
+            if ( falls_through && i + 1 < blocks.size() )
+            {
+                b.addEdge( blocks.get( i + 1 ) );
+            }
+        }
+    }
+
+    // Write the blocks back to the quad list of the method
+    public void linearize()
+    {
+        ArrayList<Quad> quads = func.quads();
+        quads.clear();
+        for ( BasicBlock b : blocks )
+        {
+            quads.addAll( b.quads );
+        }
+    }
+
+    public String toString()
+    {
+        StringBuilder s = new StringBuilder();
+        s.append( func.isMain() ? "main" : func.label() ).append( ":\n" );
+        for ( BasicBlock b : blocks )
+        {
+            s.append( "  " ).append( b ).append( "\n" );
+            for ( Quad q : b.quads )
+            {
+                s.append( q.op == Quad.Op.LABEL ? "  " : "      " ).append( q ).append( "\n" );
+            }
+        }
+        return s.toString();
+    }
+}
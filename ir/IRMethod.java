@@ -0,0 +1,74 @@
+package ir;
+
+import java.util.ArrayList;
+
+// The three-address code of one method (or of main()).
+public class IRMethod
+{
+    String label;          // entry label (null for main)
+    Temp thisTemp;         // null for main
+    ArrayList<Temp> params;
+    ArrayList<Quad> quads;
+    int tempCount;
+
+    public IRMethod( String label )
+    {
+        this.label = label;
+        params = new ArrayList<Temp>();
+        quads = new ArrayList<Quad>();
+        tempCount = 0;
+    }
+
+    public String label() { return label; }
+
+    public boolean isMain() { return label == null; }
+
+    public Temp thisTemp() { return thisTemp; }
+
+    public ArrayList<Temp> params() { return params; }
+
+    public ArrayList<Quad> quads() { return quads; }
+
+    public int tempCount() { return tempCount; }
+
+    // Create an expression temporary
+    public Temp newTemp()
+    {
+        return new Temp( tempCount++, null );
+    }
+
+    // Create a temp that holds the variable "name"
+    public Temp newTemp( String name )
+    {
+        return new Temp( tempCount++, name );
+    }
+
+    public Temp newThis()
+    {
+        thisTemp = newTemp( "this" );
+        return thisTemp;
+    }
+
+    public Temp newParam( String name )
+    {
+        Temp t = newTemp( name );
+        params.add( t );
+        return t;
+    }
+
+    public void add( Quad q )
+    {
+        quads.add( q );
+    }
+
+    public String toString()
+    {
+        StringBuilder s = new StringBuilder();
+        s.append( isMain() ? "main" : label ).append( ":\n" );
+        for ( Quad q : quads )
+        {
+            s.append( q.op == Quad.Op.LABEL ? "" : "    " ).append( q ).append( "\n" );
+        }
+        return s.toString();
+    }
+}
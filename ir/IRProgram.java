@@ -0,0 +1,57 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+// The three-address code of a whole MiniJava program
+public class IRProgram
+{
+    IRMethod main;
+    ArrayList<IRMethod> methods;
+    LinkedHashMap<String, List<String>> vtables;  // label -> method entry labels
+    List<int[]> pointerMaps;                      // by class tag
+
+    public IRProgram()
+    {
+        methods = new ArrayList<IRMethod>();
+        vtables = new LinkedHashMap<String, List<String>>();
+        pointerMaps = new ArrayList<int[]>();
+    }
+
+    public IRMethod main() { return main; }
+
+    public void setMain( IRMethod m ) { main = m; }
+
+    public ArrayList<IRMethod> methods() { return methods; }
+
+    public void addMethod( IRMethod m )
+    {
+        methods.add( m );
+    }
+
+    public LinkedHashMap<String, List<String>> vtables() { return vtables; }
+
+    public void addVtable( String label, List<String> entries )
+    {
+        vtables.put( label, entries );
+    }
+
+    public List<int[]> pointerMaps() { return pointerMaps; }
+
+    public void setPointerMaps( List<int[]> maps )
+    {
+        pointerMaps = maps;
+    }
+
+    // Listing of the basic blocks of every method
+    public String toString()
+    {
+        StringBuilder s = new StringBuilder( new ControlFlowGraph( main ).toString() );
+        for ( IRMethod m : methods )
+        {
+            s.append( "\n" ).append( new ControlFlowGraph( m ) );
+        }
+        return s.toString();
+    }
+}
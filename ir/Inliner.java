@@ -0,0 +1,231 @@
+package ir;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// Inline expansion of small methods into their callers.
+//
+// Only CALL sites are considered: IRGenVisitor makes a CALL (rather than a
+// VCALL) where SymbolTable.isOverridden() finds that no subclass of the
+// receiver's class overrides the method, so the CALL label names the only
+// body that can run. The callee's quads are copied in place of the call
+// with fresh temps and labels: "this" and the parameters are MOVEs of the
+// arguments, a RETURN is a MOVE to the result of the call (and a jump to
+// the end of the copy, unless it is the last quad).
+//
+// A method is inlined if it has at most "size" quads (labels and RETURN
+// not counted) and does not call itself, and as long as its caller does
+// not grow by more than MAX_GROWTH quads. The bodies inlined are the ones
+// IRGenVisitor made, so a call inlined from a callee is not expanded again.
+//
+// The receiver is not checked for null, just as a CALL does not check it.
+public class Inliner
+{
+    public static final int DEFAULT_SIZE = 12;
+    static final int MAX_GROWTH = 200;
+
+    IRProgram program;
+    int size;
+    HashMap<String, IRMethod> methods;      // by entry label
+    HashMap<String, ArrayList<Quad>> bodies; // as generated
+    ArrayList<String> inlined;              // "caller <- callee" of every site
+    int label_count;
+
+    public Inliner( IRProgram p, int size )
+    {
+        program = p;
+        this.size = size;
+        methods = new HashMap<String, IRMethod>();
+        bodies = new HashMap<String, ArrayList<Quad>>();
+        inlined = new ArrayList<String>();
+        label_count = 0;
+        for ( IRMethod m : p.methods() )
+        {
+            methods.put( m.label(), m );
+            bodies.put( m.label(), new ArrayList<Quad>( m.quads() ) );
+        }
+    }
+
+    public void run()
+    {
+        inline( program.main() );
+        for ( IRMethod m : program.methods() )
+        {
+            inline( m );
+        }
+    }
+
+    public void report( PrintStream s )
+    {
+        s.println( "inline: " + inlined.size() + " call sites" );
+        for ( String site : inlined )
+        {
+            s.println( "  " + site );
+        }
+    }
+
+    // Expand the calls of "caller" to small methods
+    void inline( IRMethod caller )
+    {
+        ArrayList<Quad> quads = caller.quads();
+        ArrayList<Quad> result = new ArrayList<Quad>( quads.size() );
+        int growth = 0;
+        for ( Quad q : quads )
+        {
+            IRMethod callee = ( q.op == Quad.Op.CALL ) ? methods.get( q.label ) : null;
+            if ( callee == null || callee == caller || !inlinable( callee ) )
+            {
+                result.add( q );
+                continue;
+            }
+            int n = weight( bodies.get( callee.label() ) );
+            if ( growth + n > MAX_GROWTH )
+            {
+                result.add( q );
+                continue;
+            }
+            growth += n;
+            expand( caller, q, callee, result );
+            inlined.add( name( caller ) + " <- " + name( callee ) + " (size " + n + ")" );
+        }
+        quads.clear();
+        quads.addAll( result );
+    }
+
+    // Small enough, and not recursive
+    boolean inlinable( IRMethod m )
+    {
+        ArrayList<Quad> body = bodies.get( m.label() );
+        if ( weight( body ) > size )
+        {
+            return false;
+        }
+        for ( Quad q : body )
+        {
+            if ( q.op == Quad.Op.CALL && q.label.equals( m.label() ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The number of quads that make code (not the labels and the RETURN)
+    static int weight( ArrayList<Quad> body )
+    {
+        int n = 0;
+        for ( Quad q : body )
+        {
+            if ( q.op != Quad.Op.LABEL && q.op != Quad.Op.RETURN )
+            {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    // Append to "out" a copy of the body of "callee" in place of "call",
+    // made in "caller"
+    void expand( IRMethod caller, Quad call, IRMethod callee, ArrayList<Quad> out )
+    {
+        String prefix = name( callee ) + ".";
+        Temp[] temps = new Temp[callee.tempCount()];
+        HashMap<String, String> labels = new HashMap<String, String>();
+        String end = null;
+
+        out.add( move( temp( caller, temps, callee.thisTemp(), prefix ), call.args[0], call ) );
+        for ( int i = 0; i < callee.params().size(); i++ )
+        {
+            out.add( move( temp( caller, temps, callee.params().get( i ), prefix ), call.args[i + 1], call ) );
+        }
+
+        ArrayList<Quad> body = bodies.get( callee.label() );
+        for ( int i = 0; i < body.size(); i++ )
+        {
+            Quad q = body.get( i );
+            if ( q.op == Quad.Op.RETURN )
+            {
+                if ( call.dst != null )
+                {
+                    out.add( move( call.dst, temp( caller, temps, q.src1, prefix ), call ) );
+                }
+                if ( i < body.size() - 1 )
+                {
+                    if ( end == null )
+                    {
+                        end = "$I" + label_count++;
+                    }
+                    Quad j = new Quad( Quad.Op.JUMP, null, null, null, 0, end );
+                    j.loopDepth = call.loopDepth;
+                    out.add( j );
+                }
+                continue;
+            }
+
+            String label = q.label;
+            if ( q.op == Quad.Op.LABEL || q.op == Quad.Op.JUMP || q.op == Quad.Op.IFFALSE )
+            {
+                label = labels.get( q.label );
+                if ( label == null )
+                {
+                    label = "$I" + label_count++;
+                    labels.put( q.label, label );
+                }
+            }
+            Quad c = new Quad( q.op, temp( caller, temps, q.dst, prefix ), temp( caller, temps, q.src1, prefix ),
+                               temp( caller, temps, q.src2, prefix ), q.imm, label );
+            if ( q.args != null )
+            {
+                Temp[] args = new Temp[q.args.length];
+                for ( int k = 0; k < args.length; k++ )
+                {
+                    args[k] = temp( caller, temps, q.args[k], prefix );
+                }
+                c.args = args;
+            }
+            c.loopDepth = q.loopDepth + call.loopDepth;
+            out.add( c );
+        }
+        if ( end != null )
+        {
+            Quad l = new Quad( Quad.Op.LABEL, null, null, null, 0, end );
+            l.loopDepth = call.loopDepth;
+            out.add( l );
+        }
+    }
+
+    // dst = src, at the loop depth of "call"
+    static Quad move( Temp dst, Temp src, Quad call )
+    {
+        Quad q = new Quad( Quad.Op.MOVE, dst, src, null, 0, null );
+        q.loopDepth = call.loopDepth;
+        return q;
+    }
+
+    // The temp of "caller" standing for temp "t" of the callee
+    static Temp temp( IRMethod caller, Temp[] temps, Temp t, String prefix )
+    {
+        if ( t == null )
+        {
+            return null;
+        }
+        if ( temps[t.id] == null )
+        {
+            temps[t.id] = ( t.name == null ) ? caller.newTemp() : caller.newTemp( prefix + t.name );
+        }
+        return temps[t.id];
+    }
+
+    // "Class_method" for the method at label "Class_method_f_entry"
+    static String name( IRMethod m )
+    {
+        if ( m.isMain() )
+        {
+            return "main";
+        }
+        String label = m.label();
+        int i = label.lastIndexOf( "_f_entry" );
+        return ( i < 0 ) ? label : label.substring( 0, i );
+    }
+}
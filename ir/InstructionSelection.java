@@ -0,0 +1,95 @@
+package ir;
+
+// Rewrite the quads of a method into cheaper MIPS idioms before emission:
+//
+//   - a multiplication by 2^k becomes a shift (sll instead of mult / mflo,
+//     with the same low 32 bits)
+//   - an address computed as base + constant and used once by a load or a
+//     store is folded into the offset of that instruction, so that
+//     a[3] is "lw $t, 16($a)"
+public class InstructionSelection
+{
+    IRMethod func;
+
+    public InstructionSelection( IRMethod func )
+    {
+        this.func = func;
+    }
+
+    // k if v == 2^k, -1 if v is not a power of two
+    public static int shiftAmount( int v )
+    {
+        if ( v <= 0 || ( v & ( v - 1 ) ) != 0 )
+        {
+            return -1;
+        }
+        return Integer.numberOfTrailingZeros( v );
+    }
+
+    static boolean fits_offset( long v )
+    {
+        return v >= -32768 && v <= 32767;
+    }
+
+    public void run()
+    {
+        for ( Quad q : func.quads() )
+        {
+            if ( q.op == Quad.Op.MUL && q.src2 == null && shiftAmount( q.imm ) >= 0 )
+            {
+                int k = shiftAmount( q.imm );
+                q.op = ( k == 0 ) ? Quad.Op.MOVE : Quad.Op.SLL;
+                q.imm = k;
+            }
+        }
+        foldOffsets();
+    }
+
+    void foldOffsets()
+    {
+        int[] uses = new int[func.tempCount()];
+        for ( Quad q : func.quads() )
+        {
+            for ( Temp t : q.uses() )
+            {
+                uses[t.id]++;
+            }
+        }
+
+        for ( int i = 0; i < func.quads().size(); i++ )
+        {
+            Quad q = func.quads().get( i );
+            if ( q.op != Quad.Op.ADD || q.src2 != null || uses[q.dst.id] != 1 || q.dst == q.src1 )
+            {
+                continue;
+            }
+            Quad m = memory_use( i, q.dst, q.src1 );
+            if ( m != null && fits_offset( ( long ) m.imm + q.imm ) )
+            {
+                m.src1 = q.src1;
+                m.imm += q.imm;
+                func.quads().remove( i );
+                i--;
+            }
+        }
+    }
+
+    // The load or store after quad "def" (in the same block) that uses "addr"
+    // as its base, provided that "base" is not written in between
+    Quad memory_use( int def, Temp addr, Temp base )
+    {
+        for ( int i = def + 1; i < func.quads().size(); i++ )
+        {
+            Quad q = func.quads().get( i );
+            if ( ( q.op == Quad.Op.LOAD || q.op == Quad.Op.STORE ) && q.src1 == addr && q.src2 != addr )
+            {
+                return q;
+            }
+            if ( q.def() == base || q.def() == addr || q.op == Quad.Op.LABEL || ControlFlowGraph.ends_block( q ) )
+            {
+                return null;
+            }
+        }
+        return null;
+    }
+}
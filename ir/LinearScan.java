@@ -0,0 +1,253 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+
+// Linear scan register allocation (Poletto & Sarkar) over the temps of one
+// method.
+//
+// Live intervals come from ir.Liveness over the control flow graph, in the
+// order the quads are emitted.
+//
+// When all registers are taken, the interval with the smallest spill weight
+// (uses weighted by loop depth) goes to memory, so that hot variables and
+// expression temporaries stay in registers.
+//
+// A method call (CALL, VCALL) does not keep $t0-$t9 (the callee saves the
+// $s registers it uses, see ir.MipsEmitter): an interval live across one
+// only gets a $s register. The others take a $t register first, which
+// costs no saving. The supporting functions keep both.
+public class LinearScan
+{
+    public static final String[] REGISTERS =
+    {
+        "$t0", "$t1", "$t2", "$t3", "$t4", "$t5", "$t6", "$t7", "$t8", "$t9",
+        "$s0", "$s1", "$s2", "$s3", "$s4", "$s5", "$s6", "$s7"
+    };
+    static final int FIRST_SAVED = 10;  // $s0
+
+    IRMethod func;
+    String[] reg;        // indexed by temp id; null if spilled (or unused)
+    boolean[] spilled;   // indexed by temp id
+    boolean[] used;      // indexed by register number
+
+    public LinearScan( IRMethod func )
+    {
+        this.func = func;
+        reg = new String[func.tempCount()];
+        spilled = new boolean[func.tempCount()];
+        used = new boolean[REGISTERS.length];
+        allocate( intervals() );
+    }
+
+    // The register assigned to "t", or null if "t" lives in memory
+    public String reg( Temp t )
+    {
+        return reg[t.id];
+    }
+
+    // Whether "t" is live somewhere but got no register
+    public boolean spilled( Temp t )
+    {
+        return spilled[t.id];
+    }
+
+    // The callee-saved registers ($s0-$s7) assigned to at least one temp
+    public ArrayList<String> savedRegisters()
+    {
+        ArrayList<String> l = new ArrayList<String>();
+        for ( int i = FIRST_SAVED; i < REGISTERS.length; i++ )
+        {
+            if ( used[i] )
+            {
+                l.add( REGISTERS[i] );
+            }
+        }
+        return l;
+    }
+
+    // The interval of a temp spans every position where it is live: the
+    // positions it is read or written at, the start of the blocks it is live
+    // into and the end of the blocks it is live out of.
+    ArrayList<Interval> intervals()
+    {
+        Interval[] in = new Interval[func.tempCount()];
+        ControlFlowGraph cfg = new ControlFlowGraph( func );
+        Liveness live = new Liveness( cfg );
+
+        int[] first = new int[cfg.blocks().size()];
+        int[] last = new int[cfg.blocks().size()];
+        int pos = 0;
+        ArrayList<Integer> calls = new ArrayList<Integer>();
+        for ( BasicBlock b : cfg.blocks() )
+        {
+            first[b.id] = pos;
+            for ( Quad q : b.quads() )
+            {
+                if ( q.op == Quad.Op.CALL || q.op == Quad.Op.VCALL )
+                {
+                    calls.add( pos );
+                }
+                double w = Math.pow( 10, Math.min( q.loopDepth, 6 ) );
+                for ( Temp t : q.uses() )
+                {
+                    in[t.id] = extend( in[t.id], t, pos, w );
+                }
+                if ( q.def() != null )
+                {
+                    in[q.def().id] = extend( in[q.def().id], q.def(), pos, w );
+                }
+                pos++;
+            }
+            last[b.id] = Math.max( first[b.id], pos - 1 );
+        }
+
+        for ( BasicBlock b : cfg.blocks() )
+        {
+            BitSet li = live.liveIn( b );
+            for ( int t = li.nextSetBit( 0 ); t >= 0; t = li.nextSetBit( t + 1 ) )
+            {
+                // Live into the first block: defined on entry (parameters, "this")
+                extend( in[t], b == cfg.entry() ? -1 : first[b.id] );
+            }
+            BitSet lo = live.liveOut( b );
+            for ( int t = lo.nextSetBit( 0 ); t >= 0; t = lo.nextSetBit( t + 1 ) )
+            {
+                extend( in[t], last[b.id] );
+            }
+        }
+
+        // before[p + 1]: the number of calls at positions below p (p >= -1)
+        int[] before = new int[pos + 2];
+        for ( int p : calls )
+        {
+            before[p + 2]++;
+        }
+        for ( int p = 1; p < before.length; p++ )
+        {
+            before[p] += before[p - 1];
+        }
+
+        ArrayList<Interval> l = new ArrayList<Interval>();
+        for ( Interval i : in )
+        {
+            if ( i != null )
+            {
+                // A call strictly inside: the temp is live after it, and
+                // was defined before it
+                i.acrossCall = before[i.end + 1] > before[i.start + 2];
+                l.add( i );
+            }
+        }
+        return l;
+    }
+
+    void extend( Interval i, int pos )
+    {
+        i.start = Math.min( i.start, pos );
+        i.end = Math.max( i.end, pos );
+    }
+
+    Interval extend( Interval i, Temp t, int pos, double weight )
+    {
+        if ( i == null )
+        {
+            i = new Interval( t, pos );
+        }
+        extend( i, pos );
+        i.weight += weight;
+        return i;
+    }
+
+    void allocate( ArrayList<Interval> intervals )
+    {
+        Collections.sort( intervals, new Comparator<Interval>()
+        {
+            public int compare( Interval a, Interval b )
+            {
+                return ( a.start != b.start ) ? a.start - b.start : a.temp.id - b.temp.id;
+            }
+        } );
+
+        boolean[] free = new boolean[REGISTERS.length];
+        Arrays.fill( free, true );
+        ArrayList<Interval> active = new ArrayList<Interval>();
+
+        for ( Interval cur : intervals )
+        {
+            // Expire the intervals that ended before the current one starts
+            for ( int i = active.size() - 1; i >= 0; i-- )
+            {
+                Interval a = active.get( i );
+                if ( a.end < cur.start )
+                {
+                    free[a.reg] = true;
+                    active.remove( i );
+                }
+            }
+
+            int lowest = cur.acrossCall ? FIRST_SAVED : 0;
+            int r = -1;
+            for ( int i = lowest; i < free.length; i++ )
+            {
+                if ( free[i] )
+                {
+                    r = i;
+                    break;
+                }
+            }
+
+            if ( r < 0 )
+            {
+                // Spill the cheapest of the current interval and the active
+                // ones holding a register it may take
+                Interval victim = cur;
+                for ( Interval a : active )
+                {
+                    if ( a.reg >= lowest && a.weight < victim.weight )
+                    {
+                        victim = a;
+                    }
+                }
+                if ( victim == cur )
+                {
+                    spilled[cur.temp.id] = true;
+                    continue;
+                }
+                r = victim.reg;
+                reg[victim.temp.id] = null;
+                spilled[victim.temp.id] = true;
+                active.remove( victim );
+            }
+
+            cur.reg = r;
+            free[r] = false;
+            used[r] = true;
+            reg[cur.temp.id] = REGISTERS[r];
+            active.add( cur );
+        }
+    }
+}
+
+// The range of quad positions in which a temp is live
+class Interval
+{
+    Temp temp;
+    int start;
+    int end;
+    double weight;
+    int reg;
+    boolean acrossCall;     // live across a CALL or VCALL
+
+    Interval( Temp temp, int pos )
+    {
+        this.temp = temp;
+        this.start = pos;
+        this.end = pos;
+        this.weight = 0;
+        this.reg = -1;
+    }
+}
@@ -0,0 +1,89 @@
+package ir;
+
+import java.util.BitSet;
+
+// Backward dataflow: the temps live on entry to and on exit from each
+// basic block (sets of temp ids).
+//
+//   out(b) = union of in(s) for every successor s
+//   in(b)  = use(b) + ( out(b) - def(b) )
+public class Liveness
+{
+    ControlFlowGraph cfg;
+    BitSet[] use;   // read in the block before any write
+    BitSet[] def;   // written in the block
+    BitSet[] in;
+    BitSet[] out;
+
+    public Liveness( ControlFlowGraph cfg )
+    {
+        this.cfg = cfg;
+        int n = cfg.blocks().size();
+        use = new BitSet[n];
+        def = new BitSet[n];
+        in = new BitSet[n];
+        out = new BitSet[n];
+        for ( BasicBlock b : cfg.blocks() )
+        {
+            local( b );
+        }
+        solve();
+    }
+
+    public BitSet liveIn( BasicBlock b ) { return in[b.id]; }
+
+    public BitSet liveOut( BasicBlock b ) { return out[b.id]; }
+
+    void local( BasicBlock b )
+    {
+        BitSet u = new BitSet();
+        BitSet d = new BitSet();
+        for ( Quad q : b.quads )
+        {
+            for ( Temp t : q.uses() )
+            {
+                if ( !d.get( t.id ) )
+                {
+                    u.set( t.id );
+                }
+            }
+            if ( q.def() != null )
+            {
+                d.set( q.def().id );
+            }
+        }
+        use[b.id] = u;
+        def[b.id] = d;
+        in[b.id] = ( BitSet ) u.clone();
+        out[b.id] = new BitSet();
+    }
+
+    void solve()
+    {
+        boolean changed = true;
+        while ( changed )
+        {
+            changed = false;
+            // Visit the blocks backwards so that most facts settle in one pass
+            for ( int i = cfg.blocks().size() - 1; i >= 0; i-- )
+            {
+                BasicBlock b = cfg.blocks().get( i );
+                BitSet o = new BitSet();
+                for ( BasicBlock s : b.succ )
+                {
+                    o.or( in[s.id] );
+                }
+                if ( o.equals( out[b.id] ) )
+                {
+                    continue;
+                }
+                out[b.id] = o;
+                BitSet n = ( BitSet ) o.clone();
+                n.andNot( def[b.id] );
+                n.or( use[b.id] );
+                in[b.id] = n;
+                changed = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,514 @@
+package ir;
+
+import mips.AsmWriter;
+import mips.MipsRuntime;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// Emit MIPS code for an IRProgram, using ir.LinearScan to map temps to
+// registers.
+//
+// The caller passes "this" in $a0 and the first three arguments in
+// $a1-$a3, the others on the stack (the last one first), which the callee
+// pops. The result comes back in $v0. Frame of a method (n parameters):
+//
+//   4*(i-2)($fp)   parameter i (i >= 3)
+//   0($fp)         $ra
+//   -4($fp)        old $fp
+//   -8($fp) ...    saved registers, then spill slots
+//
+// A method saves the $s registers it allocates, and $ra only if it calls
+// (or prints, or allocates); the $t registers are the caller's to lose
+// across a call (see ir.LinearScan). A method that needs none of it, nor
+// any spill slot, has no frame at all.
+//
+// Temps that did not get a register are loaded into the scratch registers
+// $a1 / $a2 when read and computed into $a3 before being stored back.
+public class MipsEmitter
+{
+    AsmWriter out;
+
+    IRMethod func;
+    LinearScan alloc;
+    HashMap<Temp, Integer> slot;  // $fp offset of the temps living in memory
+    ArrayList<String> saved;
+    boolean calls;                // the method saves $ra
+    boolean frameless;
+    int label_count;              // of the labels made here
+
+    static final int ARG_REGISTERS = 3;     // $a1-$a3, besides "this"
+
+    public MipsEmitter( AsmWriter out )
+    {
+        this.out = out;
+    }
+
+    public void emit( IRProgram p )
+    {
+        MipsRuntime.data_segment( out );
+        for ( String label : p.vtables().keySet() )
+        {
+            MipsRuntime.vtable( out, label, p.vtables().get( label ) );
+        }
+        MipsRuntime.pointer_maps( out, p.pointerMaps() );
+        MipsRuntime.text_segment( out );
+
+        emit_method( p.main() );
+        MipsRuntime.exit( out );
+
+        for ( IRMethod m : p.methods() )
+        {
+            emit_method( m );
+        }
+
+        MipsRuntime.supporting_functions( out );
+    }
+
+    void emit_method( IRMethod m )
+    {
+        func = m;
+        new InstructionSelection( m ).run();
+        alloc = new LinearScan( m );
+        slot = new HashMap<Temp, Integer>();
+        saved = m.isMain() ? new ArrayList<String>() : alloc.savedRegisters();
+
+        // Parameters passed on the stack that live in memory stay there
+        int n = m.params().size();
+        for ( int i = ARG_REGISTERS; i < n; i++ )
+        {
+            slot.put( m.params().get( i ), 4 * ( i - ARG_REGISTERS + 1 ) );
+        }
+
+        int words = m.isMain() ? 0 : 1 + saved.size();  // old $fp and saved registers
+        int frame = words;
+        if ( !m.isMain() && alloc.spilled( m.thisTemp() ) )
+        {
+            slot.put( m.thisTemp(), -4 * ++words );
+        }
+        for ( Quad q : m.quads() )
+        {
+            Temp d = q.def();
+            if ( d != null && alloc.reg( d ) == null && !slot.containsKey( d ) )
+            {
+                slot.put( d, -4 * ++words );
+            }
+        }
+        for ( int i = 0; i < n && i < ARG_REGISTERS; i++ )
+        {
+            Temp t = m.params().get( i );
+            if ( alloc.spilled( t ) && !slot.containsKey( t ) )
+            {
+                slot.put( t, -4 * ++words );
+            }
+        }
+
+        calls = calls( m );
+        frameless = !m.isMain() && words == frame && saved.isEmpty() && n <= ARG_REGISTERS && !calls;
+        if ( m.isMain() )
+        {
+            out.op( "move", "$fp", "$sp" );
+            out.op( "addiu", "$sp", "$sp", -4 * ( words + 1 ) );
+            out.blank();
+        }
+        else
+        {
+            out.label( m.label() );
+            out.blank();
+            if ( !frameless )
+            {
+                if ( calls )
+                {
+                    out.mem( "sw", "$ra", 0, "$sp" );
+                    out.comment( "save $ra" );
+                }
+                out.mem( "sw", "$fp", -4, "$sp" );
+                out.comment( "save $fp" );
+                out.op( "move", "$fp", "$sp" );
+                out.op( "addiu", "$sp", "$sp", -4 * ( words + 1 ) );
+                for ( int i = 0; i < saved.size(); i++ )
+                {
+                    out.mem( "sw", saved.get( i ), -4 * ( i + 2 ), "$fp" );
+                }
+            }
+            load_incoming( m.thisTemp(), "$a0" );
+            for ( int i = 0; i < n; i++ )
+            {
+                load_incoming( m.params().get( i ), ( i < ARG_REGISTERS ) ? "$a" + ( i + 1 ) : null );
+            }
+            out.blank();
+        }
+
+        for ( Quad q : m.quads() )
+        {
+            emit_quad( q );
+        }
+    }
+
+    // Whether "m" calls a method or a supporting function (jal, which
+    // overwrites $ra)
+    static boolean calls( IRMethod m )
+    {
+        for ( Quad q : m.quads() )
+        {
+            switch ( q.op )
+            {
+                case CALL:
+                case VCALL:
+                case PRINT:
+                case NEWARRAY:
+                case ALLOC:
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    // Move "this" or a parameter from register "from" (or its slot on the
+    // stack, if null) to its own register or slot
+    void load_incoming( Temp t, String from )
+    {
+        String r = alloc.reg( t );
+        if ( from == null )
+        {
+            if ( r != null )
+            {
+                out.mem( "lw", r, slot.get( t ), "$fp" );
+                out.comment( t.name() );
+            }
+        }
+        else if ( r != null )
+        {
+            out.op( "move", r, from );
+            out.comment( t.name() );
+        }
+        else if ( alloc.spilled( t ) )
+        {
+            location( "sw", from, t );
+            out.comment( t.name() );
+        }
+    }
+
+    // The register holding the value of "t" (loaded into "scratch" if "t"
+    // lives in memory)
+    String use( Temp t, String scratch )
+    {
+        String r = alloc.reg( t );
+        if ( r != null )
+        {
+            return r;
+        }
+        location( "lw", scratch, t );
+        out.comment( "reload ", t.toString() );
+        return scratch;
+    }
+
+    // The register an instruction defining "t" should write to
+    String def( Temp t )
+    {
+        String r = alloc.reg( t );
+        return ( r != null ) ? r : "$a3";
+    }
+
+    // Store the value of "t" back to memory if it has no register
+    void store( Temp t )
+    {
+        if ( alloc.reg( t ) == null )
+        {
+            location( "sw", "$a3", t );
+            out.comment( "spill ", t.toString() );
+        }
+    }
+
+    // Load or store register "r" from or to the memory of "t"
+    void location( String op, String r, Temp t )
+    {
+        Integer off = slot.get( t );
+        if ( off == null )
+        {
+            // Read before being written (an uninitialized variable)
+            out.mem( op, r, 0, "$sp" );
+            return;
+        }
+        out.mem( op, r, off, "$fp" );
+    }
+
+    static boolean fits_signed( int imm )
+    {
+        return imm >= -32768 && imm <= 32767;
+    }
+
+    static boolean fits_unsigned( int imm )
+    {
+        return imm >= 0 && imm <= 65535;
+    }
+
+    void emit_quad( Quad q )
+    {
+        switch ( q.op )
+        {
+            case LABEL:
+                out.label( q.label );
+                return;
+            case JUMP:
+                out.op( "j", q.label );
+                out.blank();
+                return;
+            case IFFALSE:
+                out.op( "beq", use( q.src1, "$a1" ), "$zero", q.label );
+                out.blank();
+                return;
+            case LI:
+            {
+                String d = def( q.dst );
+                out.op( "li", d, q.imm );
+                store( q.dst );
+                return;
+            }
+            case LA:
+            {
+                String d = def( q.dst );
+                out.op( "la", d, q.label );
+                store( q.dst );
+                return;
+            }
+            case MOVE:
+            {
+                String a = use( q.src1, "$a1" );
+                String d = def( q.dst );
+                if ( !a.equals( d ) )
+                {
+                    out.op( "move", d, a );
+                }
+                store( q.dst );
+                return;
+            }
+            case ADD:
+            case SUB:
+            case MUL:
+            case LT:
+            case AND:
+                emit_binop( q );
+                return;
+            case NOT:
+            {
+                String a = use( q.src1, "$a1" );
+                String d = def( q.dst );
+                out.op( "xori", d, a, 1 );
+                out.comment( "Not" );
+                store( q.dst );
+                return;
+            }
+            case SLL:
+            {
+                String a = use( q.src1, "$a1" );
+                String d = def( q.dst );
+                out.op( "sll", d, a, q.imm );
+                store( q.dst );
+                return;
+            }
+            case LOAD:
+            {
+                String a = use( q.src1, "$a1" );
+                String d = def( q.dst );
+                out.mem( "lw", d, q.imm, a );
+                store( q.dst );
+                return;
+            }
+            case STORE:
+            {
+                String a = use( q.src1, "$a1" );
+                String b = use( q.src2, "$a2" );
+                out.mem( "sw", b, q.imm, a );
+                return;
+            }
+            case NULLCHK:
+                out.op( "beq", use( q.src1, "$a1" ), "$zero", "_null_pointer_exception" );
+                return;
+            case BOUNDS:
+            {
+                String i = use( q.src1, "$a1" );
+                String a = use( q.src2, "$a2" );
+                out.mem( "lw", "$v1", 0, a );
+                out.comment( "length" );
+                out.op( "bgeu", i, "$v1", "_array_index_out_of_bound_exception" );
+                out.comment( "0 <= index < length" );
+                return;
+            }
+            case PRINT:
+                out.op( "move", "$a0", use( q.src1, "$a1" ) );
+                out.op( "jal", "_print_int" );
+                out.blank();
+                return;
+            case NEWARRAY:
+            {
+                out.op( "move", "$a0", use( q.src1, "$a1" ) );
+                out.comment( "NewArray" );
+                out.op( "jal", "_alloc_int_array" );
+                out.op( "move", def( q.dst ), "$v0" );
+                out.blank();
+                store( q.dst );
+                return;
+            }
+            case ALLOC:
+            {
+                MipsRuntime.alloc_object( out, q.imm, "$Alloc" + label_count++ );
+                out.op( "move", def( q.dst ), "$v0" );
+                out.comment( "NewObject" );
+                store( q.dst );
+                return;
+            }
+            case CALL:
+            case VCALL:
+                emit_call( q );
+                return;
+            case RETURN:
+                emit_return( q );
+                return;
+        }
+    }
+
+    void emit_binop( Quad q )
+    {
+        String a = use( q.src1, "$a1" );
+        String b = null;
+        String i = null;    // immediate form of the instruction, if any
+        switch ( q.op )
+        {
+            case ADD:
+                i = fits_signed( q.imm ) ? "addi" : null;
+                break;
+            case SUB:
+                i = fits_signed( -q.imm ) ? "addi" : null;
+                break;
+            case LT:
+                i = fits_signed( q.imm ) ? "slti" : null;
+                break;
+            case AND:
+                i = fits_unsigned( q.imm ) ? "andi" : null;
+                break;
+        }
+
+        if ( q.src2 != null )
+        {
+            b = use( q.src2, "$a2" );
+        }
+        else if ( i == null )
+        {
+            out.op( "li", "$a2", q.imm );
+            b = "$a2";
+        }
+
+        String d = def( q.dst );
+        if ( b == null )
+        {
+            int imm = ( q.op == Quad.Op.SUB ) ? -q.imm : q.imm;
+            out.op( i, d, a, imm );
+        }
+        else
+        {
+            switch ( q.op )
+            {
+                case ADD:
+                    out.op( "add", d, a, b );
+                    break;
+                case SUB:
+                    out.op( "sub", d, a, b );
+                    break;
+                case MUL:
+                    out.op( "mult", a, b );
+                    out.op( "mflo", d );
+                    break;
+                case LT:
+                    out.op( "slt", d, a, b );
+                    break;
+                case AND:
+                    out.op( "and", d, a, b );
+                    break;
+            }
+        }
+        store( q.dst );
+    }
+
+    void emit_call( Quad q )
+    {
+        // stack layout (popped by the callee)
+        // en
+        // e...
+        // e3
+        // and e0..e2 in $a1-$a3, this in $a0
+        int n = q.args.length - 1;
+        int k = Math.max( 0, n - ARG_REGISTERS );
+        for ( int i = 0; i < k; i++ )
+        {
+            out.mem( "sw", use( q.args[ARG_REGISTERS + 1 + i], "$a1" ), -4 * ( k - 1 - i ), "$sp" );
+            out.comment( "push e", ARG_REGISTERS + i );
+        }
+        for ( int i = 1; i <= n && i <= ARG_REGISTERS; i++ )
+        {
+            argument( q.args[i], "$a" + i );
+        }
+        argument( q.args[0], "$a0" );
+        if ( q.op == Quad.Op.VCALL )
+        {
+            out.op( "beq", "$a0", "$zero", "_null_pointer_exception" );
+            out.mem( "lw", "$v1", 8, "$a0" );
+            out.comment( "dispatch ptr" );
+            out.mem( "lw", "$v1", 4 * q.imm, "$v1" );
+            out.comment( q.label );
+            if ( k > 0 )
+            {
+                out.op( "addiu", "$sp", "$sp", -4 * k );
+            }
+            out.op( "jalr", "$v1" );
+        }
+        else
+        {
+            if ( k > 0 )
+            {
+                out.op( "addiu", "$sp", "$sp", -4 * k );
+            }
+            out.op( "jal", q.label );
+        }
+        if ( q.dst != null )
+        {
+            out.op( "move", def( q.dst ), "$v0" );
+            out.comment( "load return value" );
+            store( q.dst );
+        }
+        out.blank();
+    }
+
+    // Pass "t" in register "r"
+    void argument( Temp t, String r )
+    {
+        String a = use( t, r );
+        if ( !a.equals( r ) )
+        {
+            out.op( "move", r, a );
+        }
+    }
+
+    void emit_return( Quad q )
+    {
+        out.op( "move", "$v0", use( q.src1, "$a1" ) );
+        out.comment( "save return value" );
+        if ( !frameless )
+        {
+            for ( int i = 0; i < saved.size(); i++ )
+            {
+                out.mem( "lw", saved.get( i ), -4 * ( i + 2 ), "$fp" );
+            }
+            if ( calls )
+            {
+                out.mem( "lw", "$ra", 0, "$fp" );
+                out.comment( "restore $ra" );
+            }
+            out.op( "addiu", "$sp", "$fp", 4 * Math.max( 0, func.params().size() - ARG_REGISTERS ) );
+            out.comment( "pop the frame and the arguments" );
+            out.mem( "lw", "$fp", -4, "$fp" );
+            out.comment( "restore $fp" );
+        }
+        out.op( "jr", "$ra" );
+        out.blank();
+    }
+}
@@ -0,0 +1,147 @@
+package ir;
+
+// A three-address instruction.
+//
+//   LI       dst = imm
+//   LA       dst = address of label
+//   MOVE     dst = src1
+//   ADD, SUB, MUL, LT, AND
+//            dst = src1 op src2  (dst = src1 op imm when src2 is null)
+//   NOT      dst = !src1
+//   SLL      dst = src1 << imm       (from ir.InstructionSelection)
+//   LOAD     dst = [src1 + imm]
+//   STORE    [src1 + imm] = src2
+//   LABEL    label:
+//   JUMP     goto label
+//   IFFALSE  if !src1 goto label
+//   CALL     dst = label( args )        args[0] is "this"
+//   VCALL    dst = args[0].dispatch[imm]( args )  (label is the method name)
+//   PRINT    System.out.println( src1 )
+//   NEWARRAY dst = new int [src1]   (set to 0)
+//   ALLOC    dst = imm bytes of heap, set to 0
+//   NULLCHK  if src1 == null throw null pointer exception
+//   BOUNDS   if src1 < 0 or src1 >= src2.length throw index out of bound
+//            exception
+//   RETURN   return src1
+public class Quad
+{
+    public enum Op
+    {
+        LI, LA, MOVE, ADD, SUB, MUL, LT, AND, NOT, SLL, LOAD, STORE,
+        LABEL, JUMP, IFFALSE, CALL, VCALL, PRINT, NEWARRAY, ALLOC,
+        NULLCHK, BOUNDS, RETURN
+    }
+
+    Op op;
+    Temp dst;
+    Temp src1;
+    Temp src2;
+    int imm;
+    String label;
+    Temp[] args;
+    int loopDepth;   // number of enclosing while loops
+
+    public Quad( Op op, Temp dst, Temp src1, Temp src2, int imm, String label )
+    {
+        this.op = op;
+        this.dst = dst;
+        this.src1 = src1;
+        this.src2 = src2;
+        this.imm = imm;
+        this.label = label;
+    }
+
+    public Op op() { return op; }
+
+    public Temp dst() { return dst; }
+
+    public Temp src1() { return src1; }
+
+    public Temp src2() { return src2; }
+
+    public int imm() { return imm; }
+
+    public String label() { return label; }
+
+    public Temp[] args() { return args; }
+
+    public void setArgs( Temp[] args ) { this.args = args; }
+
+    public int loopDepth() { return loopDepth; }
+
+    public void setLoopDepth( int depth ) { loopDepth = depth; }
+
+    // The temp written by this instruction (null if none)
+    public Temp def()
+    {
+        return dst;
+    }
+
+    // The temps read by this instruction
+    public Temp[] uses()
+    {
+        if ( op == Op.CALL || op == Op.VCALL )
+        {
+            return args;
+        }
+        if ( src1 != null && src2 != null )
+        {
+            return new Temp[] { src1, src2 };
+        }
+        if ( src1 != null )
+        {
+            return new Temp[] { src1 };
+        }
+        return new Temp[0];
+    }
+
+    public String toString()
+    {
+        String b = ( src2 == null ) ? "#" + imm : src2.toString();
+        switch ( op )
+        {
+            case LI:       return dst + " = #" + imm;
+            case LA:       return dst + " = &" + label;
+            case MOVE:     return dst + " = " + src1;
+            case ADD:      return dst + " = " + src1 + " + " + b;
+            case SUB:      return dst + " = " + src1 + " - " + b;
+            case MUL:      return dst + " = " + src1 + " * " + b;
+            case LT:       return dst + " = " + src1 + " < " + b;
+            case AND:      return dst + " = " + src1 + " & " + b;
+            case NOT:      return dst + " = !" + src1;
+            case SLL:      return dst + " = " + src1 + " << " + imm;
+            case LOAD:     return dst + " = [" + src1 + " + " + imm + "]";
+            case STORE:    return "[" + src1 + " + " + imm + "] = " + src2;
+            case LABEL:    return label + ":";
+            case JUMP:     return "goto " + label;
+            case IFFALSE:  return "if !" + src1 + " goto " + label;
+            case PRINT:    return "print " + src1;
+            case NEWARRAY: return dst + " = new int [" + src1 + "]";
+            case ALLOC:    return dst + " = alloc " + imm;
+            case NULLCHK:  return "nullcheck " + src1;
+            case BOUNDS:   return "boundscheck " + src1 + ", " + src2;
+            case RETURN:   return "return " + src1;
+            case CALL:
+            case VCALL:
+            {
+                StringBuilder s = new StringBuilder();
+                if ( dst != null )
+                {
+                    s.append( dst ).append( " = " );
+                }
+                s.append( "call " );
+                if ( op == Op.VCALL )
+                {
+                    s.append( args[0] ).append( ".[" ).append( imm ).append( "]" );
+                }
+                s.append( label ).append( "(" );
+                for ( int i = 0; i < args.length; i++ )
+                {
+                    s.append( i == 0 ? " " : ", " ).append( args[i] );
+                }
+                return s.append( " )" ).toString();
+            }
+        }
+        return op.toString();
+    }
+}
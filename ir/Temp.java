@@ -0,0 +1,25 @@
+package ir;
+
+// A virtual register.
+// Named temps hold the MiniJava variables of a method ("this", parameters
+// and local variables); the unnamed ones hold intermediate results.
+public class Temp
+{
+    int id;
+    String name;  // null for an expression temporary
+
+    Temp( int id, String name )
+    {
+        this.id = id;
+        this.name = name;
+    }
+
+    public int id() { return id; }
+
+    public String name() { return name; }
+
+    public String toString()
+    {
+        return ( name == null ) ? "%" + id : "%" + name;
+    }
+}
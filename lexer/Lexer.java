@@ -0,0 +1,456 @@
+package lexer;
+
+import myparser.MiniJavaParserConstants;
+import syntaxtree.Names;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// A hand-written lexer for the tokens of minijava.jj, as a faster
+// alternative to the token manager JavaCC generates.
+//
+// It works on the bytes of the whole source at once and produces the tokens
+// into arrays (the kind, start and symbol of token i), without allocating
+// anything per token: identifiers, keywords and integer literals are
+// interned from the bytes ("symbol" is their number), and comments are
+// skipped. The length, line and column of a token are computed from those
+// and from the offsets of the lines. LexerTokenManager hands the tokens to
+// the JavaCC parser.
+//
+// Only ASCII sources without unicode escapes are supported: run() returns
+// false for anything else, and for a lexical error, so that the caller can
+// fall back to the generated token manager (which also reports the error).
+public class Lexer implements MiniJavaParserConstants
+{
+    // Kinds of the tokens JavaCC numbers without naming them
+    static final int COMMA = literal_kind( "," );
+    static final int ANDAND = literal_kind( "&&" );
+    static final int TIMES = literal_kind( "*" );
+
+    static final byte[] PRINT_REST = ".out.println".getBytes( StandardCharsets.US_ASCII );
+
+    byte[] buf;
+    int end;
+
+    // The tokens, the last one is EOF
+    public int count;
+    public byte[] kind;
+    public int[] start;         // offset of the first byte
+    public int[] symbol;        // of an identifier, keyword or literal (else -1)
+
+    // The offset of the first byte of each line
+    public int lines;
+    public int[] line_start;
+
+    // The interned names: an open addressing table of indexes into the
+    // arrays of names, whose bytes are kept together in "pool"
+    int[] table;
+    String[] names;
+    int[] name_kind;
+    int[] name_hash;
+    int[] name_start;
+    int[] name_length;
+    int name_count;
+    byte[] pool;
+    int pool_size;
+
+    public Lexer( byte[] buf, int end )
+    {
+        this.buf = buf;
+        this.end = end;
+        int capacity = Math.max( 16, end / 4 );
+        kind = new byte[capacity];
+        start = new int[capacity];
+        symbol = new int[capacity];
+        line_start = new int[Math.max( 16, end / 16 )];
+
+        table = new int[256];
+        Arrays.fill( table, -1 );
+        names = new String[64];
+        name_kind = new int[64];
+        name_hash = new int[64];
+        name_start = new int[64];
+        name_length = new int[64];
+        pool = new byte[1024];
+        add_keywords();
+    }
+
+    // The kind of the literal token "s" ("(", "class", ...), -1 if none
+    static int literal_kind( String s )
+    {
+        String image = "\"" + s + "\"";
+        for ( int k = 0; k < tokenImage.length; k++ )
+        {
+            if ( tokenImage[k].equals( image ) )
+            {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    // The keywords are interned before any identifier, with their own kind
+    void add_keywords()
+    {
+        StringBuilder s = new StringBuilder();
+        for ( int k = 0; k < tokenImage.length; k++ )
+        {
+            String image = tokenImage[k];
+            if ( image.length() > 2 && image.charAt( 0 ) == '"' && Character.isLetter( image.charAt( 1 ) )
+                 && k != PRINT )
+            {
+                s.append( image, 1, image.length() - 1 );
+            }
+        }
+        byte[] keywords = s.toString().getBytes( StandardCharsets.US_ASCII );
+        int at = 0;
+        for ( int k = 0; k < tokenImage.length; k++ )
+        {
+            String image = tokenImage[k];
+            if ( image.length() > 2 && image.charAt( 0 ) == '"' && Character.isLetter( image.charAt( 1 ) )
+                 && k != PRINT )
+            {
+                int n = image.length() - 2;
+                intern( keywords, at, n, k );
+                at += n;
+            }
+        }
+    }
+
+    // Tokenize the whole source; false if it is not supported (or has a
+    // lexical error)
+    public boolean run()
+    {
+        byte[] b = buf;
+        int pos = 0;
+        count = 0;
+        lines = 1;
+        line_start[0] = 0;
+        while ( true )
+        {
+            // Skip white space and comments
+            while ( pos < end )
+            {
+                int c = b[pos];
+                if ( c == ' ' || c == '\t' || c == '\f' )
+                {
+                    pos++;
+                }
+                else if ( c == '\n' )
+                {
+                    pos++;
+                    new_line( pos );
+                }
+                else if ( c == '\r' )
+                {
+                    pos++;
+                    if ( pos < end && b[pos] == '\n' )
+                    {
+                        pos++;
+                    }
+                    new_line( pos );
+                }
+                else if ( c == '/' && pos + 1 < end && b[pos + 1] == '/' )
+                {
+                    // Up to the end of the line, which must be there
+                    pos += 2;
+                    while ( pos < end && b[pos] != '\n' && b[pos] != '\r' )
+                    {
+                        if ( b[pos] < 0 || b[pos] == '\\' )
+                        {
+                            return false;
+                        }
+                        pos++;
+                    }
+                    if ( pos == end )
+                    {
+                        return false;
+                    }
+                }
+                else if ( c == '/' && pos + 1 < end && b[pos + 1] == '*' )
+                {
+                    pos += 2;
+                    while ( true )
+                    {
+                        if ( pos + 1 >= end )
+                        {
+                            return false;
+                        }
+                        int d = b[pos];
+                        if ( d == '*' && b[pos + 1] == '/' )
+                        {
+                            pos += 2;
+                            break;
+                        }
+                        if ( d < 0 || d == '\\' )
+                        {
+                            return false;
+                        }
+                        pos++;
+                        if ( d == '\n' || ( d == '\r' && b[pos] != '\n' ) )
+                        {
+                            new_line( pos );
+                        }
+                    }
+                }
+                else
+                {
+                    break;
+                }
+            }
+
+            if ( count == kind.length )
+            {
+                grow();
+            }
+            symbol[count] = -1;
+            if ( pos == end )
+            {
+                // Like JavaCC, put the end of file at the last character
+                // (at column 0 if there is none)
+                start[count] = end - 1;
+                kind[count] = EOF;
+                count++;
+                return true;
+            }
+            start[count] = pos;
+
+            int c = b[pos];
+            int k;
+            int n = 1;
+            if ( is_letter( c ) )
+            {
+                while ( pos + n < end && is_letter_or_digit( b[pos + n] ) )
+                {
+                    n++;
+                }
+                if ( n == 6 && pos + 18 <= end && b[pos] == 'S' && print_follows( pos + 6 ) )
+                {
+                    k = PRINT;
+                    n = 18;
+                }
+                else
+                {
+                    int s = intern( b, pos, n, IDENTIFIER );
+                    k = name_kind[s];
+                    symbol[count] = s;
+                }
+            }
+            else if ( c >= '0' && c <= '9' )
+            {
+                if ( c != '0' )
+                {
+                    while ( pos + n < end && b[pos + n] >= '0' && b[pos + n] <= '9' )
+                    {
+                        n++;
+                    }
+                }
+                symbol[count] = intern( b, pos, n, INTEGER_LITERAL );
+                k = INTEGER_LITERAL;
+            }
+            else
+            {
+                switch ( c )
+                {
+                    case '(': k = LPAREN; break;
+                    case ')': k = RPAREN; break;
+                    case '[': k = LSQPAREN; break;
+                    case ']': k = RSQPAREN; break;
+                    case '{': k = LBRACE; break;
+                    case '}': k = RBRACE; break;
+                    case ';': k = SEMICOLON; break;
+                    case '.': k = DOT; break;
+                    case '=': k = ASSIGN; break;
+                    case '<': k = LT; break;
+                    case '+': k = PLUS; break;
+                    case '-': k = MINUS; break;
+                    case '!': k = NOT; break;
+                    case ',': k = COMMA; break;
+                    case '*': k = TIMES; break;
+                    case '&':
+                        if ( pos + 1 < end && b[pos + 1] == '&' )
+                        {
+                            k = ANDAND;
+                            n = 2;
+                        }
+                        else
+                        {
+                            k = AND;
+                        }
+                        break;
+                    default:
+                        return false;
+                }
+            }
+            kind[count] = ( byte ) k;
+            count++;
+            pos += n;
+        }
+    }
+
+    // Line "lines" + 1 starts at "pos"
+    void new_line( int pos )
+    {
+        if ( lines == line_start.length )
+        {
+            line_start = Arrays.copyOf( line_start, 2 * lines );
+        }
+        line_start[lines++] = pos;
+    }
+
+    // The number of bytes of token "i"
+    public int length( int i )
+    {
+        int k = kind[i];
+        if ( symbol[i] >= 0 )
+        {
+            return name_length[symbol[i]];
+        }
+        return ( k == EOF ) ? 0 : ( k == PRINT ) ? 18 : ( k == ANDAND ) ? 2 : 1;
+    }
+
+    // The line of token "i", from 1
+    public int line( int i )
+    {
+        int low = 0;
+        int high = lines - 1;
+        while ( low < high )
+        {
+            int mid = ( low + high + 1 ) >>> 1;
+            if ( line_start[mid] <= start[i] )
+            {
+                low = mid;
+            }
+            else
+            {
+                high = mid - 1;
+            }
+        }
+        return low + 1;
+    }
+
+    // The column of token "i", from 1
+    public int column( int i )
+    {
+        return start[i] - line_start[line( i ) - 1] + 1;
+    }
+
+    static boolean is_letter( int c )
+    {
+        return ( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' ) || c == '_' || c == '$';
+    }
+
+    static boolean is_letter_or_digit( int c )
+    {
+        return is_letter( c ) || ( c >= '0' && c <= '9' );
+    }
+
+    // "System" at "pos" - 6 is followed by ".out.println"
+    boolean print_follows( int pos )
+    {
+        if ( buf[pos - 6] != 'S' || buf[pos - 5] != 'y' || buf[pos - 4] != 's'
+             || buf[pos - 3] != 't' || buf[pos - 2] != 'e' || buf[pos - 1] != 'm' )
+        {
+            return false;
+        }
+        for ( int i = 0; i < PRINT_REST.length; i++ )
+        {
+            if ( buf[pos + i] != PRINT_REST[i] )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void grow()
+    {
+        int n = 2 * kind.length;
+        kind = Arrays.copyOf( kind, n );
+        start = Arrays.copyOf( start, n );
+        symbol = Arrays.copyOf( symbol, n );
+    }
+
+    // The number of the name made of the "n" bytes of "b" at "pos", a new
+    // one of kind "k" if it was not seen before
+    int intern( byte[] b, int pos, int n, int k )
+    {
+        int h = 0;
+        for ( int i = 0; i < n; i++ )
+        {
+            h = 31 * h + b[pos + i];
+        }
+        int mask = table.length - 1;
+        int slot = ( h ^ ( h >>> 16 ) ) & mask;
+        while ( true )
+        {
+            int s = table[slot];
+            if ( s < 0 )
+            {
+                break;
+            }
+            if ( name_hash[s] == h && name_length[s] == n
+                 && Arrays.equals( pool, name_start[s], name_start[s] + n, b, pos, pos + n ) )
+            {
+                return s;
+            }
+            slot = ( slot + 1 ) & mask;
+        }
+
+        int s = name_count++;
+        if ( s == names.length )
+        {
+            int size = 2 * s;
+            names = Arrays.copyOf( names, size );
+            name_kind = Arrays.copyOf( name_kind, size );
+            name_hash = Arrays.copyOf( name_hash, size );
+            name_start = Arrays.copyOf( name_start, size );
+            name_length = Arrays.copyOf( name_length, size );
+        }
+        if ( pool_size + n > pool.length )
+        {
+            pool = Arrays.copyOf( pool, Math.max( 2 * pool.length, pool_size + n ) );
+        }
+        System.arraycopy( b, pos, pool, pool_size, n );
+        names[s] = new String( b, pos, n, StandardCharsets.ISO_8859_1 );
+        name_kind[s] = k;
+        name_hash[s] = h;
+        name_start[s] = pool_size;
+        name_length[s] = n;
+        pool_size += n;
+        table[slot] = s;
+        if ( 2 * name_count > table.length )
+        {
+            rehash();
+        }
+        return s;
+    }
+
+    void rehash()
+    {
+        table = new int[2 * table.length];
+        Arrays.fill( table, -1 );
+        int mask = table.length - 1;
+        for ( int s = 0; s < name_count; s++ )
+        {
+            int h = name_hash[s];
+            int slot = ( h ^ ( h >>> 16 ) ) & mask;
+            while ( table[slot] >= 0 )
+            {
+                slot = ( slot + 1 ) & mask;
+            }
+            table[slot] = s;
+        }
+    }
+
+    // The text of name "s"
+    public String name( int s )
+    {
+        return names[s];
+    }
+
+    // The names interned so far, numbered like the symbols
+    public Names names()
+    {
+        return new Names( names, name_count );
+    }
+}
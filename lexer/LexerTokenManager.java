@@ -0,0 +1,72 @@
+package lexer;
+
+import myparser.JavaCharStream;
+import myparser.MiniJavaParserConstants;
+import myparser.MiniJavaParserTokenManager;
+import myparser.Token;
+import syntaxtree.Names;
+
+// Feeds the tokens of a Lexer to the JavaCC parser:
+//
+//     new MiniJavaParser( new LexerTokenManager( lexer ) ).Goal()
+//
+// The parser still wants a Token object per token, made as it asks for
+// them. Their images are the interned names of the lexer, or constants;
+// the tokens of names are SymbolTokens, and names() gives the parser the
+// lexer's table to look their numbers up in.
+public class LexerTokenManager extends MiniJavaParserTokenManager
+{
+    static final String[] IMAGES = new String[MiniJavaParserConstants.tokenImage.length];
+
+    static
+    {
+        // "\"(\"" is the image of "(" and so on
+        for ( int k = 0; k < IMAGES.length; k++ )
+        {
+            String image = MiniJavaParserConstants.tokenImage[k];
+            IMAGES[k] = ( image.startsWith( "\"" ) ) ? image.substring( 1, image.length() - 1 ) : "";
+        }
+    }
+
+    Lexer lexer;
+    int next;
+    int line;       // of the last token, from 0
+
+    // "lexer" has run
+    public LexerTokenManager( Lexer lexer )
+    {
+        super( ( JavaCharStream ) null );
+        this.lexer = lexer;
+    }
+
+    // The names of the lexer, numbered like the symbols of the tokens
+    public Names names()
+    {
+        return lexer.names();
+    }
+
+    public Token getNextToken()
+    {
+        Lexer l = lexer;
+        int i = next;
+        if ( i < l.count - 1 )
+        {
+            next++;     // EOF is returned for ever
+        }
+        int k = l.kind[i];
+        int s = l.symbol[i];
+        Token t = ( s >= 0 ) ? new SymbolToken( k, l.name( s ), s ) : Token.newToken( k, IMAGES[k] );
+
+        // The tokens come in order, and so do their lines
+        int start = l.start[i];
+        while ( line + 1 < l.lines && l.line_start[line + 1] <= start )
+        {
+            line++;
+        }
+        t.beginLine = line + 1;
+        t.beginColumn = start - l.line_start[line] + 1;
+        t.endLine = t.beginLine;
+        t.endColumn = t.beginColumn + Math.max( 0, l.length( i ) - 1 );
+        return t;
+    }
+}
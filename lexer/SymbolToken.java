@@ -0,0 +1,17 @@
+package lexer;
+
+import myparser.Token;
+
+// A token of an identifier (or literal) from LexerTokenManager, with the
+// number the lexer interned its text under: the parser numbers the
+// identifiers with it rather than looking their names up again.
+public class SymbolToken extends Token
+{
+    public final int symbol;
+
+    SymbolToken( int kind, String image, int symbol )
+    {
+        super( kind, image );
+        this.symbol = symbol;
+    }
+}
@@ -0,0 +1,406 @@
+package mips;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+// Where the code generators write the assembly program, one instruction at
+// a time, with its opcode, registers and immediates as separate operands:
+//
+//     out.mem( "lw", "$a0", -8, "$fp" );
+//     out.comment( "load local variable ", id );
+//
+// writes "lw $a0, -8($fp) # load local variable x". The text is appended
+// into a char buffer that is reused, and written to the channel in large
+// chunks, without building a String per line. The comments and the empty
+// lines can be left out (setComments, setBlankLines), which makes about
+// half as many bytes for MARS to read.
+//
+// InstructionList is an AsmWriter that keeps the instructions instead, for
+// the passes that run over them (mips.Peephole, mips.Simulator).
+public class AsmWriter
+{
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    WritableByteChannel channel;
+    Charset charset;
+    CharsetEncoder encoder;
+    ByteBuffer bytes;
+    char[] buf;
+    int size;
+
+    boolean comments = true;
+    boolean blank_lines = true;
+    long written;           // bytes
+    boolean started;        // a line was written
+    boolean open;           // the last line is not ended yet
+    boolean blank;          // an empty line is to follow it
+    int operands;           // of the current instruction
+
+    // Write to "channel", in the default charset
+    public AsmWriter( WritableByteChannel channel )
+    {
+        this( channel, Charset.defaultCharset() );
+    }
+
+    public AsmWriter( WritableByteChannel channel, Charset charset )
+    {
+        this.channel = channel;
+        this.charset = charset;
+        buf = new char[BUFFER_SIZE];
+    }
+
+    // For InstructionList, which writes nothing
+    AsmWriter()
+    {
+    }
+
+    // Keep the comments (the default) or leave them out
+    public void setComments( boolean comments )
+    {
+        this.comments = comments;
+    }
+
+    // Keep the empty lines (the default) or leave them out
+    public void setBlankLines( boolean blank_lines )
+    {
+        this.blank_lines = blank_lines;
+    }
+
+    // The number of bytes written to the channel so far
+    public long written() { return written; }
+
+    // Instructions
+
+    public void op( String op )
+    {
+        start_op( op, 0 );
+    }
+
+    public void op( String op, String a )
+    {
+        start_op( op, 1 );
+        operand( a );
+    }
+
+    public void op( String op, String a, String b )
+    {
+        start_op( op, 2 );
+        operand( a );
+        operand( b );
+    }
+
+    public void op( String op, String a, int imm )
+    {
+        start_op( op, 2 );
+        operand( a );
+        operand( imm );
+    }
+
+    public void op( String op, String a, String b, String c )
+    {
+        start_op( op, 3 );
+        operand( a );
+        operand( b );
+        operand( c );
+    }
+
+    public void op( String op, String a, String b, int imm )
+    {
+        start_op( op, 3 );
+        operand( a );
+        operand( b );
+        operand( imm );
+    }
+
+    // A load or store: "op r, offset(base)"
+    public void mem( String op, String r, int offset, String base )
+    {
+        start_op( op, 2 );
+        operand( r );
+        operand( offset, base );
+    }
+
+    public void label( String name )
+    {
+        start_line();
+        append( name );
+        append( ':' );
+    }
+
+    // A directive, or a data declaration ("x: .word 0"), as is
+    public void directive( String text )
+    {
+        start_line();
+        append( text );
+    }
+
+    // A comment on the line written last
+    public void comment( String text )
+    {
+        if ( comments && open )
+        {
+            append( " # " );
+            append( text );
+        }
+    }
+
+    public void comment( String text, String more )
+    {
+        if ( comments && open )
+        {
+            append( " # " );
+            append( text );
+            append( more );
+        }
+    }
+
+    public void comment( String text, int more )
+    {
+        if ( comments && open )
+        {
+            append( " # " );
+            append( text );
+            append( more );
+        }
+    }
+
+    // A line with only a comment
+    public void commentLine( String text )
+    {
+        if ( comments )
+        {
+            start_line();
+            append( "# " );
+            append( text );
+        }
+    }
+
+    // An empty line after the line written last (several count as one)
+    public void blank()
+    {
+        if ( started && blank_lines )
+        {
+            blank = true;
+        }
+    }
+
+    // Text that is not assembly (the IR printed by --ir)
+    public void write( String text )
+    {
+        end_line();
+        append( text );
+    }
+
+    // Write "code" out
+    public void write( InstructionList code )
+    {
+        for ( Instruction i : code.instructions() )
+        {
+            write( i );
+        }
+    }
+
+    public void write( Instruction i )
+    {
+        switch ( i.kind )
+        {
+            case LABEL:
+                label( i.op );
+                break;
+            case DIRECTIVE:
+                directive( i.op );
+                break;
+            case COMMENT:
+                commentLine( i.comment );
+                break;
+            case OP:
+                start_op( i.op, i.args.length );
+                for ( String a : i.args )
+                {
+                    operand( a );
+                }
+                break;
+        }
+        if ( i.comment != null && i.kind != Instruction.Kind.COMMENT )
+        {
+            comment( i.comment );
+        }
+        if ( i.blank )
+        {
+            blank();
+        }
+    }
+
+    // The parts of an instruction: its opcode, then "n" operands
+
+    void start_op( String op, int n )
+    {
+        start_line();
+        append( op );
+        operands = 0;
+    }
+
+    void operand( String a )
+    {
+        append( ( operands++ == 0 ) ? " " : ", " );
+        append( a );
+    }
+
+    void operand( int imm )
+    {
+        append( ( operands++ == 0 ) ? " " : ", " );
+        append( imm );
+    }
+
+    void operand( int offset, String base )
+    {
+        append( ( operands++ == 0 ) ? " " : ", " );
+        append( offset );
+        append( '(' );
+        append( base );
+        append( ')' );
+    }
+
+    // End the line written last (and the empty line after it)
+    void end_line()
+    {
+        if ( open )
+        {
+            append( '\n' );
+            open = false;
+        }
+        if ( blank )
+        {
+            append( '\n' );
+            blank = false;
+        }
+    }
+
+    void start_line()
+    {
+        end_line();
+        open = true;
+        started = true;
+    }
+
+    void append( char c )
+    {
+        if ( size == buf.length )
+        {
+            flush();
+        }
+        buf[size++] = c;
+    }
+
+    void append( String s )
+    {
+        int n = s.length();
+        if ( size + n > buf.length )
+        {
+            // In pieces, if it does not fit
+            for ( int i = 0; i < n; )
+            {
+                if ( size == buf.length )
+                {
+                    flush();
+                }
+                int k = Math.min( n - i, buf.length - size );
+                s.getChars( i, i + k, buf, size );
+                size += k;
+                i += k;
+            }
+            return;
+        }
+        s.getChars( 0, n, buf, size );
+        size += n;
+    }
+
+    void append( int v )
+    {
+        if ( size + 11 > buf.length )
+        {
+            flush();
+        }
+        if ( v < 0 )
+        {
+            if ( v == Integer.MIN_VALUE )
+            {
+                append( Integer.toString( v ) );
+                return;
+            }
+            buf[size++] = '-';
+            v = -v;
+        }
+        int digits = 1;
+        for ( int p = v; p >= 10; p /= 10 )
+        {
+            digits++;
+        }
+        for ( int i = size + digits - 1; i >= size; i-- )
+        {
+            buf[i] = ( char ) ( '0' + v % 10 );
+            v /= 10;
+        }
+        size += digits;
+    }
+
+    // Write the buffered text to the channel
+    public void flush()
+    {
+        if ( size == 0 )
+        {
+            return;
+        }
+        if ( encoder == null )
+        {
+            encoder = charset.newEncoder()
+                .onMalformedInput( CodingErrorAction.REPLACE )
+                .onUnmappableCharacter( CodingErrorAction.REPLACE );
+            bytes = ByteBuffer.allocate( ( int ) ( BUFFER_SIZE * encoder.maxBytesPerChar() ) );
+        }
+        CharBuffer chars = CharBuffer.wrap( buf, 0, size );
+        encoder.reset();
+        while ( encoder.encode( chars, bytes, true ).isOverflow() )
+        {
+            drain();
+        }
+        while ( encoder.flush( bytes ).isOverflow() )
+        {
+            drain();
+        }
+        drain();
+        size = 0;
+    }
+
+    void drain()
+    {
+        bytes.flip();
+        written += bytes.remaining();
+        try
+        {
+            while ( bytes.hasRemaining() )
+            {
+                channel.write( bytes );
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( e );
+        }
+        bytes.clear();
+    }
+
+    // End the last line, write everything out and close the channel
+    public void close() throws IOException
+    {
+        end_line();
+        flush();
+        channel.close();
+    }
+}
@@ -0,0 +1,198 @@
+package mips;
+
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// One line of MIPS assembly: a label, an instruction, a directive (kept as
+// text) or a comment.
+public class Instruction
+{
+    public enum Kind { LABEL, OP, DIRECTIVE, COMMENT }
+
+    static final Pattern REGISTER = Pattern.compile( "\\$[a-z0-9]+" );
+
+    Kind kind;
+    String op;          // opcode, label name, or the text of a directive
+    String[] args;
+    String comment;     // null if none
+    boolean blank;      // print an empty line after it
+
+    public Instruction( String op, String... args )
+    {
+        this( Kind.OP, op, args, null );
+    }
+
+    Instruction( Kind kind, String op, String[] args, String comment )
+    {
+        this.kind = kind;
+        this.op = op;
+        this.args = args;
+        this.comment = comment;
+    }
+
+    public static Instruction label( String name )
+    {
+        return new Instruction( Kind.LABEL, name, new String[0], null );
+    }
+
+    // Parse one line of assembly (null for an empty line)
+    public static Instruction parse( String line )
+    {
+        String text = line.trim();
+        if ( text.isEmpty() )
+        {
+            return null;
+        }
+        if ( text.startsWith( "#" ) )
+        {
+            return new Instruction( Kind.COMMENT, null, new String[0], text.substring( 1 ).trim() );
+        }
+        if ( text.startsWith( "." ) || text.matches( "[\\w$]+:\\s*\\..*" ) )
+        {
+            return new Instruction( Kind.DIRECTIVE, text, new String[0], null );
+        }
+
+        String comment = null;
+        int hash = text.indexOf( '#' );
+        if ( hash >= 0 )
+        {
+            comment = text.substring( hash + 1 ).trim();
+            text = text.substring( 0, hash ).trim();
+        }
+        if ( text.endsWith( ":" ) )
+        {
+            return new Instruction( Kind.LABEL, text.substring( 0, text.length() - 1 ), new String[0], comment );
+        }
+
+        int space = text.indexOf( ' ' );
+        if ( space < 0 )
+        {
+            return new Instruction( Kind.OP, text, new String[0], comment );
+        }
+        String[] args = text.substring( space + 1 ).split( "," );
+        for ( int i = 0; i < args.length; i++ )
+        {
+            args[i] = args[i].trim();
+        }
+        return new Instruction( Kind.OP, text.substring( 0, space ).replace( ",", "" ), args, comment );
+    }
+
+    public Kind kind() { return kind; }
+
+    public boolean isOp() { return kind == Kind.OP; }
+
+    public boolean isLabel() { return kind == Kind.LABEL; }
+
+    public boolean is( String opcode ) { return kind == Kind.OP && op.equals( opcode ); }
+
+    public String op() { return op; }
+
+    public String arg( int i ) { return args[i]; }
+
+    public int argCount() { return args.length; }
+
+    public void setArg( int i, String a ) { args[i] = a; }
+
+    // Branches and jumps (the target is the last operand)
+    public boolean isBranch()
+    {
+        return kind == Kind.OP && ( op.equals( "j" ) || op.equals( "b" ) || op.startsWith( "b" ) && args.length >= 2 );
+    }
+
+    // Instructions after which the registers are not known to keep their
+    // values, or whose effect is not only on their operands
+    public boolean isBarrier()
+    {
+        return kind != Kind.OP || isBranch() || op.startsWith( "j" ) || op.equals( "syscall" );
+    }
+
+    // The registers written (the first operand of the computing instructions)
+    public String writes()
+    {
+        if ( kind != Kind.OP || args.length == 0 || isBranch() )
+        {
+            return null;
+        }
+        switch ( op )
+        {
+            case "sw":
+            case "sb":
+            case "mult":
+            case "multu":
+            case "div":
+            case "divu":
+            case "jr":
+            case "jalr":
+            case "jal":
+            case "j":
+                return null;
+        }
+        return args[0];
+    }
+
+    // The registers read
+    public ArrayList<String> reads()
+    {
+        ArrayList<String> l = new ArrayList<String>();
+        int first = ( writes() == null ) ? 0 : 1;
+        for ( int i = first; i < args.length; i++ )
+        {
+            Matcher m = REGISTER.matcher( args[i] );
+            while ( m.find() )
+            {
+                l.add( m.group() );
+            }
+        }
+        if ( is( "mflo" ) || is( "mfhi" ) )
+        {
+            l.add( "$lo" );
+        }
+        return l;
+    }
+
+    // True if any operand mentions register "r"
+    public boolean mentions( String r )
+    {
+        for ( String a : args )
+        {
+            Matcher m = REGISTER.matcher( a );
+            while ( m.find() )
+            {
+                if ( m.group().equals( r ) )
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public String toString()
+    {
+        StringBuilder s = new StringBuilder();
+        switch ( kind )
+        {
+            case LABEL:
+                s.append( op ).append( ":" );
+                break;
+            case DIRECTIVE:
+                s.append( op );
+                break;
+            case COMMENT:
+                break;
+            case OP:
+                s.append( op );
+                for ( int i = 0; i < args.length; i++ )
+                {
+                    s.append( i == 0 ? " " : ", " ).append( args[i] );
+                }
+                break;
+        }
+        if ( comment != null )
+        {
+            s.append( s.length() == 0 ? "# " : " # " ).append( comment );
+        }
+        return s.toString();
+    }
+}
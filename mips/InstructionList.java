@@ -0,0 +1,126 @@
+package mips;
+
+import java.util.ArrayList;
+
+// The assembly program being generated, as a list of instructions.
+//
+// The code generators write it as they would to any AsmWriter, but every
+// instruction is kept as an Instruction (opcode and operands), so that
+// passes like mips.Peephole work on opcodes and operands rather than on
+// text. AsmWriter.write( InstructionList ) prints it.
+public class InstructionList extends AsmWriter
+{
+    static final String[] NO_ARGS = new String[0];
+
+    ArrayList<Instruction> code;
+    Instruction last;       // the instruction being written
+
+    public InstructionList()
+    {
+        code = new ArrayList<Instruction>();
+    }
+
+    public ArrayList<Instruction> instructions() { return code; }
+
+    public int size() { return code.size(); }
+
+    public void add( Instruction i )
+    {
+        code.add( i );
+        last = i;
+    }
+
+    public void label( String name )
+    {
+        add( Instruction.label( name ) );
+    }
+
+    public void directive( String text )
+    {
+        add( new Instruction( Instruction.Kind.DIRECTIVE, text, NO_ARGS, null ) );
+    }
+
+    public void comment( String text )
+    {
+        if ( last != null )
+        {
+            last.comment = text;
+        }
+    }
+
+    public void comment( String text, String more )
+    {
+        comment( text + more );
+    }
+
+    public void comment( String text, int more )
+    {
+        comment( text + more );
+    }
+
+    public void commentLine( String text )
+    {
+        add( new Instruction( Instruction.Kind.COMMENT, null, NO_ARGS, text ) );
+    }
+
+    public void blank()
+    {
+        if ( last != null )
+        {
+            last.blank = true;
+        }
+    }
+
+    // Text that is not assembly (the IR printed by --ir): kept line by line
+    // as directives, which the passes leave alone and print as they are
+    public void write( String text )
+    {
+        for ( String line : text.split( "\n" ) )
+        {
+            directive( line );
+        }
+    }
+
+    void start_op( String op, int n )
+    {
+        add( new Instruction( Instruction.Kind.OP, op, ( n == 0 ) ? NO_ARGS : new String[n], null ) );
+        operands = 0;
+    }
+
+    void operand( String a )
+    {
+        last.args[operands++] = a;
+    }
+
+    void operand( int imm )
+    {
+        last.args[operands++] = Integer.toString( imm );
+    }
+
+    void operand( int offset, String base )
+    {
+        last.args[operands++] = offset + "(" + base + ")";
+    }
+
+    public void flush()
+    {
+    }
+
+    public void close()
+    {
+    }
+
+    // Number of instructions (labels, directives and comments excluded)
+    public int opCount()
+    {
+        int n = 0;
+        for ( Instruction i : code )
+        {
+            if ( i.isOp() )
+            {
+                n++;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,522 @@
+package mips;
+
+import java.util.List;
+
+// Data segment and supporting functions shared by the code generators.
+//
+// The supporting functions only touch $a0-$a3, $v0, $v1 (and $ra through
+// jal, and $gp to allocate), so generated code may keep values in
+// $t0-$t9/$s0-$s7 across them.
+//
+// The heap is made of chunks of at least CHUNK_SIZE bytes requested from
+// the system (sbrk), linked from _chunks. A chunk starts with the address
+// of the next one and its end, then blocks that fill it up, each with a
+// header word before it: its size in bytes (with the header), ORed with
+// OBJECT for an object (whose class tag gives its pointer map) and with
+// MARKED while the collector runs. Arrays (of int) and free blocks hold no
+// pointers.
+//
+// $gp points to the free space being allocated from and _heap_end to its
+// end. The code of a "new" (alloc_object(), alloc_array()) bumps $gp and
+// writes the header, and only calls _alloc when the space is used up.
+// The free space is all 0 (past the word at $gp): a chunk comes from sbrk
+// that way, and a free block is cleared when allocation moves into it, so
+// the fields of an object and the elements of an array need not be.
+// _alloc then takes the next free block large enough, collects the garbage
+// first once the chunks add up to _gc_limit bytes, or takes a new chunk.
+// No chunk is taken before the first allocation (_heap_end is 0 until
+// then).
+// _alloc_int_array stops the program (_array_size_exception) on a
+// length below 0 or above MAX_ARRAY_LENGTH, before $gp is moved.
+//
+// The collector marks and sweeps. The pointers in objects are found with
+// the pointer map of their class (the offsets of their fields of a class
+// or array type, from pointer_maps()). The stack and the registers are
+// scanned conservatively: any word that points into a block keeps it, as
+// neither code generator knows which of its stack words and registers
+// hold pointers. Nothing moves, so an integer taken for a pointer only
+// keeps garbage alive. The unmarked blocks next to each other are joined
+// into free blocks, and listed from _free_list.
+public class MipsRuntime
+{
+    public static final int CHUNK_SIZE = 64 * 1024;
+    public static final int GC_THRESHOLD = 1024 * 1024;    // heap size of the first collection
+    public static final int MAX_ARRAY_LENGTH = 0x0fffffff; // its size in bytes fits in an int
+
+    // Bits of a block header
+    static final int MARKED = 1;
+    static final int OBJECT = 2;
+
+    public static void data_segment( AsmWriter out )
+    {
+        out.directive( ".data" );
+        out.directive( "newline: .asciiz \"\\n\"" );    // to be used by cgen for "System.out.println()"
+        out.directive( "msg_index_out_of_bound_exception: .asciiz \"Index out of bound exception\\n\"" );
+        out.directive( "msg_null_pointer_exception: .asciiz \"Null pointer exception\\n\"" );
+        out.directive( "msg_array_size_exception: .asciiz \"Array size exception\\n\"" );
+        out.directive( "_heap_end: .word 0" );
+        out.directive( "_chunks: .word 0" );
+        out.directive( "_heap_low: .word 0" );         // start of the first chunk
+        out.directive( "_heap_high: .word 0" );        // end of the last one
+        out.directive( "_heap_size: .word 0" );        // of all the chunks
+        out.directive( "_gc_limit: .word " + GC_THRESHOLD );
+        out.directive( "_free_list: .word 0" );
+        out.directive( "_stack_top: .word 0" );
+        out.blank();
+    }
+
+    // Dispatch table of a class: the entry labels of its methods by slot
+    public static void vtable( AsmWriter out, String label, List<String> entries )
+    {
+        StringBuilder s = new StringBuilder( label ).append( ": .word" );
+        for ( int i = 0; i < entries.size(); i++ )
+        {
+            s.append( i == 0 ? " " : ", " ).append( entries.get( i ) );
+        }
+        out.directive( entries.isEmpty() ? s.append( " 0" ).toString() : s.toString() );
+    }
+
+    // Pointer maps of the classes, by class tag: the number of fields of an
+    // object that hold pointers, then their byte offsets
+    public static void pointer_maps( AsmWriter out, List<int[]> maps )
+    {
+        StringBuilder s = new StringBuilder( "_pointer_maps: .word" );
+        for ( int i = 0; i < maps.size(); i++ )
+        {
+            s.append( i == 0 ? " " : ", " ).append( "_pointer_map" ).append( i );
+        }
+        out.directive( maps.isEmpty() ? s.append( " 0" ).toString() : s.toString() );
+        for ( int i = 0; i < maps.size(); i++ )
+        {
+            s.setLength( 0 );
+            s.append( "_pointer_map" ).append( i ).append( ": .word " ).append( maps.get( i ).length );
+            for ( int offset : maps.get( i ) )
+            {
+                s.append( ", " ).append( offset );
+            }
+            out.directive( s.toString() );
+        }
+    }
+
+    public static void text_segment( AsmWriter out )
+    {
+        out.blank();
+        out.directive( ".text" );
+        out.blank();
+        out.op( "sw", "$sp", "_stack_top" );
+        out.comment( "the collector scans the stack up to there" );
+    }
+
+    public static void exit( AsmWriter out )
+    {
+        // Code to terminate the program
+        out.commentLine( "exit" );
+        out.op( "li", "$v0", 10 );
+        out.op( "syscall" );
+        out.blank();
+    }
+
+    // Allocate an object of "bytes" bytes (a multiple of 4): its address in
+    // $v0. Touches $v1 (and $ra when calling _alloc). "done" is a new label.
+    public static void alloc_object( AsmWriter out, int bytes, String done )
+    {
+        out.op( "move", "$v0", "$gp" );
+        out.op( "addiu", "$gp", "$gp", bytes + 4 );
+        out.comment( "allocate ", bytes );
+        alloc_check( out, done );
+        out.op( "jal", "_alloc" );
+        out.label( done );
+        out.op( "li", "$v1", ( bytes + 4 ) | OBJECT );
+        header( out );
+    }
+
+    // The same for an array of the number of bytes in $a0
+    public static void alloc_array( AsmWriter out, String done )
+    {
+        bump( out );
+        alloc_check( out, done );
+        out.op( "jal", "_alloc" );
+        out.label( done );
+        out.op( "addiu", "$v1", "$a0", 4 );
+        header( out );
+    }
+
+    // $v0 = $gp, past which $gp moves by the $a0 bytes and the header
+    static void bump( AsmWriter out )
+    {
+        out.op( "move", "$v0", "$gp" );
+        out.op( "addu", "$gp", "$gp", "$a0" );
+        out.comment( "allocate $a0" );
+        out.op( "addiu", "$gp", "$gp", 4 );
+    }
+
+    // Go to "done" if the block at $v0 fits in the free space
+    static void alloc_check( AsmWriter out, String done )
+    {
+        out.op( "lw", "$v1", "_heap_end" );
+        out.op( "bleu", "$gp", "$v1", done );
+        out.comment( "fits in the free space" );
+    }
+
+    // Header $v1 for the block at $v0, and $v0 past it
+    static void header( AsmWriter out )
+    {
+        out.mem( "sw", "$v1", 0, "$v0" );
+        out.comment( "block header" );
+        out.op( "addiu", "$v0", "$v0", 4 );
+    }
+
+    public static void supporting_functions( AsmWriter out )
+    {
+        out.label( "_print_int" );
+        out.comment( "System.out.println(int)" );
+        out.op( "li", "$v0", 1 );
+        out.op( "syscall" );
+        out.op( "la", "$a0", "newline" );
+        out.op( "li", "$a1", 1 );
+        out.op( "li", "$v0", 4 );
+        out.comment( "print newline" );
+        out.op( "syscall" );
+        out.op( "jr", "$ra" );
+        out.blank();
+
+        out.label( "_null_pointer_exception" );
+        out.op( "la", "$a0", "msg_null_pointer_exception" );
+        out.op( "li", "$a1", 23 );
+        out.op( "li", "$v0", 4 );
+        out.op( "syscall" );
+        out.op( "li", "$v0", 10 );
+        out.op( "syscall" );
+        out.blank();
+
+        out.label( "_array_index_out_of_bound_exception" );
+        out.op( "la", "$a0", "msg_index_out_of_bound_exception" );
+        out.op( "li", "$a1", 29 );
+        out.op( "li", "$v0", 4 );
+        out.op( "syscall" );
+        out.op( "li", "$v0", 10 );
+        out.op( "syscall" );
+        out.blank();
+
+        out.label( "_array_size_exception" );
+        out.op( "la", "$a0", "msg_array_size_exception" );
+        out.op( "li", "$a1", 21 );
+        out.op( "li", "$v0", 4 );
+        out.op( "syscall" );
+        out.op( "li", "$v0", 10 );
+        out.op( "syscall" );
+        out.blank();
+
+        out.label( "_alloc_int_array" );
+        out.comment( "new int [$a0]" );
+        out.op( "li", "$v1", MAX_ARRAY_LENGTH );
+        out.op( "bgtu", "$a0", "$v1", "_array_size_exception" );
+        out.comment( "unsigned: a negative length is too large too" );
+        out.op( "addi", "$a2", "$a0", 0 );
+        out.comment( "Save length in $a2" );
+        out.op( "addi", "$a0", "$a0", 1 );
+        out.comment( "One more word to store the length" );
+        out.op( "sll", "$a0", "$a0", 2 );
+        out.comment( "multiple by 4 bytes" );
+        bump( out );
+        alloc_check( out, "_alloc_int_array_init" );
+        out.op( "move", "$a3", "$ra" );
+        out.op( "jal", "_alloc" );
+        out.op( "move", "$ra", "$a3" );
+        out.label( "_alloc_int_array_init" );
+        out.op( "addiu", "$v1", "$a0", 4 );
+        header( out );
+        out.mem( "sw", "$a2", 0, "$v0" );
+        out.comment( "Store array length (the elements are 0 already)" );
+        out.op( "jr", "$ra" );
+        out.blank();
+
+        allocator( out );
+        collector( out );
+    }
+
+    // _alloc: the block of $gp - $v0 bytes at $v0 does not fit in the free
+    // space. Finds room for it, with $v0 and $gp set as if it had fit. Only
+    // touches $v0 and $v1.
+    static void allocator( AsmWriter out )
+    {
+        out.label( "_alloc" );
+        out.op( "addiu", "$sp", "$sp", -20 );
+        out.mem( "sw", "$ra", 16, "$sp" );
+        out.mem( "sw", "$a0", 12, "$sp" );
+        out.mem( "sw", "$a1", 8, "$sp" );
+        out.mem( "sw", "$a2", 4, "$sp" );
+        out.mem( "sw", "$a3", 0, "$sp" );
+        out.op( "subu", "$a0", "$gp", "$v0" );
+        out.comment( "bytes wanted" );
+        out.op( "move", "$gp", "$v0" );
+        out.op( "lw", "$v1", "_heap_end" );
+        out.op( "bgeu", "$gp", "$v1", "_alloc_find" );
+        out.op( "subu", "$v1", "$v1", "$gp" );
+        out.mem( "sw", "$v1", 0, "$gp" );
+        out.comment( "what is left of the free space becomes a free block" );
+        out.op( "sw", "$gp", "_heap_end" );
+        out.label( "_alloc_find" );
+        out.op( "li", "$a3", 0 );
+        out.comment( "not collected yet" );
+        out.blank();
+
+        // First fit: $a1 is a free block, $a2 the address of the link to it
+        out.label( "_alloc_search" );
+        out.op( "la", "$a2", "_free_list" );
+        out.label( "_alloc_next" );
+        out.mem( "lw", "$a1", 0, "$a2" );
+        out.op( "beqz", "$a1", "_alloc_none" );
+        out.mem( "lw", "$v1", 0, "$a1" );
+        out.comment( "size of the free block" );
+        out.op( "bgeu", "$v1", "$a0", "_alloc_fit" );
+        out.op( "addiu", "$a2", "$a1", 4 );
+        out.op( "j", "_alloc_next" );
+        out.label( "_alloc_fit" );
+        out.mem( "lw", "$v0", 4, "$a1" );
+        out.mem( "sw", "$v0", 0, "$a2" );
+        out.comment( "unlink it" );
+        out.op( "addu", "$v1", "$a1", "$v1" );
+        out.op( "sw", "$v1", "_heap_end" );
+        out.comment( "and allocate from it" );
+        out.op( "addiu", "$a2", "$a1", 4 );
+        out.comment( "once it is set to 0 (but its header)" );
+        out.label( "_alloc_clear" );
+        out.op( "beq", "$a2", "$v1", "_alloc_cleared" );
+        out.mem( "sw", "$zero", 0, "$a2" );
+        out.op( "addiu", "$a2", "$a2", 4 );
+        out.op( "j", "_alloc_clear" );
+        out.label( "_alloc_cleared" );
+        out.op( "move", "$v0", "$a1" );
+        out.op( "addu", "$gp", "$a1", "$a0" );
+        out.op( "j", "_alloc_return" );
+        out.blank();
+
+        out.label( "_alloc_none" );
+        out.op( "bnez", "$a3", "_alloc_chunk" );
+        out.op( "lw", "$v1", "_heap_size" );
+        out.op( "lw", "$a1", "_gc_limit" );
+        out.op( "bltu", "$v1", "$a1", "_alloc_chunk" );
+        out.op( "jal", "_gc" );
+        out.op( "li", "$a3", 1 );
+        out.op( "j", "_alloc_search" );
+        out.blank();
+
+        // A new chunk, of CHUNK_SIZE bytes or just large enough
+        out.label( "_alloc_chunk" );
+        out.op( "addiu", "$a1", "$a0", 8 );
+        out.comment( "with the chunk header" );
+        out.op( "li", "$v1", CHUNK_SIZE );
+        out.op( "bgtu", "$a1", "$v1", "_alloc_sbrk" );
+        out.op( "move", "$a1", "$v1" );
+        out.label( "_alloc_sbrk" );
+        out.op( "move", "$a2", "$a0" );
+        out.op( "move", "$a0", "$a1" );
+        out.op( "li", "$v0", 9 );
+        out.comment( "sbrk" );
+        out.op( "syscall" );
+        out.op( "lw", "$v1", "_chunks" );
+        out.mem( "sw", "$v1", 0, "$v0" );
+        out.comment( "link the chunk" );
+        out.op( "sw", "$v0", "_chunks" );
+        out.op( "addu", "$v1", "$v0", "$a1" );
+        out.mem( "sw", "$v1", 4, "$v0" );
+        out.comment( "its end" );
+        out.op( "sw", "$v1", "_heap_end" );
+        out.op( "sw", "$v1", "_heap_high" );
+        out.op( "lw", "$v1", "_heap_low" );
+        out.op( "bnez", "$v1", "_alloc_counted" );
+        out.op( "sw", "$v0", "_heap_low" );
+        out.label( "_alloc_counted" );
+        out.op( "lw", "$v1", "_heap_size" );
+        out.op( "addu", "$v1", "$v1", "$a1" );
+        out.op( "sw", "$v1", "_heap_size" );
+        out.op( "addiu", "$v0", "$v0", 8 );
+        out.op( "addu", "$gp", "$v0", "$a2" );
+        out.blank();
+
+        out.label( "_alloc_return" );
+        out.mem( "lw", "$ra", 16, "$sp" );
+        out.mem( "lw", "$a0", 12, "$sp" );
+        out.mem( "lw", "$a1", 8, "$sp" );
+        out.mem( "lw", "$a2", 4, "$sp" );
+        out.mem( "lw", "$a3", 0, "$sp" );
+        out.op( "addiu", "$sp", "$sp", 20 );
+        out.op( "jr", "$ra" );
+        out.blank();
+    }
+
+    // _gc: mark what the stack and the registers point to, then sweep
+    static void collector( AsmWriter out )
+    {
+        String[] saved =
+        {
+            "$a0", "$a1", "$a2", "$a3",
+            "$t0", "$t1", "$t2", "$t3", "$t4", "$t5", "$t6", "$t7", "$t8", "$t9",
+            "$s0", "$s1", "$s2", "$s3", "$s4", "$s5", "$s6", "$s7", "$ra"
+        };
+        out.label( "_gc" );
+        out.op( "addiu", "$sp", "$sp", -4 * saved.length );
+        for ( int i = 0; i < saved.length; i++ )
+        {
+            out.mem( "sw", saved[i], 4 * i, "$sp" );
+        }
+        out.comment( "the registers are scanned with the stack" );
+        out.op( "move", "$s0", "$sp" );
+        out.op( "lw", "$s1", "_stack_top" );
+        out.label( "_gc_stack" );
+        out.op( "bgeu", "$s0", "$s1", "_gc_sweep" );
+        out.mem( "lw", "$a0", 0, "$s0" );
+        out.op( "jal", "_gc_root" );
+        out.op( "addiu", "$s0", "$s0", 4 );
+        out.op( "j", "_gc_stack" );
+        out.blank();
+
+        // Free the unmarked blocks, unmark the others. $s1 is a chunk, $s2
+        // its end, $s0 a block, $s5 the bytes in use
+        out.label( "_gc_sweep" );
+        out.op( "sw", "$zero", "_free_list" );
+        out.op( "li", "$s5", 0 );
+        out.op( "lw", "$s1", "_chunks" );
+        out.label( "_gc_sweep_chunk" );
+        out.op( "beqz", "$s1", "_gc_sweep_end" );
+        out.op( "addiu", "$s0", "$s1", 8 );
+        out.mem( "lw", "$s2", 4, "$s1" );
+        out.label( "_gc_sweep_block" );
+        out.op( "bgeu", "$s0", "$s2", "_gc_sweep_next" );
+        out.mem( "lw", "$v0", 0, "$s0" );
+        out.op( "andi", "$v1", "$v0", MARKED );
+        out.op( "beqz", "$v1", "_gc_sweep_free" );
+        out.op( "xori", "$v0", "$v0", MARKED );
+        out.mem( "sw", "$v0", 0, "$s0" );
+        out.op( "srl", "$v0", "$v0", 2 );
+        out.op( "sll", "$v0", "$v0", 2 );
+        out.op( "addu", "$s5", "$s5", "$v0" );
+        out.op( "addu", "$s0", "$s0", "$v0" );
+        out.op( "j", "_gc_sweep_block" );
+        out.label( "_gc_sweep_free" );
+        out.op( "move", "$s3", "$s0" );
+        out.comment( "a run of unmarked blocks" );
+        out.label( "_gc_sweep_run" );
+        out.op( "srl", "$v0", "$v0", 2 );
+        out.op( "sll", "$v0", "$v0", 2 );
+        out.op( "addu", "$s0", "$s0", "$v0" );
+        out.op( "bgeu", "$s0", "$s2", "_gc_sweep_join" );
+        out.mem( "lw", "$v0", 0, "$s0" );
+        out.op( "andi", "$v1", "$v0", MARKED );
+        out.op( "beqz", "$v1", "_gc_sweep_run" );
+        out.label( "_gc_sweep_join" );
+        out.op( "subu", "$v0", "$s0", "$s3" );
+        out.mem( "sw", "$v0", 0, "$s3" );
+        out.comment( "one free block" );
+        out.op( "li", "$v1", 8 );
+        out.op( "bltu", "$v0", "$v1", "_gc_sweep_block" );
+        out.comment( "no room for the link" );
+        out.op( "lw", "$v1", "_free_list" );
+        out.mem( "sw", "$v1", 4, "$s3" );
+        out.op( "sw", "$s3", "_free_list" );
+        out.op( "j", "_gc_sweep_block" );
+        out.label( "_gc_sweep_next" );
+        out.mem( "lw", "$s1", 0, "$s1" );
+        out.op( "j", "_gc_sweep_chunk" );
+        out.blank();
+
+        // Collect again when the heap is twice as large as what is in use
+        out.label( "_gc_sweep_end" );
+        out.op( "sll", "$s5", "$s5", 1 );
+        out.op( "li", "$v0", GC_THRESHOLD );
+        out.op( "bgeu", "$s5", "$v0", "_gc_limit_set" );
+        out.op( "move", "$s5", "$v0" );
+        out.label( "_gc_limit_set" );
+        out.op( "sw", "$s5", "_gc_limit" );
+        for ( int i = 0; i < saved.length; i++ )
+        {
+            out.mem( "lw", saved[i], 4 * i, "$sp" );
+        }
+        out.op( "addiu", "$sp", "$sp", 4 * saved.length );
+        out.op( "jr", "$ra" );
+        out.blank();
+
+        // _gc_root: mark the block the word $a0 points into, if any. $a1 is
+        // a chunk, $a3 its end, $a2 a block
+        out.label( "_gc_root" );
+        out.op( "lw", "$v0", "_heap_low" );
+        out.op( "bltu", "$a0", "$v0", "_gc_root_end" );
+        out.op( "lw", "$v0", "_heap_high" );
+        out.op( "bgeu", "$a0", "$v0", "_gc_root_end" );
+        out.op( "andi", "$v0", "$a0", 3 );
+        out.op( "bnez", "$v0", "_gc_root_end" );
+        out.op( "lw", "$a1", "_chunks" );
+        out.label( "_gc_root_chunk" );
+        out.op( "beqz", "$a1", "_gc_root_end" );
+        out.op( "bltu", "$a0", "$a1", "_gc_root_next" );
+        out.mem( "lw", "$a3", 4, "$a1" );
+        out.op( "bltu", "$a0", "$a3", "_gc_root_found" );
+        out.label( "_gc_root_next" );
+        out.mem( "lw", "$a1", 0, "$a1" );
+        out.op( "j", "_gc_root_chunk" );
+        out.label( "_gc_root_found" );
+        out.op( "addiu", "$a2", "$a1", 8 );
+        out.comment( "first block" );
+        out.label( "_gc_root_block" );
+        out.mem( "lw", "$v0", 0, "$a2" );
+        out.op( "srl", "$v0", "$v0", 2 );
+        out.op( "sll", "$v0", "$v0", 2 );
+        out.op( "addu", "$a2", "$a2", "$v0" );
+        out.op( "bgeu", "$a0", "$a2", "_gc_root_block" );
+        out.op( "subu", "$a2", "$a2", "$v0" );
+        out.comment( "the block $a0 is in" );
+        out.op( "beq", "$a0", "$a2", "_gc_root_end" );
+        out.comment( "its header" );
+        out.op( "addiu", "$a0", "$a2", 4 );
+        out.op( "j", "_gc_mark" );
+        out.label( "_gc_root_end" );
+        out.op( "jr", "$ra" );
+        out.blank();
+
+        // _gc_mark: mark the block $a0 (and the blocks its pointers point
+        // to, depth first). $s2 is the object, $s3 walks its pointer map,
+        // $s4 counts the pointers left
+        out.label( "_gc_mark" );
+        out.mem( "lw", "$v0", -4, "$a0" );
+        out.op( "andi", "$v1", "$v0", MARKED );
+        out.op( "bnez", "$v1", "_gc_mark_end" );
+        out.op( "ori", "$v0", "$v0", MARKED );
+        out.mem( "sw", "$v0", -4, "$a0" );
+        out.op( "andi", "$v1", "$v0", OBJECT );
+        out.op( "beqz", "$v1", "_gc_mark_end" );
+        out.op( "addiu", "$sp", "$sp", -16 );
+        out.mem( "sw", "$ra", 12, "$sp" );
+        out.mem( "sw", "$s2", 8, "$sp" );
+        out.mem( "sw", "$s3", 4, "$sp" );
+        out.mem( "sw", "$s4", 0, "$sp" );
+        out.op( "move", "$s2", "$a0" );
+        out.mem( "lw", "$v0", 0, "$a0" );
+        out.comment( "class tag" );
+        out.op( "sll", "$v0", "$v0", 2 );
+        out.op( "la", "$v1", "_pointer_maps" );
+        out.op( "addu", "$v1", "$v1", "$v0" );
+        out.mem( "lw", "$s3", 0, "$v1" );
+        out.mem( "lw", "$s4", 0, "$s3" );
+        out.label( "_gc_mark_field" );
+        out.op( "beqz", "$s4", "_gc_mark_done" );
+        out.op( "addiu", "$s3", "$s3", 4 );
+        out.op( "addiu", "$s4", "$s4", -1 );
+        out.mem( "lw", "$v0", 0, "$s3" );
+        out.op( "addu", "$v0", "$s2", "$v0" );
+        out.mem( "lw", "$a0", 0, "$v0" );
+        out.op( "beqz", "$a0", "_gc_mark_field" );
+        out.comment( "null" );
+        out.op( "jal", "_gc_mark" );
+        out.op( "j", "_gc_mark_field" );
+        out.label( "_gc_mark_done" );
+        out.mem( "lw", "$ra", 12, "$sp" );
+        out.mem( "lw", "$s2", 8, "$sp" );
+        out.mem( "lw", "$s3", 4, "$sp" );
+        out.mem( "lw", "$s4", 0, "$sp" );
+        out.op( "addiu", "$sp", "$sp", 16 );
+        out.label( "_gc_mark_end" );
+        out.op( "jr", "$ra" );
+        out.blank();
+    }
+}
@@ -0,0 +1,592 @@
+package mips;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Peephole optimizer over an InstructionList.
+//
+// Every rule of the table is tried at every position until none applies.
+// A rule looks at a few instructions from that position on (at most
+// "window" for the rules that scan forward) and rewrites them in place.
+// After a change the sweep backs up by the distance a rule can look ahead,
+// since the change may let a rule apply a little earlier, and goes on from
+// there; a sweep is repeated only if it changed something. The "late"
+// rules only join in once the others are done, since they reorder the
+// instructions the other rules look for.
+//
+//   push-pop    sw R, 0($sp); addiu $sp, $sp, -4; ...; lw X, 4($sp); ...;
+//               addiu $sp, $sp, 4  =>  move X, R; ...
+//               (nothing in between touches $sp or X, or leaves the block)
+//   sp-merge    addiu $sp, $sp, a; addiu $sp, $sp, b  =>  addiu $sp, $sp, a+b
+//   sp-sink     addiu $sp, $sp, a; sw R, k($sp)  =>  sw R, k+a($sp); addiu ...
+//               (moves the adjustment down to the next one, so that the
+//               pushes of a call become one adjustment)
+//   and-imm     li X, imm; and X, X, Y  =>  andi X, Y, imm
+//   move        move A, A  =>  (nothing)
+//               move A, B; move B, A  =>  move A, B
+//   dead-write  li / la / move A, ...; op A, ... (A not read)  =>  op A, ...
+//   jump-chain  a branch to "L: j M" goes to M directly
+//   jump-next   a branch to the label that follows it  =>  (nothing)
+//   dead-code   the instructions between a j / jr and the next label
+public class Peephole
+{
+    public static final int DEFAULT_WINDOW = 8;
+
+    abstract static class Rule
+    {
+        String name;
+        boolean late;
+
+        Rule( String name )
+        {
+            this.name = name;
+        }
+
+        // Rewrite the code at the position of "c". Returns the number of
+        // instructions eliminated, or -1 if the rule does not apply there.
+        abstract int apply( Peephole p, Cursor c );
+    }
+
+    static final Rule[] RULES =
+    {
+        new PushPop(), new SpMerge(), new SpSink(), new AndImmediate(), new Move(), new DeadWrite(),
+        new JumpChain(), new JumpNext(), new DeadCode()
+    };
+
+    ArrayList<Rule> rules;
+    int window;
+    int[] applied;       // indexed like "rules"
+    int[] eliminated;
+    int before;
+    int after;
+    HashMap<String, Instruction> targets;   // label -> first instruction after it
+
+    // All the rules
+    public Peephole()
+    {
+        this( null, DEFAULT_WINDOW );
+    }
+
+    // The rules named in "names" (all of them if null)
+    public Peephole( List<String> names, int window )
+    {
+        this.window = window;
+        rules = new ArrayList<Rule>();
+        for ( Rule r : RULES )
+        {
+            if ( names == null || names.contains( r.name ) )
+            {
+                rules.add( r );
+            }
+        }
+        if ( names != null )
+        {
+            for ( String n : names )
+            {
+                if ( find_rule( n ) == null )
+                {
+                    throw new IllegalArgumentException( "Unknown peephole rule " + n );
+                }
+            }
+        }
+        applied = new int[rules.size()];
+        eliminated = new int[rules.size()];
+    }
+
+    static Rule find_rule( String name )
+    {
+        for ( Rule r : RULES )
+        {
+            if ( r.name.equals( name ) )
+            {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    public void run( InstructionList list )
+    {
+        ArrayList<Instruction> code = list.instructions();
+        before = list.opCount();
+        sweep( code, false );
+        sweep( code, true );
+        after = list.opCount();
+    }
+
+    // Apply the rules until none applies
+    void sweep( ArrayList<Instruction> code, boolean late )
+    {
+        // How far back a change may let a rule apply (push-pop looks the
+        // furthest ahead)
+        int back = 2 * window + 2;
+        boolean changed = true;
+        while ( changed )
+        {
+            changed = false;
+            find_targets( code );
+            Cursor c = new Cursor( code );
+            while ( c.size() > 0 )
+            {
+                boolean applied_here = false;
+                for ( int r = 0; r < rules.size() && c.size() > 0; r++ )
+                {
+                    if ( rules.get( r ).late && !late )
+                    {
+                        continue;
+                    }
+                    int n = rules.get( r ).apply( this, c );
+                    if ( n >= 0 )
+                    {
+                        applied[r]++;
+                        eliminated[r] += n;
+                        applied_here = true;
+                    }
+                }
+                if ( applied_here )
+                {
+                    changed = true;
+                    c.back( back );
+                }
+                else
+                {
+                    c.advance();
+                }
+            }
+            code.clear();
+            code.addAll( c.done );
+        }
+    }
+
+    // The code being rewritten, split at the current position: "done" holds
+    // the instructions before it and "todo" the ones from it on, last one
+    // first, so that the rules change the code at the position without
+    // moving the rest of it
+    static class Cursor
+    {
+        ArrayList<Instruction> done;
+        ArrayList<Instruction> todo;
+
+        Cursor( ArrayList<Instruction> code )
+        {
+            done = new ArrayList<Instruction>( code.size() );
+            todo = new ArrayList<Instruction>( code.size() );
+            for ( int i = code.size() - 1; i >= 0; i-- )
+            {
+                todo.add( code.get( i ) );
+            }
+        }
+
+        // The number of instructions from the position on
+        int size() { return todo.size(); }
+
+        // The k-th instruction from the position (null past the end)
+        Instruction get( int k )
+        {
+            int j = todo.size() - 1 - k;
+            return ( j >= 0 ) ? todo.get( j ) : null;
+        }
+
+        void set( int k, Instruction i )
+        {
+            todo.set( todo.size() - 1 - k, i );
+        }
+
+        void remove( int k )
+        {
+            todo.remove( todo.size() - 1 - k );
+        }
+
+        void add( int k, Instruction i )
+        {
+            todo.add( todo.size() - k, i );
+        }
+
+        void advance()
+        {
+            done.add( todo.remove( todo.size() - 1 ) );
+        }
+
+        // Move the position n instructions back
+        void back( int n )
+        {
+            for ( ; n > 0 && !done.isEmpty(); n-- )
+            {
+                todo.add( done.remove( done.size() - 1 ) );
+            }
+        }
+    }
+
+    // The first instruction after each label. The rules only remove a jump
+    // that goes to the label right after it, so a target found here stays
+    // right for the whole sweep (the next sweep sees what the rules
+    // removed or added after a label).
+    void find_targets( ArrayList<Instruction> code )
+    {
+        targets = new HashMap<String, Instruction>();
+        ArrayList<String> pending = new ArrayList<String>();
+        for ( Instruction i : code )
+        {
+            if ( i.isLabel() )
+            {
+                pending.add( i.op );
+            }
+            else if ( i.isOp() )
+            {
+                for ( String l : pending )
+                {
+                    targets.put( l, i );
+                }
+                pending.clear();
+            }
+        }
+    }
+
+    public void report( PrintStream s )
+    {
+        s.println( "peephole: " + before + " -> " + after + " instructions" );
+        for ( int r = 0; r < rules.size(); r++ )
+        {
+            s.println( String.format( "  %-11s %6d applied %6d eliminated",
+                                      rules.get( r ).name, applied[r], eliminated[r] ) );
+        }
+    }
+
+    // The first instruction after label "l" (null if unknown)
+    Instruction target( String l )
+    {
+        return targets.get( l );
+    }
+
+    static boolean is_sp_adjust( Instruction i )
+    {
+        return ( i.is( "addiu" ) || i.is( "addi" ) )
+               && i.arg( 0 ).equals( "$sp" ) && i.arg( 1 ).equals( "$sp" ) && imm( i.arg( 2 ) ) != null;
+    }
+
+    static boolean is_sp_adjust( Instruction i, int n )
+    {
+        return is_sp_adjust( i ) && imm( i.arg( 2 ) ) == n;
+    }
+
+    static Integer imm( String s )
+    {
+        try
+        {
+            return Integer.decode( s );
+        }
+        catch ( NumberFormatException e )
+        {
+            return null;
+        }
+    }
+
+    static class PushPop extends Rule
+    {
+        PushPop() { super( "push-pop" ); }
+
+        int apply( Peephole p, Cursor c )
+        {
+            Instruction push = c.get( 0 );
+            if ( !push.is( "sw" ) || !push.arg( 1 ).equals( "0($sp)" ) || push.arg( 0 ).equals( "$sp" )
+                 || c.get( 1 ) == null || !is_sp_adjust( c.get( 1 ), -4 ) )
+            {
+                return -1;
+            }
+
+            // Up to the load of the pushed value
+            int j = 2;
+            int limit = Math.min( c.size(), 2 + p.window );
+            while ( j < limit && !( c.get( j ).is( "lw" ) && c.get( j ).arg( 1 ).equals( "4($sp)" ) ) )
+            {
+                if ( c.get( j ).isBarrier() || c.get( j ).mentions( "$sp" ) )
+                {
+                    return -1;
+                }
+                j++;
+            }
+            if ( j == limit )
+            {
+                return -1;
+            }
+            String x = c.get( j ).arg( 0 );
+            if ( x.equals( "$sp" ) )
+            {
+                return -1;
+            }
+            for ( int m = 2; m < j; m++ )
+            {
+                if ( c.get( m ).mentions( x ) )
+                {
+                    return -1;
+                }
+            }
+
+            // Up to the pop
+            int k = j + 1;
+            limit = Math.min( c.size(), j + 1 + p.window );
+            while ( k < limit && !is_sp_adjust( c.get( k ), 4 ) )
+            {
+                if ( c.get( k ).isBarrier() || c.get( k ).mentions( "$sp" ) )
+                {
+                    return -1;
+                }
+                k++;
+            }
+            if ( k == limit )
+            {
+                return -1;
+            }
+
+            String r = push.arg( 0 );
+            c.remove( k );
+            c.remove( j );
+            c.remove( 1 );
+            c.remove( 0 );
+            if ( x.equals( r ) )
+            {
+                return 4;
+            }
+            c.add( 0, new Instruction( "move", x, r ) );
+            return 3;
+        }
+    }
+
+    static class SpMerge extends Rule
+    {
+        SpMerge() { super( "sp-merge" ); }
+
+        int apply( Peephole p, Cursor c )
+        {
+            Instruction a = c.get( 0 );
+            if ( !is_sp_adjust( a ) )
+            {
+                return -1;
+            }
+            if ( imm( a.arg( 2 ) ) == 0 )
+            {
+                c.remove( 0 );
+                return 1;
+            }
+            Instruction b = c.get( 1 );
+            if ( b == null || !is_sp_adjust( b ) )
+            {
+                return -1;
+            }
+            int n = imm( a.arg( 2 ) ) + imm( b.arg( 2 ) );
+            if ( n < -32768 || n > 32767 )
+            {
+                return -1;
+            }
+            c.remove( 1 );
+            if ( n == 0 )
+            {
+                c.remove( 0 );
+                return 2;
+            }
+            c.set( 0, new Instruction( "addiu", "$sp", "$sp", Integer.toString( n ) ) );
+            return 1;
+        }
+    }
+
+    static class SpSink extends Rule
+    {
+        static final Pattern SP_OFFSET = Pattern.compile( "(-?[0-9]+)\\(\\$sp\\)" );
+
+        SpSink()
+        {
+            super( "sp-sink" );
+            late = true;
+        }
+
+        int apply( Peephole p, Cursor c )
+        {
+            Instruction a = c.get( 0 );
+            Instruction b = c.get( 1 );
+            if ( !is_sp_adjust( a ) || b == null || b.isBarrier() || is_sp_adjust( b ) )
+            {
+                return -1;
+            }
+            if ( b.mentions( "$sp" ) )
+            {
+                Matcher m = SP_OFFSET.matcher( b.argCount() == 2 ? b.arg( 1 ) : "" );
+                if ( !( b.is( "lw" ) || b.is( "sw" ) ) || b.arg( 0 ).equals( "$sp" ) || !m.matches() )
+                {
+                    return -1;
+                }
+                b.setArg( 1, ( Integer.parseInt( m.group( 1 ) ) + imm( a.arg( 2 ) ) ) + "($sp)" );
+            }
+            c.set( 0, b );
+            c.set( 1, a );
+            return 0;
+        }
+    }
+
+    static class AndImmediate extends Rule
+    {
+        AndImmediate() { super( "and-imm" ); }
+
+        int apply( Peephole p, Cursor c )
+        {
+            Instruction a = c.get( 0 );
+            Instruction b = c.get( 1 );
+            if ( !a.is( "li" ) || b == null || !b.is( "and" ) || b.argCount() != 3 )
+            {
+                return -1;
+            }
+            String x = a.arg( 0 );
+            Integer v = imm( a.arg( 1 ) );
+            if ( v == null || v < 0 || v > 65535 || !b.arg( 0 ).equals( x ) )
+            {
+                return -1;
+            }
+            String y;
+            if ( b.arg( 1 ).equals( x ) && !b.arg( 2 ).equals( x ) )
+            {
+                y = b.arg( 2 );
+            }
+            else if ( b.arg( 2 ).equals( x ) && !b.arg( 1 ).equals( x ) )
+            {
+                y = b.arg( 1 );
+            }
+            else
+            {
+                return -1;
+            }
+            c.remove( 1 );
+            c.set( 0, new Instruction( "andi", x, y, Integer.toString( v ) ) );
+            return 1;
+        }
+    }
+
+    static class Move extends Rule
+    {
+        Move() { super( "move" ); }
+
+        int apply( Peephole p, Cursor c )
+        {
+            Instruction a = c.get( 0 );
+            if ( !a.is( "move" ) )
+            {
+                return -1;
+            }
+            if ( a.arg( 0 ).equals( a.arg( 1 ) ) )
+            {
+                c.remove( 0 );
+                return 1;
+            }
+            Instruction b = c.get( 1 );
+            if ( b != null && b.is( "move" ) && b.arg( 0 ).equals( a.arg( 1 ) ) && b.arg( 1 ).equals( a.arg( 0 ) ) )
+            {
+                c.remove( 1 );
+                return 1;
+            }
+            return -1;
+        }
+    }
+
+    static class DeadWrite extends Rule
+    {
+        DeadWrite() { super( "dead-write" ); }
+
+        int apply( Peephole p, Cursor c )
+        {
+            Instruction a = c.get( 0 );
+            Instruction b = c.get( 1 );
+            if ( !( a.is( "li" ) || a.is( "la" ) || a.is( "move" ) ) || b == null || b.isBarrier() )
+            {
+                return -1;
+            }
+            String x = a.writes();
+            if ( x.equals( "$sp" ) || !x.equals( b.writes() ) || b.reads().contains( x ) )
+            {
+                return -1;
+            }
+            c.remove( 0 );
+            return 1;
+        }
+    }
+
+    static class JumpChain extends Rule
+    {
+        JumpChain() { super( "jump-chain" ); }
+
+        int apply( Peephole p, Cursor c )
+        {
+            Instruction a = c.get( 0 );
+            if ( !a.isBranch() )
+            {
+                return -1;
+            }
+            String l = a.arg( a.argCount() - 1 );
+            HashSet<String> seen = new HashSet<String>();
+            seen.add( l );
+            Instruction t = p.target( l );
+            while ( t != null && t.is( "j" ) )
+            {
+                l = t.arg( 0 );
+                if ( !seen.add( l ) )
+                {
+                    return -1;  // a loop of jumps
+                }
+                t = p.target( l );
+            }
+            if ( l.equals( a.arg( a.argCount() - 1 ) ) )
+            {
+                return -1;
+            }
+            a.setArg( a.argCount() - 1, l );
+            return 0;
+        }
+    }
+
+    static class JumpNext extends Rule
+    {
+        JumpNext() { super( "jump-next" ); }
+
+        int apply( Peephole p, Cursor c )
+        {
+            Instruction a = c.get( 0 );
+            if ( !a.isBranch() )
+            {
+                return -1;
+            }
+            String l = a.arg( a.argCount() - 1 );
+            for ( int j = 1; j < c.size() && !c.get( j ).isOp(); j++ )
+            {
+                if ( c.get( j ).isLabel() && c.get( j ).op.equals( l ) )
+                {
+                    c.remove( 0 );
+                    return 1;
+                }
+            }
+            return -1;
+        }
+    }
+
+    static class DeadCode extends Rule
+    {
+        DeadCode() { super( "dead-code" ); }
+
+        int apply( Peephole p, Cursor c )
+        {
+            Instruction a = c.get( 0 );
+            if ( !( a.is( "j" ) || a.is( "b" ) || a.is( "jr" ) ) )
+            {
+                return -1;
+            }
+            int n = 0;
+            while ( c.size() > 1 && c.get( 1 ).isOp() )
+            {
+                c.remove( 1 );
+                n++;
+            }
+            return ( n > 0 ) ? n : -1;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package mips;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+
+// Dynamic instruction counts of a Simulator run, by category and by
+// function, and an estimate of the cycles they take.
+//
+// Instructions are attributed to the function that executes them: the
+// target of the last jal / jalr not yet returned from (jr $ra), or "main"
+// before the first call. A function is named after its entry label, so
+// method "m" of class "C" is "C_m_f_entry" (see CodeGenVisitor).
+//
+// The cycles are those of a simple in-order pipeline: one per basic
+// instruction (the pseudo instructions count as what MARS expands them
+// to), one more for every taken branch or jump, and the latency of mult
+// and div.
+public class Profile
+{
+    public enum Category
+    {
+        LOAD( "loads" ), STORE( "stores" ), STACK( "stack" ), BRANCH( "branches" ),
+        JUMP( "jumps" ), SYSCALL( "syscalls" ), ALU( "alu" );
+
+        String title;
+
+        Category( String title )
+        {
+            this.title = title;
+        }
+    }
+
+    static final int MULT_CYCLES = 12;
+    static final int DIV_CYCLES = 35;
+
+    // The counts of one function
+    public static class Function
+    {
+        String name;
+        long instructions;
+        long cycles;
+        long[] counts = new long[Category.values().length];
+
+        Function( String name )
+        {
+            this.name = name;
+        }
+
+        public String name() { return name; }
+
+        public long instructions() { return instructions; }
+
+        public long cycles() { return cycles; }
+
+        public long count( Category c ) { return counts[c.ordinal()]; }
+    }
+
+    Simulator sim;
+    Category[] category;    // of each instruction
+    int[] cost;             // basic instructions (and latency) of each one
+    HashMap<Integer, Function> functions = new HashMap<Integer, Function>();    // by entry
+    ArrayList<Function> calls = new ArrayList<Function>();    // the call stack
+    Function current;
+    Function total = new Function( "total" );
+    long taken;             // taken branches and jumps
+
+    Profile( Simulator sim )
+    {
+        this.sim = sim;
+        category = new Category[sim.size];
+        cost = new int[sim.size];
+        for ( int pc = 0; pc < sim.size; pc++ )
+        {
+            category[pc] = category( pc );
+            cost[pc] = cost( pc );
+        }
+        current = function( 0 );
+    }
+
+    Category category( int pc )
+    {
+        switch ( sim.ops[pc] )
+        {
+            case LW:
+                return Category.LOAD;
+            case SW:
+                return Category.STORE;
+            case BEQ: case BNE: case BLT: case BLE: case BGT: case BGE:
+            case BLTU: case BLEU: case BGTU: case BGEU: case BEQZ: case BNEZ:
+                return Category.BRANCH;
+            case J:
+            case JAL:
+            case JR:
+            case JALR:
+                return Category.JUMP;
+            case SYSCALL:
+                return Category.SYSCALL;
+            case ADD:
+            case ADDU:
+            case SUB:
+            case SUBU:
+            case MOVE:
+                if ( sim.rd[pc] == Simulator.SP )
+                {
+                    return Category.STACK;
+                }
+                return Category.ALU;
+            default:
+                return Category.ALU;
+        }
+    }
+
+    static boolean fits_signed( int v )
+    {
+        return v >= -32768 && v <= 32767;
+    }
+
+    static boolean fits_unsigned( int v )
+    {
+        return v >= 0 && v <= 65535;
+    }
+
+    // Cycles of instruction "pc", not counting the taken branch penalty
+    int cost( int pc )
+    {
+        boolean immediate = sim.rt[pc] < 0;
+        int v = sim.imm[pc];
+        switch ( sim.ops[pc] )
+        {
+            case LI:
+                return ( fits_signed( v ) || fits_unsigned( v ) ) ? 1 : 2;
+            case LA:
+                return 2;
+            case LW:
+            case SW:
+                return fits_signed( v ) ? 1 : 3;
+            case AND:
+            case OR:
+            case XOR:
+                return ( !immediate || fits_unsigned( v ) ) ? 1 : 3;
+            case ADD:
+            case ADDU:
+            case SUB:
+            case SUBU:
+            case SLT:
+            case SLTU:
+                return ( !immediate || fits_signed( v ) ) ? 1 : 3;
+            case BEQ:
+            case BNE:
+                return immediate ? 2 : 1;
+            case BLT: case BLE: case BGT: case BGE:
+            case BLTU: case BLEU: case BGTU: case BGEU:
+                return immediate ? 3 : 2;
+            case MULT:
+            case MULTU:
+                return MULT_CYCLES;
+            case DIV:
+            case DIVU:
+                return DIV_CYCLES;
+            case MUL:
+                return MULT_CYCLES;
+            default:
+                return 1;
+        }
+    }
+
+    Function function( int entry )
+    {
+        Function f = functions.get( entry );
+        if ( f == null )
+        {
+            f = new Function( name( entry ) );
+            functions.put( entry, f );
+        }
+        return f;
+    }
+
+    // The label of text address "pc" ("main" for the first instruction)
+    String name( int pc )
+    {
+        int address = Simulator.TEXT_BASE + 4 * pc;
+        String name = null;
+        for ( String l : sim.labels.keySet() )
+        {
+            if ( sim.labels.get( l ) == address && ( name == null || l.compareTo( name ) < 0 ) )
+            {
+                name = l;
+            }
+        }
+        if ( name == null )
+        {
+            name = ( pc == 0 ) ? "main" : String.format( "0x%08x", address );
+        }
+        return name;
+    }
+
+    // Instruction "pc" was executed, and "next" comes after it
+    void count( int pc, int next )
+    {
+        int c = category[pc].ordinal();
+        long cycles = cost[pc];
+        if ( next != pc + 1 && ( category[pc] == Category.BRANCH || category[pc] == Category.JUMP ) )
+        {
+            cycles++;
+            taken++;
+        }
+        current.instructions++;
+        current.cycles += cycles;
+        current.counts[c]++;
+        total.instructions++;
+        total.cycles += cycles;
+        total.counts[c]++;
+
+        switch ( sim.ops[pc] )
+        {
+            case JAL:
+            case JALR:
+                calls.add( current );
+                current = function( next );
+                break;
+            case JR:
+                if ( sim.rd[pc] == Simulator.RA && !calls.isEmpty() )
+                {
+                    current = calls.remove( calls.size() - 1 );
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    public Function total() { return total; }
+
+    public long taken() { return taken; }
+
+    // The functions, the most executed instructions first
+    public ArrayList<Function> functions()
+    {
+        ArrayList<Function> l = new ArrayList<Function>( functions.values() );
+        Collections.sort( l, ( a, b ) -> a.instructions != b.instructions
+                          ? Long.compare( b.instructions, a.instructions )
+                          : a.name.compareTo( b.name ) );
+        return l;
+    }
+
+    public void report( PrintStream out )
+    {
+        out.println( String.format( "%d instructions, %d cycles, %d taken branches and jumps",
+                                    total.instructions, total.cycles, taken ) );
+        StringBuilder s = new StringBuilder();
+        for ( Category c : Category.values() )
+        {
+            s.append( String.format( "  %s %d (%.1f%%)", c.title, total.count( c ),
+                                     100.0 * total.count( c ) / Math.max( 1, total.instructions ) ) );
+        }
+        out.println( s.toString().substring( 2 ) );
+
+        StringBuilder h = new StringBuilder( String.format( "%-32s %12s %12s", "function", "instructions", "cycles" ) );
+        for ( Category c : Category.values() )
+        {
+            h.append( String.format( " %9s", c.title ) );
+        }
+        out.println( h );
+        for ( Function f : functions() )
+        {
+            StringBuilder l = new StringBuilder( String.format( "%-32s %12d %12d", f.name, f.instructions, f.cycles ) );
+            for ( Category c : Category.values() )
+            {
+                l.append( String.format( " %9d", f.count( c ) ) );
+            }
+            out.println( l );
+        }
+    }
+}
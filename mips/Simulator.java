@@ -0,0 +1,713 @@
+package mips;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// An interpreter for the MIPS code of an InstructionList, so that programs
+// can be run without leaving the JVM (and without MARS).
+//
+// It covers the instructions the code generators emit (and their obvious
+// relatives), the .asciiz / .word / .space directives, and the syscalls
+// print_int (1), print_string (4), sbrk (9) and exit (10). Pseudo
+// instructions such as li, la or bge are executed as one instruction, so
+// the instruction count is that of the assembly source, and addresses in
+// error messages differ from those of MARS. The memory layout is that of
+// MARS: the text at 0x00400000, the data at 0x10010000, the heap at
+// 0x10040000 up to 0x10400000 (sbrk fails past it, as in MARS) and the
+// stack below 0x7fffeffc.
+//
+// output() is the text that "java -jar Mars4_5.jar nc" prints for the
+// program, so it can be compared with the golden files.
+public class Simulator
+{
+    static final int TEXT_BASE = 0x00400000;
+    static final int DATA_LOW = 0x10000000;     // lowest address of the data
+    static final int DATA_BASE = 0x10010000;
+    static final int HEAP_BASE = 0x10040000;
+    static final int DATA_LIMIT = DATA_LOW + 0x400000;  // end of the heap (4 MB of data segment)
+    static final int STACK_TOP = 0x7fffeffc;
+    static final int GLOBAL_POINTER = 0x10008000;
+
+    static final int ZERO = 0, V0 = 2, A0 = 4, GP = 28, SP = 29, RA = 31;
+
+    enum Op
+    {
+        ADD, ADDU, SUB, SUBU, AND, OR, XOR, NOR, SLT, SLTU, SLLV, SRLV, SRAV, MUL,
+        SLL, SRL, SRA, MULT, MULTU, DIV, DIVU, MFLO, MFHI, LI, LUI, LA, MOVE,
+        LW, SW, BEQ, BNE, BLT, BLE, BGT, BGE, BLTU, BLEU, BGTU, BGEU, BEQZ, BNEZ,
+        J, JAL, JR, JALR, SYSCALL, NOP
+    }
+
+    static final HashMap<String, Op> OPS = new HashMap<String, Op>();
+    static final HashMap<String, Integer> REGISTERS = new HashMap<String, Integer>();
+
+    static
+    {
+        for ( Op op : Op.values() )
+        {
+            OPS.put( op.name().toLowerCase(), op );
+        }
+        // The immediate forms execute like the register forms
+        OPS.put( "addi", Op.ADD );
+        OPS.put( "addiu", Op.ADDU );
+        OPS.put( "andi", Op.AND );
+        OPS.put( "ori", Op.OR );
+        OPS.put( "xori", Op.XOR );
+        OPS.put( "slti", Op.SLT );
+        OPS.put( "sltiu", Op.SLTU );
+        OPS.put( "b", Op.J );
+
+        String[] names =
+        {
+            "zero", "at", "v0", "v1", "a0", "a1", "a2", "a3",
+            "t0", "t1", "t2", "t3", "t4", "t5", "t6", "t7",
+            "s0", "s1", "s2", "s3", "s4", "s5", "s6", "s7",
+            "t8", "t9", "k0", "k1", "gp", "sp", "fp", "ra"
+        };
+        for ( int i = 0; i < names.length; i++ )
+        {
+            REGISTERS.put( "$" + names[i], i );
+            REGISTERS.put( "$" + i, i );
+        }
+        REGISTERS.put( "$s8", 30 );
+    }
+
+    // A run time error of the simulated program (MARS stops with
+    // "Runtime exception")
+    static class Trap extends RuntimeException
+    {
+        Trap( String message )
+        {
+            super( message );
+        }
+    }
+
+    // The decoded text segment: instruction "pc" is ops[pc] rd, rs, rt/imm
+    // (rt < 0 if the last source operand is the immediate imm; branch
+    // targets are instruction indices in imm)
+    Op[] ops;
+    int[] rd;
+    int[] rs;
+    int[] rt;
+    int[] imm;
+    int[] lines;            // line of each instruction in the assembly file
+    int size;
+
+    HashMap<String, Integer> labels;    // label => address
+    Memory memory;
+    int[] reg;
+    int hi;
+    int lo;
+    int heap;
+
+    String name = "program.asm";        // for error messages
+    long limit = Long.MAX_VALUE;        // stop after this many instructions
+    long executed;
+    StringBuilder output;
+    Profile profile;                    // null if not profiling
+
+    public Simulator( InstructionList list )
+    {
+        load( list.instructions() );
+    }
+
+    // The file name used in error messages
+    public void setName( String name ) { this.name = name; }
+
+    // Stop with an error after executing "limit" instructions
+    public void setLimit( long limit ) { this.limit = limit; }
+
+    // Number of instructions executed by run()
+    public long executed() { return executed; }
+
+    // Count the instructions executed by category and by function in the
+    // next run()
+    public void setProfiling( boolean on )
+    {
+        profile = on ? new Profile( this ) : null;
+    }
+
+    // The profile of the last run() (null if not profiling)
+    public Profile profile() { return profile; }
+
+    // What the program printed, as MARS prints it
+    public String output() { return output.toString(); }
+
+    // Place the data and the labels in memory, and decode the text
+    void load( ArrayList<Instruction> code )
+    {
+        labels = new HashMap<String, Integer>();
+        memory = new Memory();
+        ArrayList<Instruction> text = new ArrayList<Instruction>();
+        ArrayList<Integer> text_lines = new ArrayList<Integer>();
+        ArrayList<String> words = new ArrayList<String>();     // .word operands
+        ArrayList<Integer> word_addresses = new ArrayList<Integer>();
+
+        boolean in_text = true;
+        int data = DATA_BASE;
+        int line = 1;
+        for ( Instruction i : code )
+        {
+            switch ( i.kind() )
+            {
+                case LABEL:
+                    labels.put( i.op(), in_text ? TEXT_BASE + 4 * text.size() : data );
+                    break;
+                case OP:
+                    text.add( i );
+                    text_lines.add( line );
+                    break;
+                case DIRECTIVE:
+                    String d = i.op();
+                    int colon = d.indexOf( ':' );
+                    String label = null;
+                    if ( colon >= 0 && !d.startsWith( "." ) )
+                    {
+                        label = d.substring( 0, colon ).trim();
+                        d = d.substring( colon + 1 ).trim();
+                    }
+                    if ( d.startsWith( ".word" ) )
+                    {
+                        data = ( data + 3 ) & ~3;
+                    }
+                    if ( label != null )
+                    {
+                        labels.put( label, in_text ? TEXT_BASE + 4 * text.size() : data );
+                    }
+                    if ( d.equals( ".text" ) )
+                    {
+                        in_text = true;
+                    }
+                    else if ( d.equals( ".data" ) )
+                    {
+                        in_text = false;
+                    }
+                    else if ( d.startsWith( ".asciiz" ) )
+                    {
+                        for ( byte b : string_literal( d.substring( 7 ).trim() ) )
+                        {
+                            memory.storeByte( data++, b );
+                        }
+                        memory.storeByte( data++, ( byte ) 0 );
+                    }
+                    else if ( d.startsWith( ".word" ) )
+                    {
+                        for ( String w : d.substring( 5 ).split( "," ) )
+                        {
+                            words.add( w.trim() );
+                            word_addresses.add( data );
+                            data += 4;
+                        }
+                    }
+                    else if ( d.startsWith( ".space" ) )
+                    {
+                        data += Integer.decode( d.substring( 6 ).trim() );
+                    }
+                    else if ( d.startsWith( ".align" ) )
+                    {
+                        int a = 1 << Integer.decode( d.substring( 6 ).trim() );
+                        data = ( data + a - 1 ) & -a;
+                    }
+                    else if ( !d.startsWith( ".globl" ) )
+                    {
+                        throw new IllegalArgumentException( "Unsupported directive " + d );
+                    }
+                    break;
+                case COMMENT:
+                    break;
+            }
+            line += i.blank ? 2 : 1;
+        }
+        heap = HEAP_BASE;
+
+        for ( int k = 0; k < words.size(); k++ )
+        {
+            memory.store( word_addresses.get( k ), value( words.get( k ) ) );
+        }
+
+        size = text.size();
+        ops = new Op[size];
+        rd = new int[size];
+        rs = new int[size];
+        rt = new int[size];
+        imm = new int[size];
+        lines = new int[size];
+        for ( int pc = 0; pc < size; pc++ )
+        {
+            lines[pc] = text_lines.get( pc );
+            decode( pc, text.get( pc ) );
+        }
+    }
+
+    void decode( int pc, Instruction i )
+    {
+        Op op = OPS.get( i.op() );
+        if ( op == null )
+        {
+            throw new IllegalArgumentException( "Unsupported instruction " + i );
+        }
+        ops[pc] = op;
+        rt[pc] = -1;
+        int n = i.argCount();
+        switch ( op )
+        {
+            case J:
+            case JAL:
+                imm[pc] = target( i.arg( 0 ) );
+                break;
+            case JR:
+            case JALR:
+            case MFLO:
+            case MFHI:
+                rd[pc] = register( i.arg( 0 ) );
+                break;
+            case BEQZ:
+            case BNEZ:
+                rs[pc] = register( i.arg( 0 ) );
+                imm[pc] = target( i.arg( 1 ) );
+                break;
+            case BEQ: case BNE: case BLT: case BLE: case BGT: case BGE:
+            case BLTU: case BLEU: case BGTU: case BGEU:
+                // the second operand may be an immediate (rt < 0), and then
+                // it is kept in rd since imm holds the target
+                rs[pc] = register( i.arg( 0 ) );
+                if ( is_register( i.arg( 1 ) ) )
+                {
+                    rt[pc] = register( i.arg( 1 ) );
+                }
+                else
+                {
+                    rd[pc] = value( i.arg( 1 ) );
+                }
+                imm[pc] = target( i.arg( 2 ) );
+                break;
+            case MULT:
+            case MULTU:
+            case DIV:
+            case DIVU:
+                rs[pc] = register( i.arg( 0 ) );
+                rt[pc] = register( i.arg( 1 ) );
+                break;
+            case LI:
+            case LUI:
+                rd[pc] = register( i.arg( 0 ) );
+                imm[pc] = value( i.arg( 1 ) );
+                break;
+            case MOVE:
+                rd[pc] = register( i.arg( 0 ) );
+                rs[pc] = register( i.arg( 1 ) );
+                break;
+            case LA:
+            case LW:
+            case SW:
+                rd[pc] = register( i.arg( 0 ) );
+                address( pc, i.arg( 1 ) );
+                break;
+            case SYSCALL:
+            case NOP:
+                break;
+            default:
+                // rd, rs, rt or rd, rs, imm (rd, rt, shamt for the shifts)
+                if ( n != 3 )
+                {
+                    throw new IllegalArgumentException( "Unsupported instruction " + i );
+                }
+                rd[pc] = register( i.arg( 0 ) );
+                rs[pc] = register( i.arg( 1 ) );
+                if ( is_register( i.arg( 2 ) ) )
+                {
+                    rt[pc] = register( i.arg( 2 ) );
+                }
+                else
+                {
+                    imm[pc] = value( i.arg( 2 ) );
+                }
+                break;
+        }
+    }
+
+    // A memory operand: "offset(register)", "(register)" or "label"
+    void address( int pc, String a )
+    {
+        int paren = a.indexOf( '(' );
+        if ( paren < 0 )
+        {
+            rs[pc] = ZERO;
+            imm[pc] = value( a );
+            return;
+        }
+        rs[pc] = register( a.substring( paren + 1, a.indexOf( ')' ) ).trim() );
+        imm[pc] = ( paren == 0 ) ? 0 : value( a.substring( 0, paren ).trim() );
+    }
+
+    static boolean is_register( String a )
+    {
+        return a.startsWith( "$" );
+    }
+
+    static int register( String a )
+    {
+        Integer r = REGISTERS.get( a );
+        if ( r == null )
+        {
+            throw new IllegalArgumentException( "Unknown register " + a );
+        }
+        return r;
+    }
+
+    // An integer (decimal or hexadecimal) or the address of a label
+    int value( String a )
+    {
+        Integer l = labels.get( a );
+        if ( l != null )
+        {
+            return l;
+        }
+        try
+        {
+            return ( int ) ( long ) Long.decode( a );
+        }
+        catch ( NumberFormatException e )
+        {
+            throw new IllegalArgumentException( "Unknown label or bad number " + a );
+        }
+    }
+
+    // The instruction index of a text label
+    int target( String a )
+    {
+        Integer l = labels.get( a );
+        if ( l == null )
+        {
+            throw new IllegalArgumentException( "Unknown label " + a );
+        }
+        return ( l - TEXT_BASE ) >> 2;
+    }
+
+    static byte[] string_literal( String s )
+    {
+        StringBuilder b = new StringBuilder();
+        for ( int k = 1; k < s.length() - 1; k++ )
+        {
+            char c = s.charAt( k );
+            if ( c == '\\' && k + 1 < s.length() - 1 )
+            {
+                c = s.charAt( ++k );
+                switch ( c )
+                {
+                    case 'n': c = '\n'; break;
+                    case 't': c = '\t'; break;
+                    case '0': c = '\0'; break;
+                }
+            }
+            b.append( c );
+        }
+        return b.toString().getBytes();
+    }
+
+    // Run the program from its first instruction until it exits (or
+    // falls off the end of the text)
+    public void run()
+    {
+        reg = new int[32];
+        reg[SP] = STACK_TOP;
+        reg[GP] = GLOBAL_POINTER;
+        output = new StringBuilder();
+        executed = 0;
+        if ( profile != null )
+        {
+            profile = new Profile( this );
+        }
+        int pc = 0;
+        try
+        {
+            while ( pc >= 0 && pc < size )
+            {
+                if ( executed++ == limit )
+                {
+                    throw new Trap( "instruction limit of " + limit + " exceeded" );
+                }
+                if ( profile == null )
+                {
+                    pc = step( pc );
+                }
+                else
+                {
+                    int next = step( pc );
+                    profile.count( pc, next );
+                    pc = next;
+                }
+            }
+            output.append( '\n' );
+        }
+        catch ( Trap e )
+        {
+            int at = Math.min( Math.max( pc, 0 ), size - 1 );
+            output.append( "Error in " + name + " line " + lines[at] + ": Runtime exception at 0x"
+                           + String.format( "%08x", TEXT_BASE + 4 * pc ) + ": " + e.getMessage() + "\n" );
+            output.append( "\nProcessing terminated due to errors.\n\n" );
+        }
+    }
+
+    // Execute instruction "pc"; returns the next one (-1 to stop)
+    int step( int pc )
+    {
+        int b = ( rt[pc] >= 0 ) ? reg[rt[pc]] : imm[pc];
+        int a = reg[rs[pc]];
+        int next = pc + 1;
+        switch ( ops[pc] )
+        {
+            case ADD:
+                if ( ( ( a ^ ( a + b ) ) & ( b ^ ( a + b ) ) ) < 0 )
+                {
+                    throw new Trap( "arithmetic overflow" );
+                }
+                set( rd[pc], a + b );
+                break;
+            case ADDU: set( rd[pc], a + b ); break;
+            case SUB:
+                if ( ( ( a ^ b ) & ( a ^ ( a - b ) ) ) < 0 )
+                {
+                    throw new Trap( "arithmetic overflow" );
+                }
+                set( rd[pc], a - b );
+                break;
+            case SUBU: set( rd[pc], a - b ); break;
+            case AND: set( rd[pc], a & b ); break;
+            case OR: set( rd[pc], a | b ); break;
+            case XOR: set( rd[pc], a ^ b ); break;
+            case NOR: set( rd[pc], ~( a | b ) ); break;
+            case SLT: set( rd[pc], a < b ? 1 : 0 ); break;
+            case SLTU: set( rd[pc], Integer.compareUnsigned( a, b ) < 0 ? 1 : 0 ); break;
+            case MUL: set( rd[pc], a * b ); break;
+            case SLL: set( rd[pc], a << b ); break;
+            case SRL: set( rd[pc], a >>> b ); break;
+            case SRA: set( rd[pc], a >> b ); break;
+            case SLLV: set( rd[pc], a << b ); break;
+            case SRLV: set( rd[pc], a >>> b ); break;
+            case SRAV: set( rd[pc], a >> b ); break;
+            case MULT:
+            {
+                long p = ( long ) a * b;
+                lo = ( int ) p;
+                hi = ( int ) ( p >> 32 );
+                break;
+            }
+            case MULTU:
+            {
+                long p = ( a & 0xffffffffL ) * ( b & 0xffffffffL );
+                lo = ( int ) p;
+                hi = ( int ) ( p >> 32 );
+                break;
+            }
+            case DIV:
+                if ( b != 0 )
+                {
+                    lo = a / b;
+                    hi = a % b;
+                }
+                break;
+            case DIVU:
+                if ( b != 0 )
+                {
+                    lo = Integer.divideUnsigned( a, b );
+                    hi = Integer.remainderUnsigned( a, b );
+                }
+                break;
+            case MFLO: set( rd[pc], lo ); break;
+            case MFHI: set( rd[pc], hi ); break;
+            case LI: set( rd[pc], imm[pc] ); break;
+            case LUI: set( rd[pc], imm[pc] << 16 ); break;
+            case LA: set( rd[pc], a + imm[pc] ); break;
+            case MOVE: set( rd[pc], a ); break;
+            case LW: set( rd[pc], memory.load( a + imm[pc] ) ); break;
+            case SW: memory.store( a + imm[pc], reg[rd[pc]] ); break;
+            case BEQ:
+            case BNE:
+            case BLT:
+            case BLE:
+            case BGT:
+            case BGE:
+            case BLTU:
+            case BLEU:
+            case BGTU:
+            case BGEU:
+                if ( branch( ops[pc], a, ( rt[pc] >= 0 ) ? reg[rt[pc]] : rd[pc] ) )
+                {
+                    next = imm[pc];
+                }
+                break;
+            case BEQZ:
+                if ( a == 0 )
+                {
+                    next = imm[pc];
+                }
+                break;
+            case BNEZ:
+                if ( a != 0 )
+                {
+                    next = imm[pc];
+                }
+                break;
+            case JAL:
+                reg[RA] = TEXT_BASE + 4 * next;
+                // fall through
+            case J:
+                next = imm[pc];
+                break;
+            case JR:
+            case JALR:
+            {
+                int to = reg[rd[pc]];
+                if ( ( to & 3 ) != 0 || to < TEXT_BASE || to > TEXT_BASE + 4 * size )
+                {
+                    throw new Trap( "invalid program counter value: 0x" + String.format( "%08x", to ) );
+                }
+                if ( ops[pc] == Op.JALR )
+                {
+                    reg[RA] = TEXT_BASE + 4 * next;
+                }
+                next = ( to - TEXT_BASE ) >> 2;
+                break;
+            }
+            case SYSCALL:
+                next = syscall( next );
+                break;
+            case NOP:
+                break;
+        }
+        return next;
+    }
+
+    static boolean branch( Op op, int a, int b )
+    {
+        switch ( op )
+        {
+            case BEQ: return a == b;
+            case BNE: return a != b;
+            case BLT: return a < b;
+            case BLE: return a <= b;
+            case BGT: return a > b;
+            case BGE: return a >= b;
+            case BLTU: return Integer.compareUnsigned( a, b ) < 0;
+            case BLEU: return Integer.compareUnsigned( a, b ) <= 0;
+            case BGTU: return Integer.compareUnsigned( a, b ) > 0;
+            default: return Integer.compareUnsigned( a, b ) >= 0;
+        }
+    }
+
+    void set( int r, int v )
+    {
+        if ( r != ZERO )
+        {
+            reg[r] = v;
+        }
+    }
+
+    int syscall( int next )
+    {
+        switch ( reg[V0] )
+        {
+            case 1:     // print_int
+                output.append( reg[A0] );
+                return next;
+            case 4:     // print_string
+                for ( int a = reg[A0]; ; a++ )
+                {
+                    byte c = memory.loadByte( a );
+                    if ( c == 0 )
+                    {
+                        break;
+                    }
+                    output.append( ( char ) ( c & 0xff ) );
+                }
+                return next;
+            case 9:     // sbrk
+            {
+                int n = reg[A0];
+                if ( n < 0 )
+                {
+                    throw new Trap( "request (" + n + ") is negative heap amount (syscall 9)" );
+                }
+                long end = ( ( long ) heap + n + 3 ) & ~3L;
+                if ( end >= DATA_LIMIT )
+                {
+                    throw new Trap( "request (" + n + ") exceeds available heap storage (syscall 9)" );
+                }
+                reg[V0] = heap;
+                heap = ( int ) end;
+                return next;
+            }
+            case 10:    // exit
+                return -1;
+            default:
+                throw new Trap( "invalid or unimplemented syscall service: " + reg[V0] );
+        }
+    }
+
+    // Word addressed memory, allocated by pages on first use
+    static class Memory
+    {
+        static final int PAGE_BITS = 12;
+        static final int PAGE_WORDS = ( 1 << PAGE_BITS ) / 4;
+
+        HashMap<Integer, int[]> pages = new HashMap<Integer, int[]>();
+        int last_page = -1;     // the page of the last access
+        int[] last;
+
+        int[] page( int address )
+        {
+            if ( address < DATA_LOW )
+            {
+                throw new Trap( "address out of range 0x" + String.format( "%08x", address ) );
+            }
+            int p = address >>> PAGE_BITS;
+            if ( p != last_page )
+            {
+                last = pages.get( p );
+                if ( last == null )
+                {
+                    last = new int[PAGE_WORDS];
+                    pages.put( p, last );
+                }
+                last_page = p;
+            }
+            return last;
+        }
+
+        int load( int address )
+        {
+            aligned( address );
+            return page( address )[( address >> 2 ) & ( PAGE_WORDS - 1 )];
+        }
+
+        void store( int address, int v )
+        {
+            aligned( address );
+            page( address )[( address >> 2 ) & ( PAGE_WORDS - 1 )] = v;
+        }
+
+        static void aligned( int address )
+        {
+            if ( ( address & 3 ) != 0 )
+            {
+                throw new Trap( "address not aligned on word boundary 0x" + String.format( "%08x", address ) );
+            }
+        }
+
+        // Bytes are little endian within a word, as in MARS
+        byte loadByte( int address )
+        {
+            int w = page( address )[( address >> 2 ) & ( PAGE_WORDS - 1 )];
+            return ( byte ) ( w >> ( 8 * ( address & 3 ) ) );
+        }
+
+        void storeByte( int address, byte b )
+        {
+            int[] p = page( address );
+            int i = ( address >> 2 ) & ( PAGE_WORDS - 1 );
+            int shift = 8 * ( address & 3 );
+            p[i] = ( p[i] & ~( 0xff << shift ) ) | ( ( b & 0xff ) << shift );
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package syntaxtree;
+
+// The declaration a variable name refers to, as resolved by
+// visitor.BindVisitor: a formal parameter or local variable of the
+// enclosing method (by position), or a field of "this" (by its word
+// offset inside the object).
+public class Binding
+{
+    public enum Kind { PARAM, LOCAL, FIELD }
+
+    public final Kind kind;
+    public final int slot;
+    public final Type type;
+
+    public Binding( Kind kind, int slot, Type type )
+    {
+        this.kind = kind;
+        this.slot = slot;
+        this.type = type;
+    }
+}
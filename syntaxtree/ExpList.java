@@ -16,6 +16,11 @@ public class ExpList
         list.addElement( n );
     }
 
+    public void setElementAt( Exp n, int i )
+    {
+        list.setElementAt( n, i );
+    }
+
     public Exp elementAt( int i )
     {
         return ( Exp )list.elementAt( i );
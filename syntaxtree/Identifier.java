@@ -5,10 +5,18 @@ import visitor.TypeVisitor;
 public class Identifier
 {
     public String s;
+    public int id;              // in Names
+    public Binding binding;     // of an assigned variable, set by visitor.BindVisitor
 
     public Identifier( String as )
+    {
+        this( as, -1 );
+    }
+
+    public Identifier( String as, int aid )
     {
         s = as;
+        id = aid;
     }
 
     public void accept( Visitor v )
@@ -5,9 +5,17 @@ import visitor.TypeVisitor;
 public class IdentifierExp extends Exp
 {
     public String s;
+    public int id;              // in Names
+    public Binding binding;     // set by visitor.BindVisitor
     public IdentifierExp( String as )
+    {
+        this( as, -1 );
+    }
+
+    public IdentifierExp( String as, int aid )
     {
         s = as;
+        id = aid;
     }
 
     public void accept( Visitor v )
@@ -5,10 +5,17 @@ import visitor.TypeVisitor;
 public class IdentifierType extends Type
 {
     public String s;
+    public int id;              // in Names
 
     public IdentifierType( String as )
+    {
+        this( as, -1 );
+    }
+
+    public IdentifierType( String as, int aid )
     {
         s = as;
+        id = aid;
     }
 
     public void accept( Visitor v )
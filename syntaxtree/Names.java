@@ -0,0 +1,69 @@
+package syntaxtree;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+// The identifiers of a program, interned by the parser: all the
+// occurrences of a name share one String, and the names are numbered 0,
+// 1, ... in order of first appearance. Identifier, IdentifierExp and
+// IdentifierType carry that number ("id"), -1 for the nodes the compiler
+// makes up itself.
+//
+// With the hand-written lexer the names are the ones it interned, numbered
+// as it numbered them (keywords and literals included), and the parser
+// takes the numbers from the tokens instead of looking the names up.
+public class Names
+{
+    HashMap<String, Integer> ids;   // made on the first intern()
+    String[] names;
+    int count;
+
+    public Names()
+    {
+        names = new String[64];
+        ids = new HashMap<String, Integer>();
+    }
+
+    // The "count" names of "names", numbered by their index
+    public Names( String[] names, int count )
+    {
+        this.names = names;
+        this.count = count;
+    }
+
+    // The number of name "s", a new one if "s" was not seen before
+    public int intern( String s )
+    {
+        if ( ids == null )
+        {
+            ids = new HashMap<String, Integer>();
+            for ( int i = 0; i < count; i++ )
+            {
+                ids.put( names[i], i );
+            }
+        }
+        Integer id = ids.get( s );
+        if ( id == null )
+        {
+            id = count;
+            if ( count == names.length )
+            {
+                names = Arrays.copyOf( names, 2 * count );
+            }
+            names[count++] = s;
+            ids.put( s, id );
+        }
+        return id;
+    }
+
+    // The name numbered "id"
+    public String name( int id )
+    {
+        return names[id];
+    }
+
+    public int size()
+    {
+        return count;
+    }
+}
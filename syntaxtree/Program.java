@@ -6,6 +6,7 @@ public class Program
 {
     public MainClass m;
     public ClassDeclList cl;
+    public Names names;         // its identifiers, set by the parser
 
     public Program( MainClass am, ClassDeclList acl )
     {
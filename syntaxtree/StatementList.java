@@ -16,6 +16,11 @@ public class StatementList
         list.addElement( n );
     }
 
+    public void setElementAt( Statement n, int i )
+    {
+        list.setElementAt( n, i );
+    }
+
     public Statement elementAt( int i )
     {
         return ( Statement )list.elementAt( i );
@@ -0,0 +1,57 @@
+// Test
+//   Constant expressions (Times wraps around like mult / mflo)
+//   If / While on constant conditions
+//   Constants through assignments and branches
+class test28
+{
+    public static void main( String[] args )
+    {
+        System.out.println( new Foo().run( 7 ) );
+    }
+}
+
+class Foo
+{
+    public int run( int n )
+    {
+        int a;
+        int b;
+        int c;
+        boolean f;
+
+        System.out.println( 1 + 2 * 3 - 4 );
+        System.out.println( 100000 * 100000 );
+        System.out.println( 65536 * 65536 );
+        System.out.println( 0 - 2147483647 - 1 );
+
+        if ( 1 < 2 && !false )
+            System.out.println( 1 );
+        else
+            System.out.println( 0 );
+
+        while ( false )
+            System.out.println( 99 );
+
+        a = 5;
+        if ( a < 3 )
+            b = 1;
+        else
+            b = 2;
+        System.out.println( a * b );
+
+        c = 0;
+        f = true;
+        while ( f )
+        {
+            c = c + a;
+            f = c < 20;
+        }
+        System.out.println( c );
+
+        if ( n < 10 )
+            a = 3;
+        else
+            a = 3;
+        return a + n;
+    }
+}
@@ -0,0 +1,51 @@
+// Test
+//   Array accesses indexed by loop variables bounded by .length
+//   Arrays held in fields
+//   A negative index is out of bound
+class test29
+{
+    public static void main( String[] args )
+    {
+        System.out.println( new Foo().run( 10 ) );
+    }
+}
+
+class Foo
+{
+    int[] f;
+
+    public int run( int n )
+    {
+        int[] a;
+        int i;
+        int s;
+        a = new int[n];
+        i = 0;
+        while ( i < a.length )
+        {
+            a[i] = i * 2;
+            s = a[i] + a[i];
+            i = i + 1;
+        }
+        f = new int[5];
+        i = 0;
+        while ( i < f.length && i < 4 )
+        {
+            f[i] = a[i] + f[i];
+            i = i + 1;
+        }
+        s = 0;
+        i = a.length - 1;
+        while ( 0 < i )
+        {
+            s = s + a[i];
+            i = i - 1;
+        }
+        a = new int[10];
+        a[3] = 1;
+        a[9] = 2;
+        System.out.println( s + a[3] + a[9] + f[3] );
+        a[0 - 1] = 5;
+        return s;
+    }
+}
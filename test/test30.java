@@ -0,0 +1,39 @@
+// Test
+//   Multiplications by powers of two (shifts)
+//   Array accesses with constant and variable indices
+class test30
+{
+    public static void main( String[] args )
+    {
+        System.out.println( new Foo().run( 65536 ) );
+    }
+}
+
+class Foo
+{
+    public int run( int x )
+    {
+        int[] a;
+        int i;
+        int y;
+
+        y = 0 - 3;
+        System.out.println( y * 8 );
+        System.out.println( 4 * y );
+        System.out.println( y * 1 );
+        System.out.println( x * 65536 );
+        System.out.println( x * 32768 );
+
+        a = new int[8];
+        i = 0;
+        while ( i < 8 )
+        {
+            a[i] = i * 16;
+            i = i + 1;
+        }
+        a[0] = a[7] + a[1];
+        System.out.println( a[0] );
+        System.out.println( a[a.length - 1] * 2 );
+        return a[3];
+    }
+}
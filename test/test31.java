@@ -0,0 +1,122 @@
+// Test
+//   Allocating more than the heap size of the first garbage collection
+//   Objects, arrays and fields of a superclass that stay in use across it
+class test31
+{
+    public static void main( String[] args )
+    {
+        System.out.println( new Heap().run( 60 ) );
+    }
+}
+
+class Node
+{
+    int value;
+    Node next;
+
+    public int init( int v, Node n )
+    {
+        value = v;
+        next = n;
+        return v;
+    }
+
+    public int getValue() { return value; }
+
+    public Node getNext() { return next; }
+}
+
+class Holder extends Node
+{
+    int[] data;
+
+    public int fill( int n )
+    {
+        int i;
+        data = new int[n];
+        i = 0;
+        while ( i < n )
+        {
+            data[i] = i * 3;
+            i = i + 1;
+        }
+        return n;
+    }
+
+    public int sum()
+    {
+        int i;
+        int s;
+        i = 0;
+        s = 0;
+        while ( i < data.length )
+        {
+            s = s + data[i];
+            i = i + 1;
+        }
+        return s;
+    }
+}
+
+class Heap
+{
+    public int run( int rounds )
+    {
+        Node list;
+        Node p;
+        Holder h;
+        int[] garbage;
+        int[] kept;
+        int i;
+        int k;
+        int s;
+
+        // In use all along
+        list = new Node();
+        k = list.init( 0, list );
+        list = new Node();
+        k = list.init( 0, list.getNext() );
+        i = 1;
+        while ( i < 100 )
+        {
+            p = new Node();
+            k = p.init( i, list );
+            list = p;
+            i = i + 1;
+        }
+        h = new Holder();
+        k = h.fill( 50 );
+        k = h.init( 7, list );
+        kept = new int[10];
+        kept[9] = 99;
+
+        // About 24 KB of garbage a round
+        i = 0;
+        while ( i < rounds )
+        {
+            garbage = new int[6000];
+            garbage[5999] = i;
+            k = 0;
+            p = new Node();
+            while ( k < 20 )
+            {
+                p = new Node();
+                k = p.init( k, p );
+                k = k + 1;
+            }
+            i = i + 1;
+        }
+
+        s = 0;
+        p = h.getNext();
+        while ( 0 < p.getValue() )
+        {
+            s = s + p.getValue();
+            p = p.getNext();
+        }
+        System.out.println( s );
+        System.out.println( h.sum() );
+        System.out.println( kept[9] );
+        return h.getValue();
+    }
+}
@@ -0,0 +1,82 @@
+// Test
+//   Methods small enough to be inlined: accessors, a loop, parameters
+//   assigned to, calls inlined in loops and in each other, and a recursive
+//   method that is not
+class test32
+{
+    public static void main( String[] args )
+    {
+        System.out.println( new Counter().run( 10 ) );
+    }
+}
+
+class Counter
+{
+    int count;
+
+    public int get() { return count; }
+
+    public int set( int c )
+    {
+        count = c;
+        return c;
+    }
+
+    public int add( int a, int b )
+    {
+        a = a + b;
+        return a;
+    }
+
+    public int sum( int n )
+    {
+        int s;
+        s = 0;
+        while ( 0 < n )
+        {
+            s = s + n;
+            n = n - 1;
+        }
+        return s;
+    }
+
+    public int twice( int n )
+    {
+        return this.add( n, n );
+    }
+
+    public int fact( int n )
+    {
+        int r;
+        if ( n < 2 )
+            r = 1;
+        else
+            r = n * this.fact( n - 1 );
+        return r;
+    }
+
+    public int run( int n )
+    {
+        int i;
+        int k;
+        int t;
+        Counter other;
+        i = 0;
+        t = 0;
+        other = new Counter();
+        k = other.set( 5 );
+        while ( i < n )
+        {
+            k = this.set( this.get() + this.add( i, 1 ) );
+            t = t + this.sum( i );
+            i = i + 1;
+        }
+        System.out.println( this.get() );
+        System.out.println( t );
+        System.out.println( other.get() );
+        System.out.println( this.twice( 21 ) );
+        System.out.println( this.fact( 6 ) );
+        System.out.println( i );
+        return this.add( this.get(), other.get() );
+    }
+}
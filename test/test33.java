@@ -0,0 +1,30 @@
+// Test
+//   An array of negative length is an error, and does not take the room
+//   of the arrays allocated before it
+class test33
+{
+    public static void main( String[] args )
+    {
+        System.out.println( new Arrays().run( 10 ) );
+    }
+}
+
+class Arrays
+{
+    public int run( int n )
+    {
+        int[] y;
+        int[] x;
+        int[] z;
+        y = new int[4];
+        y[0] = 11;
+        System.out.println( y[0] + y[1] + y[2] + y[3] );
+        x = new int[0 - n];
+        z = new int[4];
+        z[0] = 1;
+        z[1] = 2;
+        z[2] = 3;
+        z[3] = 4;
+        return y[0] + y[1] + y[2] + y[3];
+    }
+}
@@ -0,0 +1,97 @@
+package visitor;
+
+import syntaxtree.*;
+
+// Bind every use of a variable to its declaration (see syntaxtree.Binding),
+// once, after the symbol table is built: each IdentifierExp, and the
+// Identifier assigned to by each Assign and ArrayAssign. The type checker
+// and the code generators read the binding instead of looking the name up
+// again.
+//
+// A name that is not declared is left unbound, for the type checker to
+// report.
+public class BindVisitor extends DepthFirstVisitor
+{
+    SymbolTable symbolTable;
+    Class currClass;
+    Method currMethod;
+
+    public BindVisitor( SymbolTable s )
+    {
+        symbolTable = s;
+    }
+
+    // Identifier i1,i2;
+    // VarDeclList vl;
+    // Statement s;
+    public void visit( MainClass n )
+    {
+        currClass = symbolTable.getClass( n.i1.toString() );
+        currMethod = currClass.getMethod( "main" );
+        n.s.accept( this );
+    }
+
+    // Identifier i;
+    // VarDeclList vl;
+    // MethodDeclList ml;
+    public void visit( ClassDeclSimple n )
+    {
+        currClass = symbolTable.getClass( n.i.toString() );
+        for ( int i = 0; i < n.ml.size(); i++ )
+        {
+            n.ml.elementAt( i ).accept( this );
+        }
+    }
+
+    // Identifier i;
+    // Identifier j;
+    // VarDeclList vl;
+    // MethodDeclList ml;
+    public void visit( ClassDeclExtends n )
+    {
+        currClass = symbolTable.getClass( n.i.toString() );
+        for ( int i = 0; i < n.ml.size(); i++ )
+        {
+            n.ml.elementAt( i ).accept( this );
+        }
+    }
+
+    // Type t;
+    // Identifier i;
+    // FormalList fl;
+    // VarDeclList vl;
+    // StatementList sl;
+    // Exp e;
+    public void visit( MethodDecl n )
+    {
+        currMethod = currClass.getMethod( n.i.toString() );
+        for ( int i = 0; i < n.sl.size(); i++ )
+        {
+            n.sl.elementAt( i ).accept( this );
+        }
+        n.e.accept( this );
+    }
+
+    // Identifier i;
+    // Exp e;
+    public void visit( Assign n )
+    {
+        n.i.binding = symbolTable.bind( currMethod, currClass, n.i.toString() );
+        n.e.accept( this );
+    }
+
+    // Identifier i;
+    // Exp e1,e2;
+    public void visit( ArrayAssign n )
+    {
+        n.i.binding = symbolTable.bind( currMethod, currClass, n.i.toString() );
+        n.e1.accept( this );
+        n.e2.accept( this );
+    }
+
+    // String s;
+    public void visit( IdentifierExp n )
+    {
+        n.binding = symbolTable.bind( currMethod, currClass, n.s );
+    }
+}
@@ -44,6 +44,9 @@ public class BuildSymbolTableVisitor extends TypeDepthFirstVisitor
         {
             n.cl.elementAt( i ).accept( this );
         }
+
+        // Superclasses, object layouts and dispatch tables
+        symbolTable.resolve();
         return null;
     }
 
@@ -51,7 +54,8 @@ public class BuildSymbolTableVisitor extends TypeDepthFirstVisitor
     // Statement s;
     public Type visit( MainClass n )
     {
-        symbolTable.addClass( n.i1.toString(), null );
+        symbolTable.addClass( n.i1.toString(), n.i1.id, null );
+        symbolTable.setMainClass( n.i1.toString() );
         currClass = symbolTable.getClass( n.i1.toString() );
 
         //this is an ugly hack.. but its not worth having a Void and
@@ -81,12 +85,11 @@ public class BuildSymbolTableVisitor extends TypeDepthFirstVisitor
     // MethodDeclList ml; (Method declaration)
     public Type visit( ClassDeclSimple n )
     {
-        if ( !symbolTable.addClass( n.i.toString(), null ) )
+        if ( !symbolTable.addClass( n.i.toString(), n.i.id, null ) )
         {
 
-            System.out.println( "Class " +  n.i.toString()
+            throw new CompileError( "Class " +  n.i.toString()
                                 + "is already defined" );
-            System.exit( -1 );
         }
 
         // Entering a new class scope (no need to explicitly leave a class scope)
@@ -112,11 +115,10 @@ public class BuildSymbolTableVisitor extends TypeDepthFirstVisitor
     // MethodDeclList ml; (Method declaration)
     public Type visit( ClassDeclExtends n )
     {
-        if ( !symbolTable.addClass( n.i.toString(),  n.j.toString() ) )
+        if ( !symbolTable.addClass( n.i.toString(), n.i.id, n.j.toString() ) )
         {
-            System.out.println( "Class " +  n.i.toString()
+            throw new CompileError( "Class " +  n.i.toString()
                                 + "is already defined" );
-            System.exit( -1 );
         }
 
         // Entering a new class scope (no need to explicitly leave a class scope)
@@ -150,9 +152,8 @@ public class BuildSymbolTableVisitor extends TypeDepthFirstVisitor
             // Add a field
             if ( !currClass.addVar( id, t ) )
             {
-                System.out.println( id + "is already defined in "
+                throw new CompileError( id + "is already defined in "
                                     + currClass.getId() );
-                System.exit( -1 );
             }
         }
         else
@@ -160,9 +161,8 @@ public class BuildSymbolTableVisitor extends TypeDepthFirstVisitor
             // Add a local variable
             if ( !currMethod.addVar( id, t ) )
             {
-                System.out.println( id + "is already defined in "
+                throw new CompileError( id + "is already defined in "
                                     + currClass.getId() + "." + currMethod.getId() );
-                System.exit( -1 );
             }
         }
         return null;
@@ -183,10 +183,9 @@ public class BuildSymbolTableVisitor extends TypeDepthFirstVisitor
 
         if ( !currClass.addMethod( id, t ) )
         {
-            System.out.println( "Method " + id
+            throw new CompileError( "Method " + id
                                 + "is already defined in "
                                 + currClass.getId() );
-            System.exit( -1 );
         }
 
         // Entering a method scope
@@ -224,10 +223,9 @@ public class BuildSymbolTableVisitor extends TypeDepthFirstVisitor
 
         if ( !currMethod.addParam( id, t ) )
         {
-            System.out.println( "Formal" + id + "is already defined in "
+            throw new CompileError( "Formal" + id + "is already defined in "
                                 + currClass.getId() + "." +
                                 currMethod.getId() );
-            System.exit( -1 );
         }
         return null;
     }
@@ -1,19 +1,25 @@
 package visitor;
 
 import syntaxtree.*;
-import java.io.PrintWriter;
+import mips.AsmWriter;
+import mips.MipsRuntime;
+import ir.InstructionSelection;
+import java.util.HashSet;
+import java.util.Vector;
 
 public class CodeGenVisitor extends DepthFirstVisitor
 {
 
-    static Class currClass;
-    static Method currMethod;
-    static SymbolTable symbolTable;
-    PrintWriter out;
+    Class currClass;
+    Method currMethod;
+    SymbolTable symbolTable;
+    AsmWriter out;
     int label_count;
     Class callClass;
+    HashSet<Method> frameless;  // see FramelessMethods
+    boolean leaf;               // currMethod is in "frameless"
 
-    public CodeGenVisitor( SymbolTable s, PrintWriter out )
+    public CodeGenVisitor( SymbolTable s, AsmWriter out )
     {
         symbolTable = s;
         this.out = out;
@@ -26,22 +32,22 @@ public class CodeGenVisitor extends DepthFirstVisitor
     public void visit( Program n )
     {
         // Data segment
-        out.println(
-            ".data\n" +
-            "newline: .asciiz \"\\n\"\n" +    // to be used by cgen for "System.out.println()"
-            "msg_index_out_of_bound_exception: .asciiz \"Index out of bound exception\\n\"\n" +
-            "msg_null_pointer_exception: .asciiz \"Null pointer exception\\n\"\n" +
-            "\n" +
-            ".text\n"
-        );
+        MipsRuntime.data_segment( out );
+        for ( int i = 0; i < symbolTable.getClasses().size(); i++ )
+        {
+            Class c = symbolTable.getClasses().elementAt( i );
+            MipsRuntime.vtable( out, get_vtable_label( c.getId() ), get_vtable_entries( symbolTable, c ) );
+        }
+        MipsRuntime.pointer_maps( out, get_pointer_maps( symbolTable ) );
+        MipsRuntime.text_segment( out );
+
+        FramelessMethods f = new FramelessMethods( symbolTable );
+        n.accept( f );
+        frameless = f.methods;
 
         n.m.accept( this );
 
-        out.println(  // Code to terminate the program
-            "# exit\n" +
-            "li $v0, 10\n" +
-            "syscall\n"
-        );
+        MipsRuntime.exit( out );
 
         // Code for all methods
         for ( int i = 0; i < n.cl.size(); i++ )
@@ -67,8 +73,9 @@ public class CodeGenVisitor extends DepthFirstVisitor
         // Info about local variables are kept in "currMethod"
 
         // Generate code to reserve space for local variables in stack
-        out.println( "move $fp, $sp" );
-        out.println( "addiu $sp, $sp, " + -4 * ( currMethod.getVarSize() + 2 ) + "\n" );
+        out.op( "move", "$fp", "$sp" );
+        out.op( "addiu", "$sp", "$sp", -4 * ( currMethod.getVarSize() + 2 ) );
+        out.blank();
         // Optionally, generate code to reserve space for temps
 
         n.s.accept( this );
@@ -113,15 +120,45 @@ public class CodeGenVisitor extends DepthFirstVisitor
         currMethod = currClass.getMethod( id );
         if( null == currMethod )
         {
-            System.out.println( "Cannot find method " + n.i.toString() + " in class " + currClass.getId() );
-            System.exit( -1 );
+            throw new CompileError( "Cannot find method " + n.i.toString() + " in class " + currClass.getId() );
         }
         String label = get_function_label( currClass.getId(), currMethod.getId() );
-        out.println( label + ":\n" );
-        out.println( "move $fp, $sp" );
-        out.println( "sw $ra, 0($sp) # push $ra" ); // push $ra
-        out.println( "addiu $sp, $sp, -4" );
-        out.println( "addiu $sp, $sp, " + -4 * ( currMethod.getVarSize() + 2 ) + "\n" );
+        out.label( label );
+        out.blank();
+
+        // "this" comes in $a0 and the parameters e1..en on the stack, where
+        // the caller pushed them (e1 on top, "this" under en), the first
+        // three also in $a1-$a3. The callee pops them.
+        //
+        // frame layout
+        // ...
+        // e1          4($fp)
+        // $ra         0($fp)
+        // local 0    -4($fp)
+        // ...
+        // old fp     -4(V+1)($fp)
+        // this       -4(V+2)($fp)
+        int n_params = currMethod.params.size();
+        int vars = currMethod.getVarSize();
+        leaf = frameless.contains( currMethod );
+        if ( leaf )
+        {
+            out.op( "move", "$t3", "$a0" );
+            out.comment( "this" );
+            out.blank();
+        }
+        else
+        {
+            out.mem( "sw", "$ra", 0, "$sp" );
+            out.comment( "save $ra" );
+            out.mem( "sw", "$fp", -4 * ( vars + 1 ), "$sp" );
+            out.comment( "save $fp" );
+            out.mem( "sw", "$a0", -4 * ( vars + 2 ), "$sp" );
+            out.comment( "save this" );
+            out.op( "move", "$fp", "$sp" );
+            out.op( "addiu", "$sp", "$sp", -4 * ( vars + 3 ) );
+            out.blank();
+        }
 
         for ( int i = 0; i < n.sl.size(); i++ )
         {
@@ -129,13 +166,29 @@ public class CodeGenVisitor extends DepthFirstVisitor
         }
         n.e.accept( this );
         // handle return value
-        out.println( "move $v0, $a0 # save return value" );
+        out.op( "move", "$v0", "$a0" );
+        out.comment( "save return value" );
 
-        out.println( "addiu $sp, $sp, " + 4 * ( currMethod.getVarSize() + 2 ) + "\n" );
-        out.println( "lw $ra, 4($sp) # restore $ra" ); // restore $ra
-        out.println( "addiu $sp, $sp, " + ( currMethod.params.size() * 4 + 12 ) );
-        out.println( "lw $fp, 0($sp) # restore $fp" ); // restore $fp
-        out.println( "jr $ra" );
+        int pop = ( n_params == 0 ) ? 0 : 4 * ( n_params + 1 );
+        if ( leaf )
+        {
+            if ( pop > 0 )
+            {
+                out.op( "addiu", "$sp", "$sp", pop );
+                out.comment( "pop the arguments" );
+            }
+        }
+        else
+        {
+            out.mem( "lw", "$ra", 0, "$fp" );
+            out.comment( "restore $ra" );
+            out.op( "addiu", "$sp", "$fp", pop );
+            out.comment( "pop the frame and the arguments" );
+            out.mem( "lw", "$fp", -4 * ( vars + 1 ), "$fp" );
+            out.comment( "restore $fp" );
+        }
+        out.op( "jr", "$ra" );
+        leaf = false;
     }
 
     // Exp e;
@@ -148,19 +201,23 @@ public class CodeGenVisitor extends DepthFirstVisitor
         String label2 = "$L" + label_count++;
 
         // beq  $2,$0,$L2
-        out.println( "li $t0, 0x0001" );
-        out.println( "and $t0, $t0, $a0" );
-        out.println( "beq $t0, 0, " + label1 + "\n" );
+        out.op( "li", "$t0", "0x0001" );
+        out.op( "and", "$t0", "$t0", "$a0" );
+        out.op( "beq", "$t0", "0", label1 );
+        out.blank();
 
         n.s1.accept( this );
-        out.println( "j " + label2 + "\n" );
+        out.op( "j", label2 );
+        out.blank();
 
         // label1 -> s1
-        out.println( label1 + ":\n" );
+        out.label( label1 );
+        out.blank();
         n.s2.accept( this );
 
         // label2 -> next
-        out.println( label2 + ":\n" );
+        out.label( label2 );
+        out.blank();
     }
 
     // Exp e;
@@ -170,14 +227,18 @@ public class CodeGenVisitor extends DepthFirstVisitor
     {
         String label1 = "$Loop" + label_count++;
         String label2 = "$Loop_exit" + label_count++;
-        out.println( label1 + ":\n" );
+        out.label( label1 );
+        out.blank();
         n.e.accept( this );
-        out.println( "li $t0, 0x0001" );
-        out.println( "and $t0, $t0, $a0" );
-        out.println( "beq $t0, 0, " + label2 + "\n" );
+        out.op( "li", "$t0", "0x0001" );
+        out.op( "and", "$t0", "$t0", "$a0" );
+        out.op( "beq", "$t0", "0", label2 );
+        out.blank();
         n.s.accept( this );
-        out.println( "j " + label1 + "\n" );
-        out.println( label2 + ":\n" );
+        out.op( "j", label1 );
+        out.blank();
+        out.label( label2 );
+        out.blank();
     }
 
     // Exp e;
@@ -185,7 +246,8 @@ public class CodeGenVisitor extends DepthFirstVisitor
     public void visit( Print n )
     {
         n.e.accept( this );
-        out.println( "jal _print_int\n" );
+        out.op( "jal", "_print_int" );
+        out.blank();
     }
 
     // Identifier i;
@@ -194,28 +256,40 @@ public class CodeGenVisitor extends DepthFirstVisitor
     public void visit( Assign n )
     {
         n.e.accept( this );
-        Variable v = null;
-        if ( currMethod.containsParam( n.i.toString() ) )
-        {
-            v = currMethod.getParam( n.i.toString() );
-            out.println( "sw $a0, " + 4 * ( v.idx() + 1 ) + "($fp) # save parameter " + v.id() + "\n" );
-        }
-        else if ( currMethod.containsVar( n.i.toString() ) )
-        {
-            v = currMethod.getVar( n.i.toString() );
-            out.println( "sw $a0, " + -4 * ( v.idx() + 1 ) + "($fp) # save local variable " + v.id() + "\n" );
-        }
-        else if ( contains_var( currClass, n.i.toString() ) )
-        {
-            v = get_var( currClass, n.i.toString() );
-            out.println( "lw $t0, " + 4 * ( currMethod.params.size() + 1 ) + "($fp) # load this" );
-            int idx = get_var_index( currClass, n.i.toString() );
-            out.println( "sw $a0, " + 4 * ( idx ) + "($t0) # save object variable " + v.id() + "\n" );
-        }
-        else
-        {
-            System.out.println( "Cannot find " + n.i.toString() + " in method " + currMethod.getId() );
-            System.exit( -1 );
+        String id = n.i.toString();
+        Binding b = bound( n.i.binding, id, currMethod );
+        switch ( b.kind )
+        {
+            case PARAM:
+                if ( leaf )
+                {
+                    out.op( "move", leaf_register( b ), "$a0" );
+                }
+                else
+                {
+                    out.mem( "sw", "$a0", 4 * ( b.slot + 1 ), "$fp" );
+                }
+                out.comment( "save parameter ", id );
+                out.blank();
+                break;
+            case LOCAL:
+                if ( leaf )
+                {
+                    out.op( "move", leaf_register( b ), "$a0" );
+                }
+                else
+                {
+                    out.mem( "sw", "$a0", -4 * ( b.slot + 1 ), "$fp" );
+                }
+                out.comment( "save local variable ", id );
+                out.blank();
+                break;
+            default:
+                cgen_load_this( "$t0" );
+                out.mem( "sw", "$a0", 4 * b.slot, "$t0" );
+                out.comment( "save object variable ", id );
+                out.blank();
+                break;
         }
     }
 
@@ -225,64 +299,31 @@ public class CodeGenVisitor extends DepthFirstVisitor
     public void visit( ArrayAssign n )
     {
         n.e2.accept( this );
-        out.println( "sw $a0, 0($sp)" );   // push value of e2 to stack
-        out.println( "addiu $sp, $sp, -4" );
+        out.mem( "sw", "$a0", 0, "$sp" );   // push value of e2 to stack
+        out.op( "addiu", "$sp", "$sp", -4 );
 
         n.e1.accept( this );
-        out.println( "sw $a0, 0($sp)" );     // push e1 value to stack
-        out.println( "addiu $sp, $sp, -4" );
-        out.println( "addi $a0, $a0, 1 # ArrayAssign" );   // index = e + 1 (length)
-        out.println( "sw $a0, 0($sp)" );     // push value to stack
-        out.println( "addiu $sp, $sp, -4" );
-        out.println( "lw $t1, 4($sp)" );     // $t1 = stack top
-        out.println( "li $a0, 4" );          // $a0 = 4
-        out.println( "mult $t1, $a0" );      // $a0 = stack top * 4
-        out.println( "mflo $a0" );           // 32 least significant bits of multiplication to $a0
-        out.println( "addiu $sp, $sp, 4" );  // pop
-
-        out.println( "sw $a0, 0($sp)" );     // push value to stack
-        out.println( "addiu $sp, $sp, -4" );
+        out.mem( "sw", "$a0", 0, "$sp" );     // push e1 value to stack
+        out.op( "addiu", "$sp", "$sp", -4 );
 
-        // local variable
-        Variable v = null;
-        if ( currMethod.containsParam( n.i.toString() ) )
-        {
-            v = currMethod.getParam( n.i.toString() );
-            out.println( "lw $a0, " + 4 * ( v.idx() + 1 ) + "($fp) # load parameter " + v.id() + "\n" );
-        }
-        else if ( currMethod.containsVar( n.i.toString() ) )
-        {
-            v = currMethod.getVar( n.i.toString() );
-            out.println( "lw $a0, " + -4 * ( v.idx() + 1 ) + "($fp) # load local variable " + v.id() + "\n" );
-        }
-        else if ( contains_var( currClass, n.i.toString() ) )
-        {
-            v = get_var( currClass, n.i.toString() );
-            out.println( "lw $a0, " + 4 * ( currMethod.params.size() + 1 ) + "($fp) # load this" );
-            int idx = get_var_index( currClass, n.i.toString() );
-            out.println( "lw $a0, " + 4 * ( idx ) + "($a0) # load object variable " + v.id() + "\n" );
-        }
-        else
-        {
-            System.out.println( "Cannot find " + n.i.toString() + " in method " + currMethod.getId() );
-            System.exit( -1 );
-        }
+        Binding b = bound( n.i.binding, n.i.toString(), currMethod );
+        cgen_load_var( b, n.i.toString() );
 
-        if ( ( v.type() instanceof IdentifierType ) || ( v.type() instanceof IntArrayType ) )
+        if ( ( b.type instanceof IdentifierType ) || ( b.type instanceof IntArrayType ) )
         {
-            out.println( "beq  $a0, $zero, _null_pointer_exception\n" );
+            out.op( "beq", "$a0", "$zero", "_null_pointer_exception" );
+            out.blank();
         }
 
-        out.println( "lw $t1, 8($sp)" );     // e1
-        out.println( "lw $t2, 0($a0)" );     // length
-        out.println( "bge $t1, $t2, _array_index_out_of_bound_exception" );
-
-        out.println( "lw $t1, 4($sp)" );     // $t1 = stack top, e1, index
-        out.println( "lw $t2, 12($sp)" );    // e2
+        out.mem( "lw", "$t1", 4, "$sp" );     // e1
+        out.mem( "lw", "$t2", 0, "$a0" );     // length
+        out.op( "bgeu", "$t1", "$t2", "_array_index_out_of_bound_exception" ); // unsigned: a negative index is out of bound too
 
-        out.println( "add $a0, $a0, $t1" );
-        out.println( "sw $t2, 0($a0)" );
-        out.println( "addiu $sp, $sp, 12" );
+        out.op( "sll", "$t1", "$t1", 2 );    // index * 4
+        out.op( "add", "$a0", "$a0", "$t1" );
+        out.mem( "lw", "$t2", 8, "$sp" );     // e2
+        out.mem( "sw", "$t2", 4, "$a0" );     // the elements start after the length
+        out.op( "addiu", "$sp", "$sp", 8 );
     }
 
     // Exp e1,e2;
@@ -290,13 +331,14 @@ public class CodeGenVisitor extends DepthFirstVisitor
     public void visit( And n )
     {
         n.e1.accept( this );
-        out.println( "sw $a0, 0($sp)" );   // push value of e1 to stack
-        out.println( "addiu $sp, $sp, -4" );
+        out.mem( "sw", "$a0", 0, "$sp" );   // push value of e1 to stack
+        out.op( "addiu", "$sp", "$sp", -4 );
 
         n.e2.accept( this );
-        out.println( "lw $t1, 4($sp)" );      // $t1 = stack top
-        out.println( "and $a0, $t1, $a0" );   // $a0 = $a0 && stack top
-        out.println( "addiu $sp, $sp, 4\n" ); // pop
+        out.mem( "lw", "$t1", 4, "$sp" );      // $t1 = stack top
+        out.op( "and", "$a0", "$t1", "$a0" );   // $a0 = $a0 && stack top
+        out.op( "addiu", "$sp", "$sp", 4 ); // pop
+        out.blank();
     }
 
     // Exp e1,e2;
@@ -304,13 +346,14 @@ public class CodeGenVisitor extends DepthFirstVisitor
     public void visit( LessThan n )
     {
         n.e1.accept( this );
-        out.println( "sw $a0, 0($sp)" );   // push value of e1 to stack
-        out.println( "addiu $sp, $sp, -4" );
+        out.mem( "sw", "$a0", 0, "$sp" );   // push value of e1 to stack
+        out.op( "addiu", "$sp", "$sp", -4 );
 
         n.e2.accept( this );
-        out.println( "lw $t1, 4($sp)" );      // $t1 = stack top
-        out.println( "slt $a0, $t1, $a0" );   // $a0 = $a0 < stack top
-        out.println( "addiu $sp, $sp, 4\n" ); // pop
+        out.mem( "lw", "$t1", 4, "$sp" );      // $t1 = stack top
+        out.op( "slt", "$a0", "$t1", "$a0" );   // $a0 = $a0 < stack top
+        out.op( "addiu", "$sp", "$sp", 4 ); // pop
+        out.blank();
     }
 
     // Exp e1,e2;
@@ -318,13 +361,14 @@ public class CodeGenVisitor extends DepthFirstVisitor
     public void visit( Plus n )
     {
         n.e1.accept( this );
-        out.println( "sw $a0, 0($sp)" );   // push value of e1 to stack
-        out.println( "addiu $sp, $sp, -4" );
+        out.mem( "sw", "$a0", 0, "$sp" );   // push value of e1 to stack
+        out.op( "addiu", "$sp", "$sp", -4 );
 
         n.e2.accept( this );
-        out.println( "lw $t1, 4($sp)" );      // $t1 = stack top
-        out.println( "add $a0, $t1, $a0" );   // $a0 = $a0 + stack top
-        out.println( "addiu $sp, $sp, 4\n" ); // pop
+        out.mem( "lw", "$t1", 4, "$sp" );      // $t1 = stack top
+        out.op( "add", "$a0", "$t1", "$a0" );   // $a0 = $a0 + stack top
+        out.op( "addiu", "$sp", "$sp", 4 ); // pop
+        out.blank();
     }
 
     // Exp e1,e2;
@@ -332,28 +376,56 @@ public class CodeGenVisitor extends DepthFirstVisitor
     public void visit( Minus n )
     {
         n.e1.accept( this );
-        out.println( "sw $a0, 0($sp)" );   // push value of e1 to stack
-        out.println( "addiu $sp, $sp, -4" );
+        out.mem( "sw", "$a0", 0, "$sp" );   // push value of e1 to stack
+        out.op( "addiu", "$sp", "$sp", -4 );
 
         n.e2.accept( this );
-        out.println( "lw $t1, 4($sp)" );      // $t1 = stack top
-        out.println( "sub $a0, $t1, $a0" );   // $a0 = stack top - $a0
-        out.println( "addiu $sp, $sp, 4\n" ); // pop
+        out.mem( "lw", "$t1", 4, "$sp" );      // $t1 = stack top
+        out.op( "sub", "$a0", "$t1", "$a0" );   // $a0 = stack top - $a0
+        out.op( "addiu", "$sp", "$sp", 4 ); // pop
+        out.blank();
     }
 
     // Exp e1,e2;
     // cgen: e1 * e2
     public void visit( Times n )
     {
+        // x * 2^k => x << k (same low 32 bits as mult / mflo)
+        if ( shift_amount( n.e2 ) >= 0 || shift_amount( n.e1 ) >= 0 )
+        {
+            boolean right = shift_amount( n.e2 ) >= 0;
+            int k = right ? shift_amount( n.e2 ) : shift_amount( n.e1 );
+            ( right ? n.e1 : n.e2 ).accept( this );
+            if ( k > 0 )
+            {
+                out.op( "sll", "$a0", "$a0", k );
+                out.comment( "Times ", ( 1 << k ) );
+                out.blank();
+            }
+            return;
+        }
+
         n.e1.accept( this );
-        out.println( "sw $a0, 0($sp)" );   // push value of e1 to stack
-        out.println( "addiu $sp, $sp, -4" );
+        out.mem( "sw", "$a0", 0, "$sp" );   // push value of e1 to stack
+        out.op( "addiu", "$sp", "$sp", -4 );
 
         n.e2.accept( this );
-        out.println( "lw $t1, 4($sp)" );      // $t1 = stack top
-        out.println( "mult $t1, $a0" );       // $a0 = stack top * $a0
-        out.println( "mflo $a0" );            // 32 least significant bits of multiplication to $a0
-        out.println( "addiu $sp, $sp, 4\n" ); // pop
+        out.mem( "lw", "$t1", 4, "$sp" );      // $t1 = stack top
+        out.op( "mult", "$t1", "$a0" );       // $a0 = stack top * $a0
+        out.op( "mflo", "$a0" );            // 32 least significant bits of multiplication to $a0
+        out.op( "addiu", "$sp", "$sp", 4 ); // pop
+        out.blank();
+    }
+
+    // The shift equivalent to a multiplication by "e" (-1 if "e" is not a
+    // power of two literal)
+    static int shift_amount( Exp e )
+    {
+        if ( !( e instanceof IntegerLiteral ) )
+        {
+            return -1;
+        }
+        return InstructionSelection.shiftAmount( ( ( IntegerLiteral ) e ).i );
     }
 
     // Exp e1,e2;
@@ -361,32 +433,20 @@ public class CodeGenVisitor extends DepthFirstVisitor
     public void visit( ArrayLookup n )
     {
         n.e2.accept( this );
-        out.println( "sw $a0, 0($sp)" );     // push e2 value to stack
-        out.println( "addiu $sp, $sp, -4" );
-        out.println( "addi $a0, $a0, 1 # ArrayLookUp" );   // index = e + 1 (length)
-        out.println( "sw $a0, 0($sp)" );     // push value to stack
-        out.println( "addiu $sp, $sp, -4" );
-        out.println( "lw $t1, 4($sp)" );     // $t1 = stack top
-        out.println( "li $a0, 4" );          // $a0 = 4
-        out.println( "mult $t1, $a0" );      // $a0 = stack top * 4
-        out.println( "mflo $a0" );           // 32 least significant bits of multiplication to $a0
-        out.println( "addiu $sp, $sp, 4" );  // pop
-
-        out.println( "sw $a0, 0($sp)" );     // push value to stack
-        out.println( "addiu $sp, $sp, -4" );
-
+        out.mem( "sw", "$a0", 0, "$sp" );     // push e2 value to stack
+        out.op( "addiu", "$sp", "$sp", -4 );
 
         n.e1.accept( this );
 
-        out.println( "lw $t1, 8($sp)" );     // e2
-        out.println( "lw $t2, 0($a0)" );     // length
-        out.println( "bge $t1, $t2, _array_index_out_of_bound_exception" );
+        out.mem( "lw", "$t1", 4, "$sp" );     // e2
+        out.mem( "lw", "$t2", 0, "$a0" );     // length
+        out.op( "bgeu", "$t1", "$t2", "_array_index_out_of_bound_exception" ); // unsigned: a negative index is out of bound too
 
-        out.println( "lw $t1, 4($sp)" );     // $t1 = stack top
-        out.println( "add $a0, $a0, $t1" );  // address + index
-        out.println( "addiu $sp, $sp, 4" );  // pop
-        out.println( "addiu $sp, $sp, 4" );  // pop e2
-        out.println( "lw $a0, 0($a0)\n" );
+        out.op( "sll", "$t1", "$t1", 2 );    // index * 4
+        out.op( "add", "$a0", "$a0", "$t1" );  // address + index
+        out.op( "addiu", "$sp", "$sp", 4 );  // pop e2
+        out.mem( "lw", "$a0", 4, "$a0" );   // the elements start after the length
+        out.blank();
     }
 
     // Exp e;
@@ -394,7 +454,8 @@ public class CodeGenVisitor extends DepthFirstVisitor
     public void visit( ArrayLength n )
     {
         n.e.accept( this );
-        out.println( "lw $a0, 0($a0)\n" );
+        out.mem( "lw", "$a0", 0, "$a0" );
+        out.blank();
     }
 
     // Exp e;
@@ -413,69 +474,91 @@ public class CodeGenVisitor extends DepthFirstVisitor
         Method prevMethod = currMethod;
         if ( null == callClass )
         {
-            System.out.println( "Call class is null when call method " + n.i.toString() );
-            System.exit( -1 );
+            throw new CompileError( "Call class is null when call method " + n.i.toString() );
         }
 
         String id = n.i.toString();
         Class  callClass2 = callClass; // backup callClass since callClass may change when evaluate parameters
         Method callMethod = null;
 
-        Class c = callClass2; // method class
-        String class_name = c.getId();
-        Method m = null;
-        while ( c != null )
-        {
-            if( c.containsMethod( id ) )
-            {
-                m = c.getMethod( id );
-                break;
-            }
-            if ( null == c.parent() )
-            {
-                c = null;
-            }
-            else
-            {
-                c = symbolTable.getClass( c.parent() );
-            }
-        }
+        Method m = symbolTable.findMethod( callClass2, id );
         if ( null == m )
         {
-            System.out.println( "Cannnot find method " + id + " in class " + class_name );
-            System.exit( -1 );
+            throw new CompileError( "Cannnot find method " + id + " in class " + callClass2.getId() );
         }
+        Class c = m.owner(); // method class
         callMethod = m;
 
-        // frame layout
-        // old fp
+        // arguments on the stack (popped by the callee)
         // this
         // en
         // e...
         // e1
-        out.println( "sw $fp, 0($sp) # push $fp, Call class " + callClass.getId() + " method " +
-                     currMethod.getId() ); // push $fp
-        out.println( "addiu $sp, $sp, -4" );
-        out.println( "sw $a0, 0($sp) # push This " );
-        out.println( "addiu $sp, $sp, -4\n" );
+        // and this in $a0, e1..e3 in $a1-$a3 too
+        int args = n.el.size();
+        boolean dynamic = symbolTable.isOverridden( callClass2, id );
+        if ( args > 0 )
+        {
+            out.mem( "sw", "$a0", 0, "$sp" );
+            out.comment( "push This, Call class " + callClass.getId() + " method " + id );
+            out.op( "addiu", "$sp", "$sp", -4 );
+            out.blank();
+        }
 
         // set parameter
-        for ( int i = n.el.size() - 1; i >= 0; i-- )
+        for ( int i = args - 1; i >= 0; i-- )
         {
             n.el.elementAt( i ).accept( this );
-            out.println( "sw $a0, 0($sp) # push e" + i );
-            out.println( "addiu $sp, $sp, -4\n" );
+            out.mem( "sw", "$a0", 0, "$sp" );
+            out.comment( "push e", i );
+            out.op( "addiu", "$sp", "$sp", -4 );
+            out.blank();
+        }
+
+        if ( args > 0 )
+        {
+            // Only a frameless method reads its parameters from $a1-$a3,
+            // the others from the stack
+            if ( dynamic || frameless.contains( callMethod ) )
+            {
+                out.op( "move", "$a1", "$a0" );
+                out.comment( "e0" );
+                for ( int i = 1; i < args && i < 3; i++ )
+                {
+                    out.mem( "lw", "$a" + ( i + 1 ), 4 * ( i + 1 ), "$sp" );
+                    out.comment( "e", i );
+                }
+            }
+            out.mem( "lw", "$a0", 4 * ( args + 1 ), "$sp" );
+            out.comment( "load This" );
         }
 
         currClass  = callClass2;
         currMethod = callMethod;
         // call body
-        //String label = get_function_label( currClass.getId(), currMethod.getId() );
-        String label = get_function_label( c.getId(), currMethod.getId() );
-        out.println( "jal " + label + "\n" );
+        if ( dynamic )
+        {
+            // dynamic dispatch through the dispatch table of the receiver
+            int slot = symbolTable.getMethodSlot( callClass2, id );
+            out.op( "beq", "$a0", "$zero", "_null_pointer_exception" );
+            out.mem( "lw", "$t0", 8, "$a0" );
+            out.comment( "dispatch ptr" );
+            out.mem( "lw", "$t0", 4 * slot, "$t0" );
+            out.comment( id );
+            out.op( "jalr", "$t0" );
+            out.blank();
+        }
+        else
+        {
+            // no subclass overrides the method: call it directly
+            String label = get_function_label( c.getId(), currMethod.getId() );
+            out.op( "jal", label );
+            out.blank();
+        }
 
         // handle return value
-        out.println( "move $a0, $v0 # load return value" );
+        out.op( "move", "$a0", "$v0" );
+        out.comment( "load return value" );
         // set callClass from return type
         set_call_class( currMethod.type() );
 
@@ -488,104 +571,41 @@ public class CodeGenVisitor extends DepthFirstVisitor
     public void visit( NewArray n )
     {
         n.e.accept( this );
-        // li $a0, 24 # 5 elements, 4 bytes each, plus 4 bytes for length
-        out.println( "addi $a0, $a0, 1 # NewArray" );   // size + 1 (length)
-        out.println( "move $t2, $a0\n" );    // size of array
-        out.println( "sw $a0, 0($sp)" );     // push value to stack
-        out.println( "addiu $sp, $sp, -4" );
-        out.println( "lw $t1, 4($sp)" );     // $t1 = stack top
-        out.println( "li $a0, 4" );          // $a0 = 4
-        out.println( "mult $t1, $a0" );      // $a0 = stack top * 4
-        out.println( "mflo $a0" );           // 32 least significant bits of multiplication to $a0
-        out.println( "addiu $sp, $sp, 4" );  // pop
-        out.println( "li $v0, 9" );          // syscall with service 9 = allocate space on heap
-        out.println( "syscall" );
-        out.println( "move $a0, $v0\n" );    // store the address of A in stack
-
-        // initialize
-        out.println( "sw $a0, 0($sp) # initialize array" ); // push value to stack
-        out.println( "addiu $sp, $sp, -4" );
-
-        // set the size of the array
-        out.println( "addi $t2, $t2, -1" );
-        out.println( "sw $t2, 0($a0)\n" );   // set the size of the array
-
-        String label1 = "$Initialize" + label_count++;
-        String label2 = "$Ini_loop" + label_count++;
-        String label3 = "$exit" + label_count++;
-        out.println( label1 + ":\n" );
-        out.println( "li $t0, 1 \n" ); // set the start index of for-loop
-        out.println( label2 + ":\n" );
-        out.println( "bgt $t0, $t2, " + label3 + "\n" ); // go to the branch exit if $t0 > $t2
-        out.println( "addi $a0, $a0, 4" );        // go to the address of the current element
-        out.println( "sw $zero, 0($a0)\n" );      // set the element to be 0
-        out.println( "addi $t0, $t0, 1" );        // increase the index
-        out.println( "j " + label2 );             // jump to the beginning of the loop
-
-        out.println( label3 + ":\n" );
-
-
-        out.println( "lw $a0, 4($sp)" );     // $t1 = stack top
-        out.println( "addiu $sp, $sp, 4" );  // pop
+        out.op( "jal", "_alloc_int_array" );   // the elements are 0 already
+        out.comment( "NewArray" );
+        out.op( "move", "$a0", "$v0" );
+        out.blank();
     }
 
     // Identifier i;
     // cgen: new n
     public void visit( NewObject n )
     {
-        Class c = symbolTable.getClass( n.i.toString() );
+        Class c = symbolTable.getClass( n.i.s, n.i.id );
         // set callClass here
         callClass = c;
         if ( null == c )
         {
-            System.out.println( "Cannot find class " + n.i.toString() );
-            System.exit( -1 );
+            throw new CompileError( "Cannot find class " + n.i.toString() );
         }
 
-        // initialize
-        int size = get_object_size( n.i.toString() );
-        out.println( "li $a0, " + size * 4 + " # NewObject" ); // size * 4 bytes
-        out.println( "li $v0, 9" );           // syscall with service 9 = allocate space on heap
-        out.println( "syscall" );
-        out.println( "move $a0, $v0\n" );     // store the address of A in stack
-
-        out.println( "sw $a0, 0($sp)" );      // push value to stack
-        out.println( "addiu $sp, $sp, -4" );
-
-        out.println( "li $t0, " + c.idx() );  // class idx
-        out.println( "sw $t0, 0($a0)\n" );    // set the class idx of the array
-        out.println( "addi $a0, $a0, 4" );    // go to the address of the current element
-        out.println( "li $t0, " + size * 4 ); // object size
-        out.println( "sw $t0, 0($a0)\n" );    // set the object size of the array
-        out.println( "addi $a0, $a0, 4" );    // go to the address of the current element
-        out.println( "li $t0, " + 0 );        // dispatch ptr
-        out.println( "sw $t0, 0($a0)\n" );    // set the dispatch ptr of the array
-        out.println( "li $t2, " + ( size - 3 ) ); // object attribute size
-
+        int size = symbolTable.getObjectSize( n.i.toString() );
         if ( ( size - 3 ) < 0 )
         {
-            System.out.println( "Class " + n.i.toString() + " object size " + size + " too small" );
-            System.exit( -1 );
+            throw new CompileError( "Class " + n.i.toString() + " object size " + size + " too small" );
         }
 
-        String label1 = "$Initialize" + label_count++;
-        String label2 = "$Ini_loop" + label_count++;
-        String label3 = "$exit" + label_count++;
-        out.println( label1 + ":\n" );
-        out.println( "li $t0, 0 \n" );            // set the start index of for-loop
-        out.println( label2 + ":\n" );
-        // bge or bgt???
-        out.println( "bge $t0, $t2, " + label3 + "\n" ); // go to the branch exit if $t0 > $t2
-        out.println( "addi $a0, $a0, 4" );        // go to the address of the current element
-        out.println( "sw $zero, 0($a0)\n" );      // set the element to be 0
-        out.println( "addi $t0, $t0, 1" );        // increase the index
-        out.println( "j " + label2 );             // jump to the beginning of the loop
-
-        out.println( label3 + ":\n" );
-
-
-        out.println( "lw $a0, 4($sp)" );     // $t1 = stack top
-        out.println( "addiu $sp, $sp, 4" );  // pop
+        // The attributes are 0 already, only the header is set
+        MipsRuntime.alloc_object( out, size * 4, "$Alloc" + label_count++ ); // size * 4 bytes
+        out.op( "move", "$a0", "$v0" );
+        out.comment( "NewObject" );
+        out.op( "li", "$t0", c.idx() );  // class idx
+        out.mem( "sw", "$t0", 0, "$a0" );
+        out.op( "li", "$t0", size * 4 ); // object size
+        out.mem( "sw", "$t0", 4, "$a0" );
+        out.op( "la", "$t0", get_vtable_label( c.getId() ) ); // dispatch ptr
+        out.mem( "sw", "$t0", 8, "$a0" );
+        out.blank();
     }
 
     // Exp e;
@@ -593,7 +613,9 @@ public class CodeGenVisitor extends DepthFirstVisitor
     public void visit( Not n )
     {
         n.e.accept( this );
-        out.println( "nor $a0, $a0, $a0 # Not \n" ); // nor $t1, $t1, $t1
+        out.op( "nor", "$a0", "$a0", "$a0" ); // nor $t1, $t1, $t1
+        out.comment( "Not" );
+        out.blank();
     }
 
     // cgen: this
@@ -601,228 +623,152 @@ public class CodeGenVisitor extends DepthFirstVisitor
     {
         // set callClass here
         callClass = currClass;
-        out.println( "lw $a0, " + 4 * ( currMethod.params.size() + 1 ) + "($fp) # load this\n" );
+        cgen_load_this( "$a0" );
+        out.blank();
     }
 
     // int i;
     // cgen: Load immediate the value of n.i
     public void visit( IntegerLiteral n )
     {
-        out.println( "li $a0, " + n.i + " # IntegerLiteral " + n.i + "\n" );
+        out.op( "li", "$a0", n.i );
+        out.comment( "IntegerLiteral ", n.i );
+        out.blank();
     }
 
     // cgen: Load immeidate the value of "true"
     public void visit( True n )
     {
-        out.println( "li $a0, 1 # True" );
+        out.op( "li", "$a0", 1 );
+        out.comment( "True" );
     }
 
     // cgen: Load immeidate the value of "false"
     public void visit( False n )
     {
-        out.println( "li $a0, 0 # False\n" );
+        out.op( "li", "$a0", 0 );
+        out.comment( "False" );
+        out.blank();
     }
 
     // String s;
     // cgen: Load the value of the variable n.s (which can be a local variable, parameter, or field)
     public void visit( IdentifierExp n )
     {
-        // local variable
-        Variable v = null;
-        if ( currMethod.containsParam( n.s ) )
-        {
-            v = currMethod.getParam( n.s );
-            out.println( "lw $a0, " + 4 * ( v.idx() + 1 ) + "($fp) # load parameter " + v.id() + "\n" );
+        Binding b = bound( n.binding, n.s, currMethod );
+        cgen_load_var( b, n.s );
+        // set callClass here
+        set_call_class( b.type );
+    }
 
-        }
-        else if ( currMethod.containsVar( n.s ) )
-        {
-            v = currMethod.getVar( n.s );
-            out.println( "lw $a0, " + -4 * ( v.idx() + 1 ) + "($fp) # load local variable " + v.id() + "\n" );
-        }
-        else if ( contains_var( currClass, n.s ) )
+    // The binding of variable "id" used in method "m" (see BindVisitor)
+    static Binding bound( Binding b, String id, Method m )
+    {
+        if ( b == null )
         {
-            v = get_var( currClass, n.s );
-            out.println( "lw $a0, " + 4 * ( currMethod.params.size() + 1 ) + "($fp) # load this" );
-            int idx = get_var_index( currClass, n.s );
-            out.println( "lw $a0, " + 4 * ( idx ) + "($a0) # load object variable " + v.id() + "\n" );
+            throw new CompileError( "Cannot find " + id + " in method " + m.getId() );
         }
-        else
+        return b;
+    }
+
+    // cgen: load the value of variable "id", bound to "b", in $a0
+    void cgen_load_var( Binding b, String id )
+    {
+        switch ( b.kind )
         {
-            System.out.println( "Cannot find " + n.s + " in method " + currMethod.getId() );
-            System.exit( -1 );
+            case PARAM:
+                if ( leaf )
+                {
+                    out.op( "move", "$a0", leaf_register( b ) );
+                }
+                else
+                {
+                    out.mem( "lw", "$a0", 4 * ( b.slot + 1 ), "$fp" );
+                }
+                out.comment( "load parameter ", id );
+                out.blank();
+                break;
+            case LOCAL:
+                if ( leaf )
+                {
+                    out.op( "move", "$a0", leaf_register( b ) );
+                }
+                else
+                {
+                    out.mem( "lw", "$a0", -4 * ( b.slot + 1 ), "$fp" );
+                }
+                out.comment( "load local variable ", id );
+                out.blank();
+                break;
+            default:
+                cgen_load_this( "$a0" );
+                out.mem( "lw", "$a0", 4 * b.slot, "$a0" );
+                out.comment( "load object variable ", id );
+                out.blank();
+                break;
         }
-        // set callClass here
-        set_call_class( v.type() );
     }
 
-    void cgen_supporting_functions()
+    // cgen: load this in register "r"
+    void cgen_load_this( String r )
     {
-        out.println(
-            "_print_int: # System.out.println(int)\n" +
-            "li $v0, 1\n" +
-            "syscall\n" +
-            "la $a0, newline\n" +
-            "li $a1, 1\n" +
-            "li $v0, 4   # print newline\n" +
-            "syscall\n" +
-            "jr $ra\n"
-        );
-
-        out.println(
-            "_null_pointer_exception:\n" +
-            "la $a0, msg_null_pointer_exception\n" +
-            "li $a1, 23\n" +
-            "li $v0, 4\n" +
-            "syscall\n" +
-            "li $v0, 10\n" +
-            "syscall\n"
-        );
-
-        out.println(
-            "_array_index_out_of_bound_exception:\n" +
-            "la $a0, msg_index_out_of_bound_exception\n" +
-            "li $a1, 29\n" +
-            "li $v0, 4\n" +
-            "syscall\n" +
-            "li $v0, 10\n" +
-            "syscall\n"
-        );
-
-        out.println(
-            "_alloc_int_array: # new int [$a0]\n" +
-            "addi $a2, $a0, 0  # Save length in $a2\n" +
-            "addi $a0, $a0, 1  # One more word to store the length\n" +
-            "sll $a0, $a0, 2   # multiple by 4 bytes\n" +
-            "li $v0, 9         # allocate space\n" +
-            "syscall\n" +
-            "\n" +
-            "sw $a2, 0($v0)    # Store array length\n" +
-            "addi $t1, $v0, 4  # begin address = ($v0 + 4); address of the first element\n" +
-            "add $t2, $v0, $a0 # loop until ($v0 + 4*(length+1)), the address after the last element\n" +
-            "\n" +
-            "_alloc_int_array_loop:\n" +
-            "beq $t1, $t2, _alloc_int_array_loop_end\n" +
-            "sw $0, 0($t1)\n" +
-            "addi $t1, $t1, 4\n" +
-            "j _alloc_int_array_loop\n" +
-            "_alloc_int_array_loop_end:\n" +
-            "\n" +
-            "jr $ra\n"
-        );
-    }
-
-    int get_object_size( String s )
-    {
-
-        Class c = symbolTable.getClass( s );
-        if ( null == c )
+        if ( leaf )
         {
-            System.out.println( "Cannot find class " + s );
-            System.exit( -1 );
+            out.op( "move", r, "$t3" );
         }
-
-        int field_size = 0;
-        while ( c != null )
+        else
         {
-            field_size += c.fields.size();
-            if ( null == c.parent() )
-            {
-                c = null;
-            }
-            else
-            {
-                c = symbolTable.getClass( c.parent() );
-            }
+            out.mem( "lw", r, -4 * ( currMethod.getVarSize() + 2 ), "$fp" );
         }
-        // Class Tag
-        // Object Size
-        // Dispatch Ptr
-        // Attribute 1
-        // Attribute 2 ...
-        return field_size + 3;
+        out.comment( "load this" );
     }
 
-    int get_var_index( Class c, String s )
+    // The register of parameter or local variable "b" in a frameless
+    // method: $a1-$a3 for the parameters, $t4-$t9 for the local variables
+    static String leaf_register( Binding b )
     {
-        boolean found = false;
-        int field_size = 0;
-        int idx = 0;
-        while ( c != null )
+        if ( b.kind == Binding.Kind.PARAM )
         {
-            if( found )
-            {
-                field_size += c.fields.size();
-            }
-            if( !found && c.containsVar( s ) )
-            {
-                Variable v = c.getVar( s );
-                idx = v.idx();
-                found = true;
-            }
-            if ( null == c.parent() )
-            {
-                c = null;
-            }
-            else
-            {
-                c = symbolTable.getClass( c.parent() );
-            }
+            return "$a" + ( b.slot + 1 );
         }
-        // Class Tag
-        // Object Size
-        // Dispatch Ptr
-        // Attribute 1
-        // Attribute 2 ...
-        return field_size + idx + 3;
+        return "$t" + ( b.slot + 4 );
     }
 
-    Variable get_var( Class c, String s )
+    void cgen_supporting_functions()
     {
-        Variable v = null;
-        while ( c != null )
-        {
-            if( c.containsVar( s ) )
-            {
-                v = c.getVar( s );
-                break;
-            }
+        MipsRuntime.supporting_functions( out );
+    }
 
-            if ( null == c.parent() )
-            {
-                c = null;
-            }
-            else
-            {
-                c = symbolTable.getClass( c.parent() );
-            }
-        }
-        return v;
+    static String get_function_label( String class_name, String method_name )
+    {
+        return class_name + "_" + method_name + "_f_entry";
+    }
+
+    static String get_vtable_label( String class_name )
+    {
+        return class_name + "_vtable";
     }
 
-    boolean contains_var(Class c, String s)
+    // The entry labels of the methods of class "c", by dispatch table slot
+    static Vector<String> get_vtable_entries( SymbolTable symbolTable, Class c )
     {
-        while ( c != null )
+        Vector<String> labels = new Vector<String>();
+        for ( Method m : symbolTable.getVtable( c ) )
         {
-            if( c.containsVar( s ) )
-            {
-                return true;
-            }
-            if ( null == c.parent() )
-            {
-                c = null;
-            }
-            else
-            {
-                c = symbolTable.getClass( c.parent() );
-            }
+            labels.addElement( get_function_label( m.owner().getId(), m.getId() ) );
         }
-        return false;
+        return labels;
     }
 
-    String get_function_label( String class_name, String method_name )
+    // The pointer maps of the classes, by class tag (for the collector)
+    static Vector<int[]> get_pointer_maps( SymbolTable symbolTable )
     {
-        return class_name + "_" + method_name + "_f_entry";
+        Vector<int[]> maps = new Vector<int[]>();
+        for ( Class c : symbolTable.getClasses() )
+        {
+            maps.addElement( symbolTable.getPointerOffsets( c ) );
+        }
+        return maps;
     }
 
     void set_call_class( Type type )
@@ -834,12 +780,11 @@ public class CodeGenVisitor extends DepthFirstVisitor
         }
 
         IdentifierType id_type = ( IdentifierType ) type;
-        if ( ! symbolTable.containsClass( id_type.s ) )
+        callClass = symbolTable.getClass( id_type );
+        if ( callClass == null )
         {
-            System.out.println( "Cannnot find class " + id_type.s );
-            System.exit( -1 );
+            throw new CompileError( "Cannnot find class " + id_type.s );
         }
-        callClass = symbolTable.getClass( id_type.s );
     }
     
     void check_null_pointer( Type type )
@@ -853,30 +798,12 @@ public class CodeGenVisitor extends DepthFirstVisitor
 
     String get_method( Class c, String method_name ) 
     {
-        String class_name = c.getId();
-        Method m = null;
-        while ( c != null )
-        {
-            if( c.containsMethod( method_name ) )
-            {
-                m = c.getMethod( method_name );
-                break;
-            }
-            if ( null == c.parent() )
-            {
-                c = null;
-            }
-            else
-            {
-                c = symbolTable.getClass( c.parent() );
-            }
-        }
+        Method m = symbolTable.findMethod( c, method_name );
         if ( null == m )
         {
-            System.out.println( "Cannnot find method " + method_name + " in class " + class_name );
-            System.exit( -1 );
+            throw new CompileError( "Cannnot find method " + method_name + " in class " + c.getId() );
         }
-        return get_function_label( c.getId(), m.getId() );
+        return get_function_label( m.owner().getId(), m.getId() );
     } 
 }
 
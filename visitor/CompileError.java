@@ -0,0 +1,21 @@
+package visitor;
+
+// A semantic error in the program being compiled (undefined name, type
+// error, ...). The message is what the compiler reports to the user.
+public class CompileError extends RuntimeException
+{
+    int status;   // exit status of the command line compiler
+
+    public CompileError( String message )
+    {
+        this( message, -1 );
+    }
+
+    public CompileError( String message, int status )
+    {
+        super( message );
+        this.status = status;
+    }
+
+    public int status() { return status; }
+}
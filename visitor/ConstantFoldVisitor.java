@@ -0,0 +1,292 @@
+package visitor;
+
+import syntaxtree.*;
+
+// Fold the expressions whose operands are literals and drop the arms of
+// If / While that can never run. The tree is rewritten in place, after
+// type checking, so both code generators see the folded program.
+//
+// The folded values are the ones the generated code would compute:
+//   - Times wraps around like mult / mflo
+//   - Plus and Minus are not folded when they overflow, since add / sub
+//     trap at run time
+//   - And is only folded when both operands are literals (e2 is always
+//     evaluated, so a call in e2 must stay)
+public class ConstantFoldVisitor extends DepthFirstVisitor
+{
+    Exp exp;          // the folded form of the last expression visited
+    Statement stmt;   // the folded form of the last statement visited
+
+    Exp fold( Exp e )
+    {
+        e.accept( this );
+        return exp;
+    }
+
+    Statement fold( Statement s )
+    {
+        s.accept( this );
+        return stmt;
+    }
+
+    static boolean is_int( Exp e )
+    {
+        return e instanceof IntegerLiteral;
+    }
+
+    static boolean is_bool( Exp e )
+    {
+        return ( e instanceof True ) || ( e instanceof False );
+    }
+
+    static Exp bool( boolean b )
+    {
+        return b ? ( Exp ) new True() : ( Exp ) new False();
+    }
+
+    static boolean overflows( long v )
+    {
+        return v != ( int ) v;
+    }
+
+    // Identifier i1,i2;
+    // Statement s;
+    public void visit( MainClass n )
+    {
+        n.s = fold( n.s );
+    }
+
+    // Type t;
+    // Identifier i;
+    // FormalList fl;
+    // VarDeclList vl;
+    // StatementList sl;
+    // Exp e;
+    public void visit( MethodDecl n )
+    {
+        for ( int i = 0; i < n.sl.size(); i++ )
+        {
+            n.sl.setElementAt( fold( n.sl.elementAt( i ) ), i );
+        }
+        n.e = fold( n.e );
+    }
+
+    // StatementList sl;
+    public void visit( Block n )
+    {
+        for ( int i = 0; i < n.sl.size(); i++ )
+        {
+            n.sl.setElementAt( fold( n.sl.elementAt( i ) ), i );
+        }
+        stmt = n;
+    }
+
+    // Exp e;
+    // Statement s1,s2;
+    // fold: if (true) s1 else s2 => s1, if (false) s1 else s2 => s2
+    public void visit( If n )
+    {
+        n.e = fold( n.e );
+        n.s1 = fold( n.s1 );
+        n.s2 = fold( n.s2 );
+        if ( n.e instanceof True )
+        {
+            stmt = n.s1;
+        }
+        else if ( n.e instanceof False )
+        {
+            stmt = n.s2;
+        }
+        else
+        {
+            stmt = n;
+        }
+    }
+
+    // Exp e;
+    // Statement s;
+    // fold: while (false) s => {}
+    public void visit( While n )
+    {
+        n.e = fold( n.e );
+        n.s = fold( n.s );
+        stmt = ( n.e instanceof False ) ? new Block( new StatementList() ) : n;
+    }
+
+    // Exp e;
+    public void visit( Print n )
+    {
+        n.e = fold( n.e );
+        stmt = n;
+    }
+
+    // Identifier i;
+    // Exp e;
+    public void visit( Assign n )
+    {
+        n.e = fold( n.e );
+        stmt = n;
+    }
+
+    // Identifier i;
+    // Exp e1,e2;
+    public void visit( ArrayAssign n )
+    {
+        n.e1 = fold( n.e1 );
+        n.e2 = fold( n.e2 );
+        stmt = n;
+    }
+
+    // Exp e1,e2;
+    public void visit( And n )
+    {
+        n.e1 = fold( n.e1 );
+        n.e2 = fold( n.e2 );
+        if ( is_bool( n.e1 ) && is_bool( n.e2 ) )
+        {
+            exp = bool( ( n.e1 instanceof True ) && ( n.e2 instanceof True ) );
+            return;
+        }
+        exp = n;
+    }
+
+    // Exp e1,e2;
+    public void visit( LessThan n )
+    {
+        n.e1 = fold( n.e1 );
+        n.e2 = fold( n.e2 );
+        if ( is_int( n.e1 ) && is_int( n.e2 ) )
+        {
+            exp = bool( ( ( IntegerLiteral ) n.e1 ).i < ( ( IntegerLiteral ) n.e2 ).i );
+            return;
+        }
+        exp = n;
+    }
+
+    // Exp e1,e2;
+    public void visit( Plus n )
+    {
+        n.e1 = fold( n.e1 );
+        n.e2 = fold( n.e2 );
+        if ( is_int( n.e1 ) && is_int( n.e2 ) )
+        {
+            long v = ( long ) ( ( IntegerLiteral ) n.e1 ).i + ( ( IntegerLiteral ) n.e2 ).i;
+            if ( !overflows( v ) )
+            {
+                exp = new IntegerLiteral( ( int ) v );
+                return;
+            }
+        }
+        exp = n;
+    }
+
+    // Exp e1,e2;
+    public void visit( Minus n )
+    {
+        n.e1 = fold( n.e1 );
+        n.e2 = fold( n.e2 );
+        if ( is_int( n.e1 ) && is_int( n.e2 ) )
+        {
+            long v = ( long ) ( ( IntegerLiteral ) n.e1 ).i - ( ( IntegerLiteral ) n.e2 ).i;
+            if ( !overflows( v ) )
+            {
+                exp = new IntegerLiteral( ( int ) v );
+                return;
+            }
+        }
+        exp = n;
+    }
+
+    // Exp e1,e2;
+    public void visit( Times n )
+    {
+        n.e1 = fold( n.e1 );
+        n.e2 = fold( n.e2 );
+        if ( is_int( n.e1 ) && is_int( n.e2 ) )
+        {
+            exp = new IntegerLiteral( ( ( IntegerLiteral ) n.e1 ).i * ( ( IntegerLiteral ) n.e2 ).i );
+            return;
+        }
+        exp = n;
+    }
+
+    // Exp e1,e2;
+    public void visit( ArrayLookup n )
+    {
+        n.e1 = fold( n.e1 );
+        n.e2 = fold( n.e2 );
+        exp = n;
+    }
+
+    // Exp e;
+    public void visit( ArrayLength n )
+    {
+        n.e = fold( n.e );
+        exp = n;
+    }
+
+    // Exp e;
+    // Identifier i;
+    // ExpList el;
+    public void visit( Call n )
+    {
+        n.e = fold( n.e );
+        for ( int i = 0; i < n.el.size(); i++ )
+        {
+            n.el.setElementAt( fold( n.el.elementAt( i ) ), i );
+        }
+        exp = n;
+    }
+
+    // int i;
+    public void visit( IntegerLiteral n )
+    {
+        exp = n;
+    }
+
+    public void visit( True n )
+    {
+        exp = n;
+    }
+
+    public void visit( False n )
+    {
+        exp = n;
+    }
+
+    // String s;
+    public void visit( IdentifierExp n )
+    {
+        exp = n;
+    }
+
+    public void visit( This n )
+    {
+        exp = n;
+    }
+
+    // Exp e;
+    public void visit( NewArray n )
+    {
+        n.e = fold( n.e );
+        exp = n;
+    }
+
+    // Identifier i;
+    public void visit( NewObject n )
+    {
+        exp = n;
+    }
+
+    // Exp e;
+    public void visit( Not n )
+    {
+        n.e = fold( n.e );
+        if ( is_bool( n.e ) )
+        {
+            exp = bool( n.e instanceof False );
+            return;
+        }
+        exp = n;
+    }
+}
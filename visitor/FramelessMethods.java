@@ -0,0 +1,88 @@
+package visitor;
+
+import syntaxtree.*;
+import java.util.HashSet;
+
+// The methods that CodeGenVisitor generates without a stack frame: leaf
+// methods (no call, print or allocation, so no jal and $ra stays as it
+// came) with at most three parameters and six local variables. They keep
+// "this" in $t3, the parameters in $a1-$a3, where the caller passes them,
+// and the local variables in $t4-$t9, which the stack machine code does
+// not use otherwise.
+class FramelessMethods extends DepthFirstVisitor
+{
+    static final int MAX_PARAMS = 3;
+    static final int MAX_VARS = 6;
+
+    SymbolTable symbolTable;
+    HashSet<Method> methods;
+    Class currClass;
+    boolean calls;      // the method being visited is not a leaf
+
+    FramelessMethods( SymbolTable s )
+    {
+        symbolTable = s;
+        methods = new HashSet<Method>();
+    }
+
+    public void visit( MainClass n )
+    {
+    }
+
+    public void visit( ClassDeclSimple n )
+    {
+        currClass = symbolTable.getClass( n.i.toString() );
+        for ( int i = 0; i < n.ml.size(); i++ )
+        {
+            n.ml.elementAt( i ).accept( this );
+        }
+    }
+
+    public void visit( ClassDeclExtends n )
+    {
+        currClass = symbolTable.getClass( n.i.toString() );
+        for ( int i = 0; i < n.ml.size(); i++ )
+        {
+            n.ml.elementAt( i ).accept( this );
+        }
+    }
+
+    public void visit( MethodDecl n )
+    {
+        Method m = currClass.getMethod( n.i.toString() );
+        if ( m == null || m.params.size() > MAX_PARAMS || m.getVarSize() > MAX_VARS )
+        {
+            return;
+        }
+        calls = false;
+        for ( int i = 0; i < n.sl.size(); i++ )
+        {
+            n.sl.elementAt( i ).accept( this );
+        }
+        n.e.accept( this );
+        if ( !calls )
+        {
+            methods.add( m );
+        }
+    }
+
+    public void visit( Call n )
+    {
+        calls = true;
+    }
+
+    public void visit( Print n )
+    {
+        calls = true;
+    }
+
+    public void visit( NewArray n )
+    {
+        calls = true;
+    }
+
+    public void visit( NewObject n )
+    {
+        calls = true;
+    }
+}
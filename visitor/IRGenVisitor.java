@@ -0,0 +1,512 @@
+package visitor;
+
+import syntaxtree.*;
+import ir.*;
+
+// Lower the AST into three-address code (see ir.Quad).
+//
+// Instead of leaving the value of an expression in $a0 and spilling operands
+// to the stack like CodeGenVisitor, every expression leaves its value in a
+// temp ("result"). Parameters and local variables are temps as well, so that
+// ir.LinearScan can keep them in registers.
+//
+// The evaluation order (and therefore the output of a program) is the same
+// as with CodeGenVisitor.
+public class IRGenVisitor extends DepthFirstVisitor
+{
+    SymbolTable symbolTable;
+    Class currClass;
+    Method currMethod;
+    Class callClass;   // class of the last object expression (null if not an object)
+
+    IRProgram program;
+    IRMethod func;
+    Temp[] params;               // of currMethod, by position
+    Temp[] locals;               // local variables of currMethod, by position
+    Temp result;                 // value of the last expression
+    int loop_depth;
+    int label_count;
+
+    public IRGenVisitor( SymbolTable s )
+    {
+        symbolTable = s;
+        program = new IRProgram();
+        label_count = 0;
+    }
+
+    public IRProgram getProgram()
+    {
+        return program;
+    }
+
+    // MainClass m;
+    // ClassDeclList cl;
+    public void visit( Program n )
+    {
+        for ( int i = 0; i < symbolTable.getClasses().size(); i++ )
+        {
+            Class c = symbolTable.getClasses().elementAt( i );
+            program.addVtable( CodeGenVisitor.get_vtable_label( c.getId() ),
+                               CodeGenVisitor.get_vtable_entries( symbolTable, c ) );
+        }
+        program.setPointerMaps( CodeGenVisitor.get_pointer_maps( symbolTable ) );
+
+        n.m.accept( this );
+        for ( int i = 0; i < n.cl.size(); i++ )
+        {
+            n.cl.elementAt( i ).accept( this );
+        }
+    }
+
+    // Identifier i1,i2;
+    // VarDeclList vl;
+    // Statement s;
+    public void visit( MainClass n )
+    {
+        currClass = symbolTable.getClass( n.i1.toString() );
+        currMethod = currClass.getMethod( "main" ); // This is a hack (treat main() as instance method.)
+
+        func = new IRMethod( null );
+        params = new Temp[] { func.newTemp( n.i2.toString() ) };
+        locals = new Temp[n.vl.size()];
+        for ( int i = 0; i < n.vl.size(); i++ )
+        {
+            locals[i] = func.newTemp( n.vl.elementAt( i ).i.toString() );
+        }
+        loop_depth = 0;
+
+        n.s.accept( this );
+
+        program.setMain( func );
+    }
+
+    // Identifier i;
+    // VarDeclList vl;
+    // MethodDeclList ml;
+    public void visit( ClassDeclSimple n )
+    {
+        currClass = symbolTable.getClass( n.i.toString() );
+        for ( int i = 0; i < n.ml.size(); i++ )
+        {
+            n.ml.elementAt( i ).accept( this );
+        }
+    }
+
+    // Identifier i;
+    // Identifier j;
+    // VarDeclList vl;
+    // MethodDeclList ml;
+    public void visit( ClassDeclExtends n )
+    {
+        currClass = symbolTable.getClass( n.i.toString() );
+        for ( int i = 0; i < n.ml.size(); i++ )
+        {
+            n.ml.elementAt( i ).accept( this );
+        }
+    }
+
+    // Type t;
+    // Identifier i;
+    // FormalList fl;
+    // VarDeclList vl;
+    // StatementList sl;
+    // Exp e;
+    public void visit( MethodDecl n )
+    {
+        currMethod = currClass.getMethod( n.i.toString() );
+        if ( null == currMethod )
+        {
+            throw new CompileError( "Cannot find method " + n.i.toString() + " in class " + currClass.getId() );
+        }
+
+        func = new IRMethod( CodeGenVisitor.get_function_label( currClass.getId(), currMethod.getId() ) );
+        func.newThis();
+        params = new Temp[n.fl.size()];
+        for ( int i = 0; i < n.fl.size(); i++ )
+        {
+            params[i] = func.newParam( n.fl.elementAt( i ).i.toString() );
+        }
+        locals = new Temp[n.vl.size()];
+        for ( int i = 0; i < n.vl.size(); i++ )
+        {
+            locals[i] = func.newTemp( n.vl.elementAt( i ).i.toString() );
+        }
+        loop_depth = 0;
+
+        for ( int i = 0; i < n.sl.size(); i++ )
+        {
+            n.sl.elementAt( i ).accept( this );
+        }
+        n.e.accept( this );
+        emit( Quad.Op.RETURN, null, result, null, 0 );
+
+        program.addMethod( func );
+    }
+
+    // Exp e;
+    // Statement s1,s2;
+    // cgen: if (e) s1 else s2
+    public void visit( If n )
+    {
+        String label1 = new_label();
+        String label2 = new_label();
+
+        n.e.accept( this );
+        emit_jump( Quad.Op.IFFALSE, result, label1 );
+        n.s1.accept( this );
+        emit_jump( Quad.Op.JUMP, null, label2 );
+        emit_jump( Quad.Op.LABEL, null, label1 );
+        n.s2.accept( this );
+        emit_jump( Quad.Op.LABEL, null, label2 );
+    }
+
+    // Exp e;
+    // Statement s;
+    // cgen: while (e) s;
+    public void visit( While n )
+    {
+        String label1 = new_label();
+        String label2 = new_label();
+
+        loop_depth++;
+        emit_jump( Quad.Op.LABEL, null, label1 );
+        n.e.accept( this );
+        emit_jump( Quad.Op.IFFALSE, result, label2 );
+        n.s.accept( this );
+        emit_jump( Quad.Op.JUMP, null, label1 );
+        loop_depth--;
+        emit_jump( Quad.Op.LABEL, null, label2 );
+    }
+
+    // Exp e;
+    // cgen: System.out.println(e)
+    public void visit( Print n )
+    {
+        n.e.accept( this );
+        emit( Quad.Op.PRINT, null, result, null, 0 );
+    }
+
+    // Identifier i;
+    // Exp e;
+    // cgen: i = e
+    public void visit( Assign n )
+    {
+        n.e.accept( this );
+        Binding b = CodeGenVisitor.bound( n.i.binding, n.i.toString(), currMethod );
+        if ( b.kind == Binding.Kind.FIELD )
+        {
+            emit( Quad.Op.STORE, null, this_temp(), result, 4 * b.slot );
+        }
+        else
+        {
+            emit( Quad.Op.MOVE, var_temp( b ), result, null, 0 );
+        }
+    }
+
+    // Identifier i;
+    // Exp e1,e2;
+    // cgen: i[e1] = e2
+    public void visit( ArrayAssign n )
+    {
+        n.e2.accept( this );
+        Temp value = result;
+        n.e1.accept( this );
+        Temp index = result;
+        Temp array = load_var( n.i.binding, n.i.toString() );
+
+        Temp addr = array_address( array, index );
+        emit( Quad.Op.STORE, null, addr, value, 4 );
+    }
+
+    // Exp e1,e2;
+    // cgen: e1 && e2
+    public void visit( And n )
+    {
+        binop( Quad.Op.AND, n.e1, n.e2 );
+    }
+
+    // Exp e1,e2;
+    // cgen: e1 < e2
+    public void visit( LessThan n )
+    {
+        binop( Quad.Op.LT, n.e1, n.e2 );
+    }
+
+    // Exp e1,e2;
+    // cgen: e1 + e2
+    public void visit( Plus n )
+    {
+        binop( Quad.Op.ADD, n.e1, n.e2 );
+    }
+
+    // Exp e1,e2;
+    // cgen: e1 - e2
+    public void visit( Minus n )
+    {
+        binop( Quad.Op.SUB, n.e1, n.e2 );
+    }
+
+    // Exp e1,e2;
+    // cgen: e1 * e2
+    public void visit( Times n )
+    {
+        binop( Quad.Op.MUL, n.e1, n.e2 );
+    }
+
+    // Exp e1,e2;
+    // cgen: e1[e2]
+    public void visit( ArrayLookup n )
+    {
+        n.e2.accept( this );
+        Temp index = result;
+        n.e1.accept( this );
+        Temp array = result;
+
+        Temp addr = array_address( array, index );
+        result = func.newTemp();
+        emit( Quad.Op.LOAD, result, addr, null, 4 );
+        callClass = null;
+    }
+
+    // Exp e;
+    // cgen: e.length
+    public void visit( ArrayLength n )
+    {
+        n.e.accept( this );
+        Temp array = result;
+        emit( Quad.Op.NULLCHK, null, array, null, 0 );
+        result = func.newTemp();
+        emit( Quad.Op.LOAD, result, array, null, 0 );
+        callClass = null;
+    }
+
+    // Exp e;
+    // Identifier i;
+    // ExpList el;
+    // cgen: e.i(el)
+    public void visit( Call n )
+    {
+        n.e.accept( this );
+        if ( null == callClass )
+        {
+            throw new CompileError( "Call class is null when call method " + n.i.toString() );
+        }
+
+        String id = n.i.toString();
+        Class recvClass = callClass;  // evaluating the arguments changes callClass
+        Class c = symbolTable.getMethodClass( id, recvClass );
+        if ( null == c )
+        {
+            throw new CompileError( "Cannnot find method " + id + " in class " + recvClass.getId() );
+        }
+        Method m = c.getMethod( id );
+
+        // Arguments are evaluated from the last one to the first one
+        Temp[] args = new Temp[n.el.size() + 1];
+        args[0] = result;
+        for ( int i = n.el.size() - 1; i >= 0; i-- )
+        {
+            n.el.elementAt( i ).accept( this );
+            args[i + 1] = result;
+        }
+
+        result = func.newTemp();
+        Quad q;
+        if ( symbolTable.isOverridden( recvClass, id ) )
+        {
+            q = new Quad( Quad.Op.VCALL, result, null, null, symbolTable.getMethodSlot( recvClass, id ), id );
+        }
+        else
+        {
+            q = new Quad( Quad.Op.CALL, result, null, null, 0,
+                          CodeGenVisitor.get_function_label( c.getId(), m.getId() ) );
+        }
+        q.setArgs( args );
+        q.setLoopDepth( loop_depth );
+        func.add( q );
+
+        set_call_class( m.type() );
+    }
+
+    // int i;
+    public void visit( IntegerLiteral n )
+    {
+        result = func.newTemp();
+        emit( Quad.Op.LI, result, null, null, n.i );
+        callClass = null;
+    }
+
+    public void visit( True n )
+    {
+        result = func.newTemp();
+        emit( Quad.Op.LI, result, null, null, 1 );
+        callClass = null;
+    }
+
+    public void visit( False n )
+    {
+        result = func.newTemp();
+        emit( Quad.Op.LI, result, null, null, 0 );
+        callClass = null;
+    }
+
+    // String s;
+    public void visit( IdentifierExp n )
+    {
+        result = load_var( n.binding, n.s );
+    }
+
+    public void visit( This n )
+    {
+        result = this_temp();
+        callClass = currClass;
+    }
+
+    // Exp e;
+    // cgen: new int [e]
+    public void visit( NewArray n )
+    {
+        n.e.accept( this );
+        Temp length = result;
+        result = func.newTemp();
+        emit( Quad.Op.NEWARRAY, result, length, null, 0 );
+        callClass = null;
+    }
+
+    // Identifier i;
+    // cgen: new n
+    public void visit( NewObject n )
+    {
+        Class c = symbolTable.getClass( n.i.s, n.i.id );
+        if ( null == c )
+        {
+            throw new CompileError( "Cannot find class " + n.i.toString() );
+        }
+        int size = symbolTable.getObjectSize( n.i.toString() );
+
+        Temp obj = func.newTemp();
+        emit( Quad.Op.ALLOC, obj, null, null, size * 4 );
+
+        // Class Tag, Object Size, Dispatch Ptr (the attributes are 0 already)
+        Temp t = func.newTemp();
+        emit( Quad.Op.LI, t, null, null, c.idx() );
+        emit( Quad.Op.STORE, null, obj, t, 0 );
+        t = func.newTemp();
+        emit( Quad.Op.LI, t, null, null, size * 4 );
+        emit( Quad.Op.STORE, null, obj, t, 4 );
+        t = func.newTemp();
+        Quad la = new Quad( Quad.Op.LA, t, null, null, 0, CodeGenVisitor.get_vtable_label( c.getId() ) );
+        la.setLoopDepth( loop_depth );
+        func.add( la );
+        emit( Quad.Op.STORE, null, obj, t, 8 );
+
+        result = obj;
+        callClass = c;
+    }
+
+    // Exp e;
+    // cgen: !e
+    public void visit( Not n )
+    {
+        n.e.accept( this );
+        Temp a = result;
+        result = func.newTemp();
+        emit( Quad.Op.NOT, result, a, null, 0 );
+        callClass = null;
+    }
+
+    void emit( Quad.Op op, Temp dst, Temp src1, Temp src2, int imm )
+    {
+        Quad q = new Quad( op, dst, src1, src2, imm, null );
+        q.setLoopDepth( loop_depth );
+        func.add( q );
+    }
+
+    void emit_jump( Quad.Op op, Temp cond, String label )
+    {
+        Quad q = new Quad( op, null, cond, null, 0, label );
+        q.setLoopDepth( loop_depth );
+        func.add( q );
+    }
+
+    String new_label()
+    {
+        return "$L" + label_count++;
+    }
+
+    void binop( Quad.Op op, Exp e1, Exp e2 )
+    {
+        e1.accept( this );
+        Temp a = result;
+        e2.accept( this );
+        Temp b = result;
+        result = func.newTemp();
+        emit( op, result, a, b, 0 );
+        callClass = null;
+    }
+
+    // Check "array" and "index", return array + index * 4: array[index] is
+    // 4 bytes after it, since the length is stored in the first word.
+    Temp array_address( Temp array, Temp index )
+    {
+        emit( Quad.Op.NULLCHK, null, array, null, 0 );
+        emit( Quad.Op.BOUNDS, null, index, array, 0 );
+        Temp t1 = func.newTemp();
+        emit( Quad.Op.MUL, t1, index, null, 4 );
+        Temp t2 = func.newTemp();
+        emit( Quad.Op.ADD, t2, array, t1, 0 );
+        return t2;
+    }
+
+    Temp this_temp()
+    {
+        if ( func.thisTemp() == null )
+        {
+            // "this" inside main()
+            Temp t = func.newTemp();
+            emit( Quad.Op.LI, t, null, null, 0 );
+            return t;
+        }
+        return func.thisTemp();
+    }
+
+    // The value of variable "id" (a parameter, local variable or field)
+    Temp load_var( Binding b, String id )
+    {
+        b = CodeGenVisitor.bound( b, id, currMethod );
+        Temp t;
+        if ( b.kind == Binding.Kind.FIELD )
+        {
+            t = func.newTemp();
+            emit( Quad.Op.LOAD, t, this_temp(), null, 4 * b.slot );
+        }
+        else
+        {
+            t = var_temp( b );
+        }
+        set_call_class( b.type );
+        return t;
+    }
+
+    // The temp of a parameter or local variable
+    Temp var_temp( Binding b )
+    {
+        return ( b.kind == Binding.Kind.PARAM ) ? params[b.slot] : locals[b.slot];
+    }
+
+    void set_call_class( Type type )
+    {
+        if ( ! ( type instanceof IdentifierType ) )
+        {
+            callClass = null;
+            return;
+        }
+
+        IdentifierType id_type = ( IdentifierType ) type;
+        callClass = symbolTable.getClass( id_type );
+        if ( callClass == null )
+        {
+            throw new CompileError( "Cannnot find class " + id_type.s );
+        }
+    }
+}
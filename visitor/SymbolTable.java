@@ -1,22 +1,44 @@
 package visitor;
 import syntaxtree.*;
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Vector;
 
 // The global Symbol Table that maps class name to Class
+//
+// Once all the declarations are in, resolve() links every class to its
+// superclass and computes its object layout and dispatch table, so that
+// the lookups of the type checker and the code generators do not walk the
+// class hierarchy.
 class SymbolTable
 {
-    private Hashtable<String, Class> hashtable;
+    private HashMap<String, Class> hashtable;
+    private Vector<Class> classes;  // Classes in declaration order
+    private String mainClass;
+    private Class[] bySymbol;       // Classes by the number of their name (see Names)
+    private boolean numbered;       // All the classes are in bySymbol
 
     public SymbolTable()
     {
-        hashtable = new Hashtable<String, Class>();
+        hashtable = new HashMap<String, Class>();
+        classes = new Vector<Class>();
+        bySymbol = new Class[0];
+        numbered = true;
     }
 
     // Register the class name and map it to a new class (with its supperclass)
     // Return false if there is a name conflicts. Otherwise return true.
     public boolean addClass( String id, String parent )
+    {
+        return addClass( id, -1, parent );
+    }
+
+    // The same, for a class whose name is numbered "symbol" in Names
+    public boolean addClass( String id, int symbol, String parent )
     {
         if ( containsClass( id ) )
         {
@@ -24,11 +46,31 @@ class SymbolTable
         }
         else
         {
-            hashtable.put( id, new Class( id, parent, hashtable.size() ) );
+            Class c = new Class( id, symbol, parent, hashtable.size() );
+            hashtable.put( id, c );
+            classes.addElement( c );
+            if ( symbol < 0 )
+            {
+                numbered = false;
+            }
+            else
+            {
+                if ( symbol >= bySymbol.length )
+                {
+                    bySymbol = Arrays.copyOf( bySymbol, Math.max( symbol + 1, 2 * bySymbol.length ) );
+                }
+                bySymbol[symbol] = c;
+            }
         }
         return true;
     }
 
+    // All the classes in declaration order (the main class first)
+    public Vector<Class> getClasses()
+    {
+        return classes;
+    }
+
     // Return the Class that previously mapped to the specified name.
     // Return null if the specified is not found.
     public Class getClass( String id )
@@ -43,11 +85,123 @@ class SymbolTable
         }
     }
 
+    // The class named "id", numbered "symbol" in Names (null if there is
+    // none). Looked up by the number when the parser gave the name one.
+    public Class getClass( String id, int symbol )
+    {
+        if ( numbered && symbol >= 0 )
+        {
+            return ( symbol < bySymbol.length ) ? bySymbol[symbol] : null;
+        }
+        return getClass( id );
+    }
+
+    // The class type "t" names (null if there is none)
+    public Class getClass( IdentifierType t )
+    {
+        return getClass( t.s, t.id );
+    }
+
     public boolean containsClass( String id )
     {
         return hashtable.containsKey( id );
     }
 
+    // The class that holds "public static void main()"
+    public void setMainClass( String id )
+    {
+        mainClass = id;
+    }
+
+    // Resolve the superclass, object layout and dispatch table of every
+    // class (after all the classes and their members have been added)
+    public void resolve()
+    {
+        for ( Class c : classes )
+        {
+            // An undefined superclass is ignored, as it always was
+            c.superclass = ( c.parent() == null ) ? null : getClass( c.parent() );
+        }
+        for ( Class c : classes )
+        {
+            resolve( c );
+        }
+    }
+
+    void resolve( Class c )
+    {
+        if ( c.ancestors != null )
+        {
+            return;
+        }
+        if ( c.resolving )
+        {
+            throw new CompileError( "Cyclic inheritance involving class " + c.getId() );
+        }
+        c.resolving = true;
+        Class p = c.superclass;
+        if ( p != null )
+        {
+            resolve( p );
+        }
+
+        // Ancestors, from the root of the hierarchy down to "c"
+        int depth = ( p == null ) ? 0 : p.ancestors.length;
+        c.ancestors = new Class[depth + 1];
+        if ( p != null )
+        {
+            System.arraycopy( p.ancestors, 0, c.ancestors, 0, depth );
+        }
+        c.ancestors[depth] = c;
+
+        // Fields: those of the superclasses come first (see getObjectSize)
+        int inherited = ( p == null ) ? 0 : p.objectSize - 3;
+        c.allFields = ( p == null ) ? new HashMap<String, Variable>() : new HashMap<String, Variable>( p.allFields );
+        for ( Variable v : c.fields.values() )
+        {
+            v.offset = 3 + inherited + v.idx();
+            v.binding = new Binding( Binding.Kind.FIELD, v.offset, v.type() );
+            c.allFields.put( v.id(), v );
+        }
+        c.objectSize = 3 + inherited + c.fields.size();
+
+        // Methods: an overriding method takes the slot of the method it
+        // overrides, new methods are appended in declaration order
+        c.allMethods = ( p == null ) ? new HashMap<String, Method>() : new HashMap<String, Method>( p.allMethods );
+        ArrayList<Method> vtable = new ArrayList<Method>();
+        if ( p != null )
+        {
+            Collections.addAll( vtable, p.vtable );
+        }
+        for ( String id : c.methodNames )
+        {
+            Method m = c.getMethod( id );
+            m.owner = c;
+            Method overridden = c.allMethods.get( id );
+            c.allMethods.put( id, m );
+            if ( c.getId().equals( mainClass ) && id.equals( "main" ) )
+            {
+                continue;   // main() is not part of any dispatch table
+            }
+            if ( overridden != null && overridden.slot >= 0 )
+            {
+                m.slot = overridden.slot;
+                vtable.set( m.slot, m );
+            }
+            else
+            {
+                m.slot = vtable.size();
+                vtable.add( m );
+            }
+            for ( int i = 0; i < depth; i++ )
+            {
+                c.ancestors[i].overridden.add( id );
+            }
+        }
+        c.vtable = vtable.toArray( new Method[vtable.size()] );
+        c.resolving = false;
+    }
+
     // Given a variable "id" that is used in method "m" inside class "c",
     // return the type of the variable. It returns null if the variable
     // is not yet defined.
@@ -55,80 +209,64 @@ class SymbolTable
     // If "c" is null, check only the variables declared in "m".
     public Type getVarType( Method m, Class c, String id )
     {
+        Binding b = bind( m, c, id );
+        if ( b == null )
+        {
+            throw new CompileError( "Variable " + id
+                                + " not defined in current scope", 0 );
+        }
+        return b.type;
+    }
 
+    // The declaration that variable "id" used in method "m" inside class
+    // "c" refers to: a local variable, a formal parameter or a field of "c"
+    // (or of its superclasses), in that order. Null if there is none.
+    public Binding bind( Method m, Class c, String id )
+    {
         if ( m != null )
         {
-            // Check if the variable is one of the local variables
-            if ( m.getVar( id ) != null )
+            Variable v = m.getVar( id );
+            if ( v == null )
             {
-                return m.getVar( id ).type();
+                v = m.getParam( id );
             }
-
-            // Check if the variable is one of the formal parameters
-            if ( m.getParam( id ) != null )
+            if ( v != null )
             {
-                return m.getParam( id ).type();
+                return v.binding;
             }
         }
-
-        // Try to resolve the name against fields in class
-        while ( c != null )
-        {
-            // Check if the variables is one of the fields in the current class
-            if ( c.getVar( id ) != null )
-            {
-                return c.getVar( id ).type(); // Found!
-            }
-            else // Try its superclass (and their superclasses)
-                if ( c.parent() == null )
-                {
-                    c = null;
-                }
-                else
-                {
-                    c = getClass( c.parent() );
-                }
-        }
-
-        System.out.println( "Variable " + id
-                            + " not defined in current scope" );
-        System.exit( 0 ); // Panic!
-        return null;
+        Variable v = getField( c, id );
+        return ( v == null ) ? null : v.binding;
     }
 
     // Return the declared method defined in the class named "cName"
     // (or in one of its ancestors)
     public Method getMethod( String id, String cName )
     {
-        Class c = getClass( cName );
+        return getMethod( id, getClass( cName ), cName );
+    }
 
+    // The same, for the class type "t"
+    public Method getMethod( String id, IdentifierType t )
+    {
+        return getMethod( id, getClass( t ), t.s );
+    }
+
+    Method getMethod( String id, Class c, String cName )
+    {
         if ( c == null )
         {
-            System.out.println( "Class " + cName + " not defined" );
-            System.exit( 0 ); // Panic!
+            throw new CompileError( "Class " + cName + " not defined", 0 );
         }
 
-        // Try to find the declared method along the class hierarchy
-        while ( c != null )
+        // The declared method, in the class or along the class hierarchy
+        Method m = c.allMethods.get( id );
+        if ( m != null )
         {
-            if ( c.getMethod( id ) != null )
-            {
-                return c.getMethod( id ); // Found!
-            }
-            else if ( c.parent() == null )
-            {
-                c = null;
-            }
-            else
-            {
-                c = getClass( c.parent() );
-            }
+            return m;
         }
 
-        System.out.println( "Method " + id + " not defined in class " + cName );
-
-        System.exit( 0 );
-        return null;
+        throw new CompileError( "Method " + id + " not defined in class " + cName, 0 );
     }
 
     // Get the return type of a method declared in a class named "classCope"
@@ -143,6 +281,105 @@ class SymbolTable
         return null;
     }
 
+    // Return the class that declares the method "id" seen from class "c"
+    // (either "c" itself or one of its ancestors).
+    // Return null if the method is not found.
+    public Class getMethodClass( String id, Class c )
+    {
+        Method m = findMethod( c, id );
+        return ( m == null ) ? null : m.owner();
+    }
+
+    // Return the method "id" seen from class "c" (declared in "c" or in one
+    // of its ancestors). Return null if the method is not found.
+    public Method findMethod( Class c, String id )
+    {
+        return ( c == null ) ? null : c.allMethods.get( id );
+    }
+
+    // Return the field "id" seen from class "c" (declared in "c" or in one
+    // of its ancestors). Return null if the field is not found.
+    public Variable getField( Class c, String id )
+    {
+        return ( c == null ) ? null : c.allFields.get( id );
+    }
+
+    // Return the methods of class "c" in dispatch table order.
+    // The slots of the superclass come first, an overriding method reuses
+    // the slot of the method it overrides and new methods are appended in
+    // declaration order. main() is not part of any dispatch table.
+    public Method[] getVtable( Class c )
+    {
+        return c.vtable;
+    }
+
+    // Return the dispatch table slot of method "id" seen from class "c"
+    public int getMethodSlot( Class c, String id )
+    {
+        Method m = findMethod( c, id );
+        return ( m == null ) ? -1 : m.slot;
+    }
+
+    // Return true if a subclass of "c" (at any depth) redefines method "id",
+    // i.e. a call to "id" on an object of static type "c" must be dispatched
+    // at run time.
+    public boolean isOverridden( Class c, String id )
+    {
+        return c.overridden.contains( id );
+    }
+
+    // Object layout (in words):
+    // Class Tag
+    // Object Size
+    // Dispatch Ptr
+    // Attribute 1
+    // Attribute 2 ...
+    // The attributes of the superclasses come first.
+    public int getObjectSize( String cName )
+    {
+        Class c = getClass( cName );
+        if ( null == c )
+        {
+            throw new CompileError( "Cannot find class " + cName );
+        }
+
+        return c.objectSize;
+    }
+
+    // Return the word index of field "id" inside an object of class "c"
+    public int getFieldIndex( Class c, String id )
+    {
+        Variable v = getField( c, id );
+        if ( v == null )
+        {
+            throw new CompileError( "Cannot find field " + id + " in class " + c.getId() );
+        }
+        return v.offset;
+    }
+
+    // Return the byte offsets of the fields of an object of class "c" that
+    // hold pointers (to an object or an array), in increasing order. The
+    // fields of the superclasses that a field of the same name hides are
+    // still in the object, so they count too.
+    public int[] getPointerOffsets( Class c )
+    {
+        int[] offsets = new int[c.objectSize];
+        int n = 0;
+        for ( Class a : c.ancestors )
+        {
+            for ( Variable v : a.fields.values() )
+            {
+                if ( v.type() instanceof IdentifierType || v.type() instanceof IntArrayType )
+                {
+                    offsets[n++] = 4 * v.offset;
+                }
+            }
+        }
+        offsets = Arrays.copyOf( offsets, n );
+        Arrays.sort( offsets );
+        return offsets;
+    }
+
     // Utility method to check if t1 is compatible with t2
     // or if t1 is a subclass of t2
     // Note: This method can be placed in another class
@@ -169,25 +406,10 @@ class SymbolTable
             IdentifierType i1 = ( IdentifierType )t1;
             IdentifierType i2 = ( IdentifierType )t2;
 
-            Class c = getClass( i2.s );
-            while ( c != null )
-            {
-                // If two classes has the same name
-                if ( i1.s.equals( c.getId() ) )
-                {
-                    return true;
-                }
-                else   // Check the next class along the class heirachy
-                {
-
-                    if ( c.parent() == null )
-                    {
-                        return false;
-                    }
-
-                    c = getClass( c.parent() );
-                }
-            }
+            // t2 is t1 or one of its subclasses
+            Class c1 = getClass( i1 );
+            Class c2 = getClass( i2 );
+            return c1 != null && c2 != null && c2.isSubclassOf( c1 );
         }
         return false;
     }
@@ -199,21 +421,33 @@ class Class
 {
 
     String id;      // Class name
-    Hashtable<String, Method> methods;
-    Hashtable<String, Variable> fields;
+    HashMap<String, Method> methods;
+    Vector<String> methodNames;  // Method names in declaration order
+    HashMap<String, Variable> fields;
     String parent;  // Superclass's name  (null if there is no superclass)
     Type type;      // An instance of Type that represents this class
     int idx;
 
+    // Set by SymbolTable.resolve()
+    Class superclass;                       // null if there is no superclass
+    Class[] ancestors;                      // from the root class down to this one
+    HashMap<String, Variable> allFields;    // including the inherited ones
+    HashMap<String, Method> allMethods;     // including the inherited ones
+    Method[] vtable;                        // by dispatch table slot
+    HashSet<String> overridden = new HashSet<String>();  // redefined by a subclass
+    int objectSize;                         // in words
+    boolean resolving;
+
     // Model a class named "id" that extend a class name "p"
     // "p" is null if class "id" does has extend any class
-    public Class( String id, String p, int i )
+    public Class( String id, int symbol, String p, int i )
     {
         this.id = id;
         parent = p;
-        type = new IdentifierType( id );
-        methods = new Hashtable<String, Method>();
-        fields = new Hashtable<String, Variable>();
+        type = new IdentifierType( id, symbol );
+        methods = new HashMap<String, Method>();
+        methodNames = new Vector<String>();
+        fields = new HashMap<String, Variable>();
         idx = i;
     }
 
@@ -240,6 +474,7 @@ class Class
         else
         {
             methods.put( id, new Method( id, type ) );
+            methodNames.addElement( id );
             return true;
         }
     }
@@ -247,7 +482,7 @@ class Class
     // Enumeration of method names
     public Enumeration getMethods()
     {
-        return methods.keys();
+        return Collections.enumeration( methods.keySet() );
     }
 
     // Return the method representation for the specified method
@@ -306,6 +541,15 @@ class Class
         return parent;
     }
 
+    public Class superclass() { return superclass; }
+
+    // True if this class is "c" or one of its subclasses
+    public boolean isSubclassOf( Class c )
+    {
+        int depth = c.ancestors.length - 1;
+        return depth < ancestors.length && ancestors[depth] == c;
+    }
+
 } // Class
 
 // Store all properties that describe a variable
@@ -315,6 +559,8 @@ class Variable
     String id;
     Type type;
     int idx;
+    int offset;     // of a field: its word index inside the object
+    Binding binding;    // what a use of the variable is bound to
 
     public Variable( String id, Type type, int idx )
     {
@@ -329,6 +575,8 @@ class Variable
 
     public int idx() { return idx; }
 
+    public int offset() { return offset; }
+
 } // Variable
 
 // Store all properties that describe a variable
@@ -338,20 +586,28 @@ class Method
     String id;  // Method name
     Type type;  // Return type
     Vector<Variable> params;          // Formal parameters
-    Hashtable<String, Variable> vars; // Local variables
+    HashMap<String, Variable> paramsById;
+    HashMap<String, Variable> vars;   // Local variables
+    Class owner;        // The class that declares it (set by SymbolTable.resolve())
+    int slot = -1;      // Its dispatch table slot (-1 for main())
 
     public Method( String id, Type type )
     {
         this.id = id;
         this.type = type;
         params = new Vector<Variable>();
-        vars = new Hashtable<String, Variable>();
+        paramsById = new HashMap<String, Variable>();
+        vars = new HashMap<String, Variable>();
     }
 
     public String getId() { return id; }
 
     public Type type() { return type; }
 
+    public Class owner() { return owner; }
+
+    public int slot() { return slot; }
+
     // Add a formal parameter
     // Return false if there is a name conflict
     public boolean addParam( String id, Type type )
@@ -362,7 +618,10 @@ class Method
         }
         else
         {
-            params.addElement( new Variable( id, type, params.size() ) );
+            Variable v = new Variable( id, type, params.size() );
+            v.binding = new Binding( Binding.Kind.PARAM, v.idx(), type );
+            params.addElement( v );
+            paramsById.put( id, v );
             return true;
         }
     }
@@ -395,7 +654,9 @@ class Method
         }
         else
         {
-            vars.put( id, new Variable( id, type, vars.size() ) );
+            Variable v = new Variable( id, type, vars.size() );
+            v.binding = new Binding( Binding.Kind.LOCAL, v.idx(), type );
+            vars.put( id, v );
             return true;
         }
     }
@@ -407,12 +668,7 @@ class Method
 
     public boolean containsParam( String id )
     {
-        for ( int i = 0; i < params.size(); i++ )
-            if ( ( ( Variable )params.elementAt( i ) ).id.equals( id ) )
-            {
-                return true;
-            }
-        return false;
+        return paramsById.containsKey( id );
     }
 
     public Variable getVar( String id )
@@ -435,13 +691,7 @@ class Method
     // Return a formal parameter by name
     public Variable getParam( String id )
     {
-        for ( int i = 0; i < params.size(); i++ )
-            if ( ( ( Variable )params.elementAt( i ) ).id.equals( id ) )
-            {
-                return ( Variable )( params.elementAt( i ) );
-            }
-
-        return null;
+        return paramsById.get( id );
     }
 
 } // Method
@@ -3,13 +3,21 @@ import syntaxtree.*;
 
 public class TypeCheckExpVisitor extends TypeDepthFirstVisitor
 {
-    void p1( String op, String type )
+    // The statement visitor, for the symbol table and the current scope
+    TypeCheckVisitor check;
+
+    public TypeCheckExpVisitor( TypeCheckVisitor check )
+    {
+        this.check = check;
+    }
+
+    CompileError p1( String op, String type )
     {
-        System.out.println( "Left operand of " + op + " must be of type " + type );
+        return new CompileError( "Left operand of " + op + " must be of type " + type );
     }
-    void p2( String op, String type )
+    CompileError p2( String op, String type )
     {
-        System.out.println( "Right operand of " + op + " must be of type " + type );
+        return new CompileError( "Right operand of " + op + " must be of type " + type );
     }
 
 
@@ -18,13 +26,11 @@ public class TypeCheckExpVisitor extends TypeDepthFirstVisitor
     {
         if ( ! ( n.e1.accept( this ) instanceof BooleanType ) )
         {
-            p1( "&&", "boolean" );
-            System.exit( -1 );
+            throw p1( "&&", "boolean" );
         }
         if ( ! ( n.e2.accept( this ) instanceof BooleanType ) )
         {
-            p2( "&&", "boolean" );
-            System.exit( -1 );
+            throw p2( "&&", "boolean" );
         }
         return new BooleanType();
     }
@@ -34,13 +40,11 @@ public class TypeCheckExpVisitor extends TypeDepthFirstVisitor
     {
         if ( ! ( n.e1.accept( this ) instanceof IntegerType ) )
         {
-            p1( "<", "int" );
-            System.exit( -1 );
+            throw p1( "<", "int" );
         }
         if ( ! ( n.e2.accept( this ) instanceof IntegerType ) )
         {
-            p2( "<", "int" );
-            System.exit( -1 );
+            throw p2( "<", "int" );
         }
         return new BooleanType();
     }
@@ -50,13 +54,11 @@ public class TypeCheckExpVisitor extends TypeDepthFirstVisitor
     {
         if ( ! ( n.e1.accept( this ) instanceof IntegerType ) )
         {
-            p1( "+", "int" );
-            System.exit( -1 );
+            throw p1( "+", "int" );
         }
         if ( ! ( n.e2.accept( this ) instanceof IntegerType ) )
         {
-            p2( "+", "int" );
-            System.exit( -1 );
+            throw p2( "+", "int" );
         }
         return new IntegerType();
     }
@@ -66,13 +68,11 @@ public class TypeCheckExpVisitor extends TypeDepthFirstVisitor
     {
         if ( ! ( n.e1.accept( this ) instanceof IntegerType ) )
         {
-            p1( "-", "int" );
-            System.exit( -1 );
+            throw p1( "-", "int" );
         }
         if ( ! ( n.e2.accept( this ) instanceof IntegerType ) )
         {
-            p2( "-", "int" );
-            System.exit( -1 );
+            throw p2( "-", "int" );
         }
         return new IntegerType();
     }
@@ -82,13 +82,11 @@ public class TypeCheckExpVisitor extends TypeDepthFirstVisitor
     {
         if ( ! ( n.e1.accept( this ) instanceof IntegerType ) )
         {
-            p1( "*", "int" );
-            System.exit( -1 );
+            throw p1( "*", "int" );
         }
         if ( ! ( n.e2.accept( this ) instanceof IntegerType ) )
         {
-            p2( "*", "int" );
-            System.exit( -1 );
+            throw p2( "*", "int" );
         }
         return new IntegerType();
     }
@@ -98,13 +96,11 @@ public class TypeCheckExpVisitor extends TypeDepthFirstVisitor
     {
         if ( ! ( n.e1.accept( this ) instanceof IntArrayType ) )
         {
-            p1( "[]", "int []" );
-            System.exit( -1 );
+            throw p1( "[]", "int []" );
         }
         if ( ! ( n.e2.accept( this ) instanceof IntegerType ) )
         {
-            p2( "[]", "int" );
-            System.exit( -1 );
+            throw p2( "[]", "int" );
         }
         return new IntegerType();
     }
@@ -114,8 +110,7 @@ public class TypeCheckExpVisitor extends TypeDepthFirstVisitor
     {
         if ( ! ( n.e.accept( this ) instanceof IntArrayType ) )
         {
-            p1( ".length", "int []" );
-            System.exit( -1 );
+            throw p1( ".length", "int []" );
         }
         return new IntegerType();
     }
@@ -126,18 +121,18 @@ public class TypeCheckExpVisitor extends TypeDepthFirstVisitor
     public Type visit( Call n )
     {
 
-        if ( ! ( n.e.accept( this ) instanceof IdentifierType ) )
+        Type t = n.e.accept( this );
+        if ( ! ( t instanceof IdentifierType ) )
         {
-            System.out.println( "method " + n.i.toString()
+            throw new CompileError( "method " + n.i.toString()
                                 + "called  on something that is not a" +
                                 " class or Object." );
-            System.exit( -1 );
         }
 
         String mname = n.i.toString();
-        String cname = ( ( IdentifierType ) n.e.accept( this ) ).s;
+        String cname = ( ( IdentifierType ) t ).s;
 
-        Method calledMethod = TypeCheckVisitor.symbolTable.getMethod( mname, cname );
+        Method calledMethod = check.symbolTable.getMethod( mname, ( IdentifierType ) t );
 
         for ( int i = 0; i < n.el.size(); i++ )
         {
@@ -149,15 +144,14 @@ public class TypeCheckExpVisitor extends TypeDepthFirstVisitor
                 t1 = calledMethod.getParamAt( i ).type();
             }
             t2 = n.el.elementAt( i ).accept( this );
-            if ( !TypeCheckVisitor.symbolTable.compareTypes( t1, t2 ) )
+            if ( !check.symbolTable.compareTypes( t1, t2 ) )
             {
-                System.out.println( "Type Error in arguments passed to " +
+                throw new CompileError( "Type Error in arguments passed to " +
                                     cname + "." + mname );
-                System.exit( -1 );
             }
         }
 
-        return TypeCheckVisitor.symbolTable.getMethodType( mname, cname );
+        return calledMethod.type();
     }
 
     // int i;
@@ -179,13 +173,12 @@ public class TypeCheckExpVisitor extends TypeDepthFirstVisitor
     // String s;
     public Type visit( IdentifierExp n )
     {
-        return TypeCheckVisitor.symbolTable.getVarType( TypeCheckVisitor.currMethod,
-                TypeCheckVisitor.currClass, n.s );
+        return check.var_type( n.binding, n.s );
     }
 
     public Type visit( This n )
     {
-        return TypeCheckVisitor.currClass.type();
+        return check.currClass.type();
     }
 
     // Exp e;
@@ -194,8 +187,7 @@ public class TypeCheckExpVisitor extends TypeDepthFirstVisitor
 
         if ( ! ( n.e.accept( this ) instanceof IntegerType ) )
         {
-            p1( "new int []", "int" );
-            System.exit( -1 );
+            throw p1( "new int []", "int" );
         }
         return new IntArrayType();
     }
@@ -203,7 +195,7 @@ public class TypeCheckExpVisitor extends TypeDepthFirstVisitor
     // Identifier i;
     public Type visit( NewObject n )
     {
-        return new IdentifierType( n.i.s );
+        return new IdentifierType( n.i.s, n.i.id );
     }
 
     // Exp e;
@@ -211,8 +203,7 @@ public class TypeCheckExpVisitor extends TypeDepthFirstVisitor
     {
         if ( ! ( n.e.accept( this ) instanceof BooleanType ) )
         {
-            p2( "!", "boolean" );
-            System.exit( -1 );
+            throw p2( "!", "boolean" );
         }
         return new BooleanType();
     }
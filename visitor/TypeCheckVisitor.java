@@ -5,9 +5,9 @@ import visitor.SymbolTable;
 public class TypeCheckVisitor extends DepthFirstVisitor
 {
 
-    static Class currClass;
-    static Method currMethod;
-    static SymbolTable symbolTable;
+    Class currClass;
+    Method currMethod;
+    SymbolTable symbolTable;
 
     public TypeCheckVisitor( SymbolTable s )
     {
@@ -112,10 +112,9 @@ public class TypeCheckVisitor extends DepthFirstVisitor
         {
             n.sl.elementAt( i ).accept( this );
         }
-        if ( symbolTable.compareTypes( retType, n.e.accept( new TypeCheckExpVisitor() ) ) == false )
+        if ( symbolTable.compareTypes( retType, n.e.accept( new TypeCheckExpVisitor( this ) ) ) == false )
         {
-            System.out.println( "Wrong return type for method " + id );
-            System.exit( 0 );
+            throw new CompileError( "Wrong return type for method " + id, 0 );
         }
     }
 
@@ -131,11 +130,10 @@ public class TypeCheckVisitor extends DepthFirstVisitor
     // Statement s1,s2;
     public void visit( If n )
     {
-        if ( ! ( n.e.accept( new TypeCheckExpVisitor() ) instanceof BooleanType ) )
+        if ( ! ( n.e.accept( new TypeCheckExpVisitor( this ) ) instanceof BooleanType ) )
         {
-            System.out.println( "The condition of while must be" +
+            throw new CompileError( "The condition of while must be" +
                                 "of type boolean" );
-            System.exit( -1 );
         }
         n.s1.accept( this );
         n.s2.accept( this );
@@ -145,11 +143,10 @@ public class TypeCheckVisitor extends DepthFirstVisitor
     // Statement s;
     public void visit( While n )
     {
-        if ( ! ( n.e.accept( new TypeCheckExpVisitor() ) instanceof BooleanType ) )
+        if ( ! ( n.e.accept( new TypeCheckExpVisitor( this ) ) instanceof BooleanType ) )
         {
-            System.out.println( "The condition of while must be" +
+            throw new CompileError( "The condition of while must be" +
                                 "of type boolean" );
-            System.exit( -1 );
         }
         n.s.accept( this );
     }
@@ -157,11 +154,10 @@ public class TypeCheckVisitor extends DepthFirstVisitor
     // Exp e;
     public void visit( Print n )
     {
-        if ( ! ( n.e.accept( new TypeCheckExpVisitor() ) instanceof IntegerType ) )
+        if ( ! ( n.e.accept( new TypeCheckExpVisitor( this ) ) instanceof IntegerType ) )
         {
-            System.out.println( "The argument of System.out.println must be" +
+            throw new CompileError( "The argument of System.out.println must be" +
                                 " of type int" );
-            System.exit( -1 );
         }
     }
 
@@ -169,12 +165,11 @@ public class TypeCheckVisitor extends DepthFirstVisitor
     // Exp e;
     public void visit( Assign n )
     {
-        Type t1 = symbolTable.getVarType( currMethod, currClass, n.i.toString() );
-        Type t2 = n.e.accept( new TypeCheckExpVisitor() );
+        Type t1 = var_type( n.i.binding, n.i.toString() );
+        Type t2 = n.e.accept( new TypeCheckExpVisitor( this ) );
         if ( symbolTable.compareTypes( t1, t2 ) == false )
         {
-            System.out.println( "Type error in assignment to " + n.i.toString() );
-            System.exit( 0 );
+            throw new CompileError( "Type error in assignment to " + n.i.toString(), 0 );
         }
     }
 
@@ -182,29 +177,34 @@ public class TypeCheckVisitor extends DepthFirstVisitor
     // Exp e1,e2;
     public void visit( ArrayAssign n )
     {
-        Type typeI = symbolTable.getVarType( currMethod, currClass, n.i.toString() );
+        Type typeI = var_type( n.i.binding, n.i.toString() );
 
         if ( ! ( typeI instanceof IntArrayType ) )
         {
-            System.out.println( "The identifier in an array assignment" +
+            throw new CompileError( "The identifier in an array assignment" +
                                 "must be of type int []" );
-            System.exit( -1 );
         }
 
-        if ( ! ( n.e1.accept( new TypeCheckExpVisitor() ) instanceof IntegerType ) )
+        if ( ! ( n.e1.accept( new TypeCheckExpVisitor( this ) ) instanceof IntegerType ) )
         {
-            System.out.println( "The first expression in an array assignment" +
+            throw new CompileError( "The first expression in an array assignment" +
                                 "must be of type int" );
-            System.exit( -1 );
         }
-        if ( ! ( n.e2.accept( new TypeCheckExpVisitor() ) instanceof IntegerType ) )
+        if ( ! ( n.e2.accept( new TypeCheckExpVisitor( this ) ) instanceof IntegerType ) )
         {
-            System.out.println( "The second expression in an array assignment" +
+            throw new CompileError( "The second expression in an array assignment" +
                                 "must be of type int" );
-            System.exit( -1 );
         }
     }
-}
-
-
 
+    // The type of variable "id", bound to "b" by BindVisitor
+    Type var_type( Binding b, String id )
+    {
+        if ( b == null )
+        {
+            throw new CompileError( "Variable " + id
+                                + " not defined in current scope", 0 );
+        }
+        return b.type;
+    }
+}